@@ -27,9 +27,11 @@
  */
 package org.n52.sensorweb.server.helgoland.adapters.config;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class DataSourceConfiguration {
 
@@ -40,9 +42,25 @@ public class DataSourceConfiguration {
     private String type;
     private boolean supportsFirstLast = true;
     private boolean disableHumanReadableName;
+    private boolean disableCompression;
+    private boolean disableJson;
+    private boolean disableExi;
     private boolean supportsGDA;
+    private boolean disableServiceDataAvailability;
+    private boolean supportsResultHandling;
+    private Set<String> resultHandlingOfferings = Collections.emptySet();
+    private boolean pipelinedHarvest;
+    private boolean compressServiceMetadata;
     private List<String> allowedOfferings;
     private List<String> allowedSensors;
+    private Integer connectionTimeout;
+    private Integer socketTimeout;
+    private Double maxRequestsPerSecond;
+    private Integer maxConcurrentRequests;
+    private Integer permitTimeout;
+    private Double hedgingPercentile;
+    private Integer harvestParallelism;
+    private Map<String, String> offeringFingerprints;
     private Map<String, String> getUrls = new LinkedHashMap<>();
     private Map<String, String> postUrls = new LinkedHashMap<>();
 
@@ -112,6 +130,30 @@ public class DataSourceConfiguration {
         this.supportsGDA = supportsGDA;
     }
 
+    /**
+     * @return if observations of this data source can be requested as compact result values via
+     *         GetResultTemplate/GetResult
+     */
+    public boolean isSupportsResultHandling() {
+        return supportsResultHandling;
+    }
+
+    public void setSupportsResultHandling(boolean supportsResultHandling) {
+        this.supportsResultHandling = supportsResultHandling;
+    }
+
+    /**
+     * @return the offerings whose observations can be requested via GetResult. GetResult can not be filtered by
+     *         procedure, so these are the offerings with exactly one procedure.
+     */
+    public Set<String> getResultHandlingOfferings() {
+        return resultHandlingOfferings;
+    }
+
+    public void setResultHandlingOfferings(Set<String> resultHandlingOfferings) {
+        this.resultHandlingOfferings = resultHandlingOfferings;
+    }
+
     public boolean isDisableHumanReadableName() {
         return disableHumanReadableName;
     }
@@ -120,6 +162,52 @@ public class DataSourceConfiguration {
         this.disableHumanReadableName = disableHumanReadableName;
     }
 
+    /**
+     * @return if responses of this data source should be requested without gzip/deflate compression
+     */
+    public boolean isDisableCompression() {
+        return disableCompression;
+    }
+
+    public void setDisableCompression(boolean disableCompression) {
+        this.disableCompression = disableCompression;
+    }
+
+    /**
+     * @return if this data source should be requested with the XML bindings although it offers the JSON binding
+     */
+    public boolean isDisableJson() {
+        return disableJson;
+    }
+
+    public void setDisableJson(boolean disableJson) {
+        this.disableJson = disableJson;
+    }
+
+    /**
+     * @return if this data source should be requested with plain XML although it offers the EXI binding. Set when
+     *         the EXI binding successfully answers with other documents and reset with the capabilities.
+     */
+    public boolean isDisableExi() {
+        return disableExi;
+    }
+
+    public void setDisableExi(boolean disableExi) {
+        this.disableExi = disableExi;
+    }
+
+    /**
+     * @return if the data availability is requested per procedure only. Set when the data source rejects the
+     *         unfiltered GetDataAvailability request for the whole service.
+     */
+    public boolean isDisableServiceDataAvailability() {
+        return disableServiceDataAvailability;
+    }
+
+    public void setDisableServiceDataAvailability(boolean disableServiceDataAvailability) {
+        this.disableServiceDataAvailability = disableServiceDataAvailability;
+    }
+
     public List<String> getAllowedOfferings() {
         return allowedOfferings;
     }
@@ -136,6 +224,123 @@ public class DataSourceConfiguration {
         this.allowedSensors = allowedSensors;
     }
 
+    /**
+     * @return the connection timeout in milliseconds for requests to this data source or <code>null</code> to
+     *         use the default of the shared HTTP client
+     */
+    public Integer getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(Integer connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    /**
+     * @return the socket timeout in milliseconds for requests to this data source or <code>null</code> to use the
+     *         default of the shared HTTP client
+     */
+    public Integer getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public void setSocketTimeout(Integer socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    /**
+     * @return the maximum number of requests per second sent to this data source or <code>null</code> if
+     *         unlimited
+     */
+    public Double getMaxRequestsPerSecond() {
+        return maxRequestsPerSecond;
+    }
+
+    public void setMaxRequestsPerSecond(Double maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+    }
+
+    /**
+     * @return the maximum number of concurrent requests to this data source or <code>null</code> if unlimited
+     */
+    public Integer getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * @return the time in milliseconds a request waits for the request limits before it fails or
+     *         <code>null</code> for the default
+     */
+    public Integer getPermitTimeout() {
+        return permitTimeout;
+    }
+
+    public void setPermitTimeout(Integer permitTimeout) {
+        this.permitTimeout = permitTimeout;
+    }
+
+    /**
+     * @return the percentile of recent response times after which a duplicate of a latency critical request is
+     *         sent or <code>null</code> if requests are not hedged
+     */
+    public Double getHedgingPercentile() {
+        return hedgingPercentile;
+    }
+
+    public void setHedgingPercentile(Double hedgingPercentile) {
+        this.hedgingPercentile = hedgingPercentile;
+    }
+
+    /**
+     * @return the number of offerings harvested at the same time or <code>null</code> to use the default
+     */
+    public Integer getHarvestParallelism() {
+        return harvestParallelism;
+    }
+
+    public void setHarvestParallelism(Integer harvestParallelism) {
+        this.harvestParallelism = harvestParallelism;
+    }
+
+    /**
+     * @return if the harvested datasets are persisted in batches while harvesting instead of after the harvest
+     */
+    public boolean isPipelinedHarvest() {
+        return pipelinedHarvest;
+    }
+
+    public void setPipelinedHarvest(boolean pipelinedHarvest) {
+        this.pipelinedHarvest = pipelinedHarvest;
+    }
+
+    /**
+     * @return if the service metadata is stored gzip compressed and Base64 encoded. Only enable it if all readers of
+     *         the database decode the metadata like <code>ServiceMetadata.of</code>.
+     */
+    public boolean isCompressServiceMetadata() {
+        return compressServiceMetadata;
+    }
+
+    public void setCompressServiceMetadata(boolean compressServiceMetadata) {
+        this.compressServiceMetadata = compressServiceMetadata;
+    }
+
+    /**
+     * @return the fingerprints of the offerings of the last successful harvest by offering identifier or
+     *         <code>null</code> if unknown. Set by the harvesting job.
+     */
+    public Map<String, String> getOfferingFingerprints() {
+        return offeringFingerprints;
+    }
+
+    public void setOfferingFingerprints(Map<String, String> offeringFingerprints) {
+        this.offeringFingerprints = offeringFingerprints;
+    }
+
     @Override
     public String toString() {
         return "DataSourceConfiguration{" + "itemName=" + itemName + ", url=" + url
@@ -29,9 +29,13 @@ package org.n52.sensorweb.server.helgoland.adapters.config;
 
 public class DataSourceJobConfiguration {
 
+    public static final int DEFAULT_PRIORITY = 5;
+
     private String cronExpression;
     private boolean enabled;
     private boolean triggerAtStartup;
+    private int priority = DEFAULT_PRIORITY;
+    private int weight = 1;
 
     public String getCronExpression() {
         return cronExpression;
@@ -57,4 +61,26 @@ public class DataSourceJobConfiguration {
         this.triggerAtStartup = triggerAtStartup;
     }
 
+    /**
+     * @return the priority of the harvest, harvests with a higher priority start first if harvests have to wait
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return the share of the concurrent harvests a harvest of this data source takes, e.g. 2 for a large source
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
 }
@@ -28,13 +28,22 @@
 package org.n52.sensorweb.server.helgoland.adapters.connector;
 
 import java.io.IOException;
-import java.util.LinkedHashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.xmlbeans.XmlObject;
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
@@ -42,10 +51,19 @@ import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.AsyncExecutor;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.EntityBuilder;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.HarvestCheckpointStore;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.HarvestExecutor;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.RequestHedger;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.RequestLimiter;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.RequestMetrics;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceConstellation;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceMetadata;
-import org.n52.sensorweb.server.helgoland.adapters.web.SimpleHttpClient;
+import org.n52.sensorweb.server.helgoland.adapters.da.DatasetPipeline;
+import org.n52.sensorweb.server.helgoland.adapters.web.AsyncHttpClient;
+import org.n52.sensorweb.server.helgoland.adapters.web.HttpClient;
+import org.n52.sensorweb.server.helgoland.adapters.web.HttpRequestBuilder;
 import org.n52.sensorweb.server.db.assembler.value.ValueConnector;
 import org.n52.series.db.beans.DataEntity;
 import org.n52.series.db.beans.DatasetEntity;
@@ -72,36 +90,262 @@ import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityResponse.DataAvailability
 import org.n52.shetland.util.ReferencedEnvelope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-
-import com.google.common.primitives.Ints;
+import org.springframework.beans.factory.annotation.Autowired;
 
 /**
  * @author Jan Schulte
  */
 public abstract class AbstractConnector implements ValueConnector {
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractConnector.class);
-    private static final long CONNECTION_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
-    private static final long SOCKET_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+    private static final ContentType CONTENT_TYPE_TEXT_XML = ContentType.create("text/xml", StandardCharsets.UTF_8);
+
+    private final Map<String, DataSourceConfiguration> dataSourceConfigurations = new ConcurrentHashMap<>();
+    private final Map<String, RequestLimiter> requestLimiters = new ConcurrentHashMap<>();
+    private final RequestMetrics requestMetrics = new RequestMetrics();
+    private HttpClient httpClient;
+    private AsyncHttpClient asyncHttpClient;
+    private AsyncExecutor asyncExecutor;
+    private RequestHedger requestHedger;
+    private HarvestExecutor harvestExecutor;
+    private HarvestCheckpointStore checkpointStore;
+    private DatasetPipeline datasetPipeline;
 
-    private Map<String, DataSourceConfiguration> dataSourceConfigurations = new LinkedHashMap<>();
-    private final SimpleHttpClient httpClient;
+    public String getConnectorName() {
+        return getName();
+    }
 
-    public AbstractConnector() {
-        httpClient = new SimpleHttpClient(Ints.checkedCast(CONNECTION_TIMEOUT), Ints.checkedCast(SOCKET_TIMEOUT));
+    public HttpClient getHttpClient() {
+        return httpClient;
     }
 
-    public String getConnectorName() {
-        return getName();
+    @Autowired
+    public void setHttpClient(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    public AsyncHttpClient getAsyncHttpClient() {
+        return asyncHttpClient;
+    }
+
+    @Autowired(required = false)
+    public void setAsyncHttpClient(AsyncHttpClient asyncHttpClient) {
+        this.asyncHttpClient = asyncHttpClient;
+    }
+
+    @Autowired(required = false)
+    public void setAsyncExecutor(AsyncExecutor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    @Autowired(required = false)
+    public void setRequestHedger(RequestHedger requestHedger) {
+        this.requestHedger = requestHedger;
+    }
+
+    @Autowired(required = false)
+    public void setHarvestExecutor(HarvestExecutor harvestExecutor) {
+        this.harvestExecutor = harvestExecutor;
+    }
+
+    public Optional<HarvestCheckpointStore> getCheckpointStore() {
+        return Optional.ofNullable(checkpointStore);
+    }
+
+    @Autowired(required = false)
+    public void setCheckpointStore(HarvestCheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
+    }
+
+    @Autowired(required = false)
+    public void setDatasetPipeline(DatasetPipeline datasetPipeline) {
+        this.datasetPipeline = datasetPipeline;
+    }
+
+    public RequestMetrics getRequestMetrics() {
+        return requestMetrics;
     }
 
     protected HttpResponse sendGetRequest(String uri) throws IOException {
         LOGGER.debug("Executing GET request {}", uri);
-        return httpClient.executeGet(uri);
+        DataSourceConfiguration config = findServiceConfig(uri);
+        return execute(HttpRequestBuilder.createGet(uri, config), config, uri);
+    }
+
+    /**
+     * Sends a GET request without blocking the calling thread and handles the response on the {@link AsyncExecutor}.
+     * The request waits for a permit of the data source without occupying a thread and holds it until the handler
+     * consumed the response. Falls back to the blocking client if no {@link AsyncHttpClient} is available.
+     *
+     * @param <T>     the result type
+     * @param uri     the request URI
+     * @param handler the handler consuming the response
+     * @return the future result of the handler
+     */
+    protected <T> CompletableFuture<T> sendGetRequestAsync(String uri, Function<HttpResponse, T> handler) {
+        LOGGER.debug("Executing asynchronous GET request {}", uri);
+        if (asyncHttpClient == null || asyncExecutor == null) {
+            return executeLimitedAsync(uri, () -> executeLimited(uri, () -> handler.apply(sendGetRequest(uri))));
+        }
+        DataSourceConfiguration config = findServiceConfig(uri);
+        RequestLimiter limiter = getRequestLimiter(config);
+        return requestMetrics.recordAsync(config, uri, null, () -> {
+            if (limiter == null) {
+                return executeAsync(uri, config, handler);
+            }
+            return limiter.acquireAsync(asyncExecutor).thenCompose(permit -> {
+                try {
+                    return executeAsync(uri, config, handler)
+                            .whenComplete((result, error) -> limiter.release());
+                } catch (RuntimeException ex) {
+                    limiter.release();
+                    throw ex;
+                }
+            });
+        });
+    }
+
+    private <T> CompletableFuture<T> executeAsync(String uri, DataSourceConfiguration config,
+            Function<HttpResponse, T> handler) {
+        return asyncHttpClient.executeMethod(HttpRequestBuilder.createGet(uri, config))
+                .thenApplyAsync(response -> handler.apply(requestMetrics.countBytes(response, config, uri)),
+                        asyncExecutor);
+    }
+
+    /**
+     * Executes a blocking request on the {@link AsyncExecutor} once it got a permit of the data source, so the
+     * request occupies a thread only while it is executed. The request holds the permit until it is done, nested
+     * calls of {@link #executeLimited(String, String, RequestLimiter.Request)} are not limited again but still
+     * recorded. Executes the request on the calling thread if no {@link AsyncExecutor} is available.
+     *
+     * @param <T>     the result type
+     * @param uri     the request URI used to determine the data source
+     * @param request the request
+     * @return the future result of the request
+     */
+    protected <T> CompletableFuture<T> executeLimitedAsync(String uri, RequestLimiter.Request<T> request) {
+        RequestLimiter limiter = getRequestLimiter(findServiceConfig(uri));
+        if (asyncExecutor != null && limiter != null) {
+            return limiter.executeAsync(request, asyncExecutor);
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                result.complete(limiter != null ? limiter.execute(request) : request.execute());
+            } catch (IOException | RuntimeException ex) {
+                result.completeExceptionally(ex);
+            }
+        };
+        if (asyncExecutor != null) {
+            asyncExecutor.execute(task);
+        } else {
+            task.run();
+        }
+        return result;
+    }
+
+    /**
+     * Executes a request to a data source within the request limits of the data source, see
+     * {@link RequestLimiter}. The request should include consuming the response.
+     *
+     * @param <T>     the result type
+     * @param uri     the request URI used to determine the data source
+     * @param request the request
+     * @return the result of the request
+     * @throws IOException if the request fails
+     */
+    protected <T> T executeLimited(String uri, RequestLimiter.Request<T> request) throws IOException {
+        return executeLimited(uri, null, request);
+    }
+
+    /**
+     * Executes a request like {@link #executeLimited(String, RequestLimiter.Request)} and records it as the given
+     * operation, see {@link RequestMetrics}.
+     *
+     * @param <T>       the result type
+     * @param uri       the request URI used to determine the data source
+     * @param operation the operation or <code>null</code> to derive it from the URI
+     * @param request   the request
+     * @return the result of the request
+     * @throws IOException if the request fails
+     */
+    protected <T> T executeLimited(String uri, String operation, RequestLimiter.Request<T> request)
+            throws IOException {
+        DataSourceConfiguration config = findServiceConfig(uri);
+        RequestLimiter limiter = getRequestLimiter(config);
+        return requestMetrics.record(config, uri, operation,
+                () -> limiter != null ? limiter.execute(request) : request.execute());
+    }
+
+    /**
+     * Executes a latency critical request like {@link #executeLimited(String, RequestLimiter.Request)}, but sends
+     * a duplicate if the data source is slow to answer, see {@link RequestHedger}. The request has to be idempotent.
+     *
+     * @param <T>     the result type
+     * @param uri     the request URI used to determine the data source
+     * @param request the request
+     * @return the result of the request
+     * @throws IOException if the request fails
+     */
+    protected <T> T executeHedged(String uri, RequestLimiter.Request<T> request) throws IOException {
+        DataSourceConfiguration config = findServiceConfig(uri);
+        if (requestHedger == null || config == null) {
+            return executeLimited(uri, request);
+        }
+        return requestHedger.execute(config, getRequestLimiter(config), request);
+    }
+
+    /**
+     * Runs the task for all items of a harvest, concurrently if a {@link HarvestExecutor} is available. The task has
+     * to be thread-safe.
+     *
+     * @param <T>    the item type
+     * @param config the data source
+     * @param items  the items
+     * @param task   the task
+     */
+    protected <T> void harvest(DataSourceConfiguration config, Collection<T> items, Consumer<T> task) {
+        if (harvestExecutor == null) {
+            items.forEach(task);
+        } else {
+            harvestExecutor.forEach(config, items, task);
+        }
+    }
+
+    /**
+     * Persists the datasets added to the constellation from now on while harvesting, if the data source enables
+     * {@link DataSourceConfiguration#isPipelinedHarvest()}. The service of the constellation has to be set.
+     *
+     * @param config               the data source
+     * @param serviceConstellation the constellation of the harvest
+     */
+    protected void streamDatasets(DataSourceConfiguration config, ServiceConstellation serviceConstellation) {
+        if (datasetPipeline != null && config.isPipelinedHarvest()) {
+            serviceConstellation.setDatasetConsumer(datasetPipeline.open(config, serviceConstellation));
+        }
+    }
+
+    protected RequestLimiter getRequestLimiter(DataSourceConfiguration config) {
+        return config != null ? requestLimiters.get(config.getUrl()) : null;
     }
 
     protected HttpResponse sendPostRequest(XmlObject request, String uri) throws IOException {
-        LOGGER.debug("Executing POST request to {}\n{}", uri, request.xmlText());
-        return httpClient.executePost(uri, request);
+        LOGGER.debug("Executing POST request to {}\n{}", uri, request);
+        DataSourceConfiguration config = findServiceConfig(uri);
+        return execute(HttpRequestBuilder.createPost(uri, new StringEntity(request.xmlText(), CONTENT_TYPE_TEXT_XML),
+                config), config, uri);
+    }
+
+    protected HttpResponse sendPostRequest(HttpEntity request, String uri) throws IOException {
+        LOGGER.debug("Executing POST request to {}\n{}", uri, request);
+        DataSourceConfiguration config = findServiceConfig(uri);
+        return execute(HttpRequestBuilder.createPost(uri, request, config), config, uri);
+    }
+
+    private HttpResponse execute(HttpRequestBase request, DataSourceConfiguration config, String uri)
+            throws IOException {
+        // aborted if a hedged duplicate answers first
+        RequestHedger.register(request);
+        return requestMetrics.countBytes(httpClient.executeMethod(request), config, uri);
     }
 
     @Override
@@ -120,7 +364,10 @@ public abstract class AbstractConnector implements ValueConnector {
             ServiceMetadata serviceMetadata) {
         ServiceEntity service =
                 EntityBuilder.createService(config.getItemName(), "here goes description", config.getConnector(),
-                        config.getUrl(), config.getVersion(), config.isSupportsFirstLast(), serviceMetadata);
+                        config.getUrl(), config.getVersion(), config.isSupportsFirstLast(), null);
+        if (serviceMetadata != null) {
+            service.setServiceMetadata(serviceMetadata.toEntity(config.isCompressServiceMetadata()));
+        }
         serviceConstellation.setService(service);
     }
 
@@ -358,9 +605,57 @@ public abstract class AbstractConnector implements ValueConnector {
 
     protected void addServiceConfig(DataSourceConfiguration config) {
         this.dataSourceConfigurations.put(config.getUrl(), config);
+        this.requestLimiters.computeIfAbsent(config.getUrl(), url -> RequestLimiter.create(config));
     }
 
     protected DataSourceConfiguration getServiceConfig(String key) {
-        return this.dataSourceConfigurations.get(key);
+        return key != null ? this.dataSourceConfigurations.get(key) : null;
+    }
+
+    /**
+     * Finds the configuration of the data source a request URI belongs to, either by the configured service URL
+     * or by one of the binding URLs announced in the capabilities. If several URLs match, the longest one wins, so
+     * a service nested below the path of another one is still found.
+     *
+     * @param uri the request URI
+     * @return the matching configuration or <code>null</code> if the URI belongs to no known data source
+     */
+    protected DataSourceConfiguration findServiceConfig(String uri) {
+        DataSourceConfiguration config = getServiceConfig(uri);
+        if (config != null || uri == null) {
+            return config;
+        }
+        int longest = -1;
+        for (DataSourceConfiguration candidate : dataSourceConfigurations.values()) {
+            int length = Stream.of(Stream.of(candidate.getUrl()), candidate.getGetUrls().values().stream(),
+                    candidate.getPostUrls().values().stream()).flatMap(urls -> urls)
+                    .mapToInt(url -> getBaseLength(url, uri)).max().orElse(-1);
+            if (length > longest) {
+                longest = length;
+                config = candidate;
+            }
+        }
+        return config;
+    }
+
+    /**
+     * @param baseUrl the base URL, its query is ignored
+     * @param uri     the request URI
+     * @return the length of the base URL if the URI starts with it at a path segment boundary or <code>-1</code>
+     */
+    private static int getBaseLength(String baseUrl, String uri) {
+        if (baseUrl == null) {
+            return -1;
+        }
+        int query = baseUrl.indexOf('?');
+        String base = query < 0 ? baseUrl : baseUrl.substring(0, query);
+        if (base.isEmpty() || !uri.startsWith(base)) {
+            return -1;
+        }
+        if (uri.length() == base.length() || base.endsWith("/")) {
+            return base.length();
+        }
+        char next = uri.charAt(base.length());
+        return next == '/' || next == '?' || next == '#' ? base.length() : -1;
     }
 }
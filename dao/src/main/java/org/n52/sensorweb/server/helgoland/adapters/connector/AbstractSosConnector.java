@@ -32,19 +32,37 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import javax.xml.soap.SOAPConstants;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlSaxHandler;
 import org.joda.time.DateTime;
+import org.joda.time.Interval;
 import org.n52.janmayen.http.HTTPHeaders;
 import org.n52.janmayen.http.MediaTypes;
 import org.n52.janmayen.http.QueryBuilder;
@@ -52,13 +70,24 @@ import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguratio
 import org.n52.sensorweb.server.helgoland.adapters.connector.constellations.QuantityDatasetConstellation;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.DataEntityBuilder;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.EntityBuilder;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.FeatureCache;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.OfferingFingerprints;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceConstellation;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.SosJsonRequests;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.SosRequestEntity;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.UnitCache;
+import org.n52.sensorweb.server.helgoland.adapters.decode.ResultTemplate;
+import org.n52.sensorweb.server.helgoland.adapters.decode.SosJsonDecoder;
+import org.n52.sensorweb.server.helgoland.adapters.decode.StreamingObservationDecoder;
+import org.n52.sensorweb.server.helgoland.adapters.web.ExiDecodingEntity;
+import org.n52.sensorweb.server.helgoland.adapters.web.ExiEntity;
 import org.n52.series.db.beans.DataEntity;
 import org.n52.series.db.beans.DatasetEntity;
 import org.n52.series.db.beans.UnitEntity;
 import org.n52.series.db.beans.dataset.ValueType;
 import org.n52.shetland.ogc.filter.SpatialFilter;
 import org.n52.shetland.ogc.filter.TemporalFilter;
+import org.n52.shetland.ogc.gml.AbstractFeature;
 import org.n52.shetland.ogc.om.OmConstants;
 import org.n52.shetland.ogc.om.OmObservation;
 import org.n52.shetland.ogc.ows.OWSConstants;
@@ -76,8 +105,10 @@ import org.n52.shetland.ogc.sos.Sos1Constants;
 import org.n52.shetland.ogc.sos.Sos2Constants;
 import org.n52.shetland.ogc.sos.SosCapabilities;
 import org.n52.shetland.ogc.sos.SosConstants;
+import org.n52.shetland.ogc.sos.SosObservationOffering;
 import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityConstants;
 import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityResponse;
+import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityResponse.DataAvailability;
 import org.n52.shetland.ogc.sos.request.DescribeSensorRequest;
 import org.n52.shetland.ogc.sos.request.GetFeatureOfInterestRequest;
 import org.n52.shetland.ogc.sos.request.GetObservationRequest;
@@ -105,6 +136,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.google.common.collect.Lists;
+
 public abstract class AbstractSosConnector extends AbstractConnector {
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractSosConnector.class);
 
@@ -114,12 +147,26 @@ public abstract class AbstractSosConnector extends AbstractConnector {
 
     private static final String RETURN_HUMAN_READABLE_NAME = "returnHumanReadableIdentifier";
 
-    protected int counter;
+    private static final String GET_RESULT_TEMPLATE = "GetResultTemplate";
+
+    private static final String GET_RESULT = "GetResult";
+
+    private static final int FEATURE_BATCH_SIZE = 50;
+
+    private static final int UNIT_BATCH_SIZE = 50;
+
+    private static final ContentType CONTENT_TYPE_XML = ContentType.create("text/xml", StandardCharsets.UTF_8);
+
+    protected final AtomicInteger counter = new AtomicInteger();
 
     private DecoderRepository decoderRepository;
 
     private EncoderRepository encoderRepository;
 
+    private final Map<String, Map<Long, Optional<ResultTemplate>>> resultTemplates = new ConcurrentHashMap<>();
+
+    private UnitCache unitCache = new UnitCache();
+
     public DecoderRepository getDecoderRepository() {
         return decoderRepository;
     }
@@ -155,29 +202,148 @@ public abstract class AbstractSosConnector extends AbstractConnector {
                 .map(unit -> EntityBuilder.createUnit(unit, null)).orElse(null);
     }
 
+    /**
+     * Returns the unit of a dataset from the unit cache or requests it with {@link #getUom(String, String, String,
+     * String, boolean, DateTime, String)} and caches it.
+     *
+     * @param procedure         the procedure
+     * @param offering          the offering
+     * @param phenomenon        the observed property
+     * @param feature           the feature
+     * @param supportsFirstLast if the service supports the first/latest temporal filters
+     * @param lastTimestamp     the last timestamp of the dataset
+     * @param serviceURL        the service URL
+     * @return the unit or <code>null</code> if it is unknown
+     */
+    protected UnitEntity getCachedUom(String procedure, String offering, String phenomenon, String feature,
+            boolean supportsFirstLast, DateTime lastTimestamp, String serviceURL) {
+        if (unitCache.contains(serviceURL, offering, procedure, phenomenon)) {
+            return unitCache.getUnit(serviceURL, offering, procedure, phenomenon)
+                    .map(unit -> EntityBuilder.createUnit(unit, null)).orElse(null);
+        }
+        UnitEntity unit =
+                getUom(procedure, offering, phenomenon, feature, supportsFirstLast, lastTimestamp, serviceURL);
+        unitCache.putUnit(serviceURL, offering, procedure, phenomenon, unit != null ? unit.getSymbol() : null);
+        return unit;
+    }
+
+    /**
+     * Discards the cached units of an offering if its procedures or observed properties changed.
+     *
+     * @param offering    the offering
+     * @param fingerprint the fingerprint of the procedures and observed properties of the offering, see
+     *                    {@link OfferingFingerprints#ofObservables(SosObservationOffering)}
+     * @param serviceURL  the service URL
+     */
+    protected void validateUoms(String offering, String fingerprint, String serviceURL) {
+        unitCache.validate(serviceURL, offering, fingerprint);
+    }
+
+    /**
+     * Keeps the cached units of a service across restarts, if the unit cache has a directory.
+     *
+     * @param serviceURL the service URL
+     */
+    protected void saveUoms(String serviceURL) {
+        unitCache.save(serviceURL);
+    }
+
+    @Autowired(required = false)
+    public void setUnitCache(UnitCache unitCache) {
+        this.unitCache = unitCache;
+    }
+
+    /**
+     * Caches the units of the data availabilities of an offering. Units that are not cached are requested with
+     * batched GetObservation requests for the latest value of up to {@value #UNIT_BATCH_SIZE} procedures each. The
+     * cached units have to be validated before, see {@link #validateUoms(String, String, String)}.
+     *
+     * @param offering           the offering
+     * @param dataAvailabilities the data availabilities of the offering
+     * @param serviceURL         the service URL
+     */
+    protected void loadUoms(String offering, Collection<DataAvailability> dataAvailabilities, String serviceURL) {
+        Map<String, Set<String>> missing = new LinkedHashMap<>();
+        dataAvailabilities.stream().filter(dataAval -> !unitCache.contains(serviceURL, offering,
+                dataAval.getProcedure().getHref(), dataAval.getObservedProperty().getHref()))
+                .forEach(dataAval -> missing.computeIfAbsent(dataAval.getProcedure().getHref(),
+                        key -> new LinkedHashSet<>()).add(dataAval.getObservedProperty().getHref()));
+        for (List<String> procedures : Lists.partition(new ArrayList<>(missing.keySet()), UNIT_BATCH_SIZE)) {
+            Set<String> phenomena = procedures.stream().map(missing::get).flatMap(Set::stream)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            GetObservationRequest request =
+                    new GetObservationRequest(SosConstants.SOS, Sos2Constants.SERVICEVERSION);
+            request.setOfferings(Collections.singletonList(offering));
+            request.setProcedures(procedures);
+            request.setObservedProperties(new ArrayList<>(phenomena));
+            request.addTemporalFilter(createLatestTimefilter());
+            request.setResponseFormat(OmConstants.NS_OM_2);
+            try {
+                getObservation(request, serviceURL).getObservationCollection().toStream()
+                        .forEach(observation -> unitCache.putUnit(serviceURL, offering,
+                                observation.getObservationConstellation().getProcedureIdentifier(),
+                                observation.getObservationConstellation().getObservablePropertyIdentifier(),
+                                observation.getValue().getValue().getUnit()));
+            } catch (ConnectorRequestFailedException ex) {
+                LOGGER.warn("Could not request the units of {} procedures of {}", procedures.size(), serviceURL, ex);
+                continue;
+            }
+            // datasets without a latest value have no unit yet, see UnitCache#putUnit
+            procedures.forEach(procedure -> missing.get(procedure).stream()
+                    .filter(phenomenon -> !unitCache.contains(serviceURL, offering, procedure, phenomenon))
+                    .forEach(phenomenon -> unitCache.putUnit(serviceURL, offering, procedure, phenomenon, null)));
+        }
+    }
+
     protected Object getSosResponseFor(String uri) {
         try {
-            return decodeResponse(sendGetRequest(uri));
+            return executeLimited(uri, () -> decodeResponse(sendGetRequest(uri)));
         } catch (IOException ex) {
             LOGGER.error(COULD_NOT_RETRIEVE_RESPONSE, ex);
             throw new ConnectorRequestFailedException(ex);
         }
     }
 
+    /**
+     * Requests and decodes the response for a KVP request without blocking the calling thread while the request
+     * is outstanding, see {@link #sendGetRequestAsync(String, java.util.function.Function)}.
+     *
+     * @param uri the KVP request URI
+     * @return the future decoded response
+     */
+    protected CompletableFuture<Object> getSosResponseForAsync(String uri) {
+        return sendGetRequestAsync(uri, this::decodeResponse);
+    }
+
     protected Object getSosResponseFor(URL uri) {
         return getSosResponseFor(uri.toString());
     }
 
     protected Object getSosResponseFor(OwsServiceRequest request, String namespace, String serviceUrl) {
-        counter++;
+        return getSosResponseFor(request, namespace, serviceUrl, this::decodeResponse);
+    }
+
+    protected <T> T getSosResponseFor(OwsServiceRequest request, String namespace, String serviceUrl,
+            Function<HttpResponse, T> decoder) {
+        counter.incrementAndGet();
         try {
-            EncoderKey encoderKey = CodingHelper.getEncoderKey(namespace, request);
-            Encoder<XmlObject, OwsServiceRequest> encoder = getEncoderRepository().getEncoder(encoderKey);
-            if (encoder == null) {
-                throw new NoEncoderForKeyException(encoderKey);
+            String operation = request.getOperationName();
+            Optional<HttpEntity> entity = SosRequestEntity.create(request, false);
+            XmlObject xmlRequest = entity.isPresent() ? null : encodeRequest(request, namespace);
+            DataSourceConfiguration config = findServiceConfig(serviceUrl);
+            if (supportsExi(config)) {
+                Optional<T> response = getExiResponseFor(entity.isPresent() ? entity.get()
+                        : new StringEntity(xmlRequest.xmlText(), CONTENT_TYPE_XML), operation, config, decoder);
+                if (response.isPresent()) {
+                    return response.get();
+                }
             }
-            XmlObject xmlRequest = encoder.encode(request);
-            return decodeResponse(sendPostRequest(xmlRequest, serviceUrl));
+            if (entity.isPresent()) {
+                return executeLimited(serviceUrl, operation,
+                        () -> decoder.apply(sendPostRequest(entity.get(), serviceUrl)));
+            }
+            return executeLimited(serviceUrl, operation,
+                    () -> decoder.apply(sendPostRequest(xmlRequest, serviceUrl)));
         } catch (IOException ex) {
             LOGGER.error(COULD_NOT_RETRIEVE_RESPONSE, ex);
             throw new ConnectorRequestFailedException(ex);
@@ -187,16 +353,92 @@ public abstract class AbstractSosConnector extends AbstractConnector {
         }
     }
 
+    private XmlObject encodeRequest(OwsServiceRequest request, String namespace) throws EncodingException {
+        EncoderKey encoderKey = CodingHelper.getEncoderKey(namespace, request);
+        Encoder<XmlObject, OwsServiceRequest> encoder = getEncoderRepository().getEncoder(encoderKey);
+        if (encoder == null) {
+            throw new NoEncoderForKeyException(encoderKey);
+        }
+        return encoder.encode(request);
+    }
+
+    /**
+     * Sends a POX request with the EXI binding. Responses are decoded whether they are EXI documents or not, so
+     * exception reports fail the request. If the data source successfully answers with another content type or
+     * refuses the EXI content type (status 406 or 415), the binding is disabled for it until the capabilities are
+     * harvested again, see {@link #addBindingUrls(SosCapabilities, DataSourceConfiguration)}. Only these refusals and
+     * transport failures make the request fall back to plain XML.
+     *
+     * @param <T>        the response type
+     * @param xmlRequest the XML request
+     * @param operation  the requested operation
+     * @param config     the data source
+     * @param decoder    the decoder of the response
+     * @return the decoded response or an empty optional if the request has to be sent as plain XML
+     * @throws IOException if the request fails
+     */
+    private <T> Optional<T> getExiResponseFor(HttpEntity xmlRequest, String operation,
+            DataSourceConfiguration config, Function<HttpResponse, T> decoder) throws IOException {
+        String url = getExiUrl(config).toString();
+        return executeLimited(url, operation, () -> {
+            HttpResponse exiResponse;
+            try {
+                exiResponse = sendPostRequest(new ExiEntity(xmlRequest), url);
+            } catch (IOException ex) {
+                LOGGER.debug("Sending the EXI request to {} failed, sending it as plain XML", config.getItemName(),
+                        ex);
+                return Optional.empty();
+            }
+            int status = exiResponse.getStatusLine().getStatusCode();
+            HttpEntity entity = exiResponse.getEntity();
+            if (status == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE || status == HttpStatus.SC_NOT_ACCEPTABLE) {
+                EntityUtils.consumeQuietly(entity);
+                LOGGER.warn("Data source {} refuses EXI with status {}, falling back to plain XML",
+                        config.getItemName(), status);
+                config.setDisableExi(true);
+                return Optional.empty();
+            }
+            if (entity == null) {
+                throw new ConnectorRequestFailedException(String.format(
+                        "Data source %s answered the EXI request with status %d and no content",
+                        config.getItemName(), status));
+            }
+            if (ExiDecodingEntity.isExi(entity)) {
+                return Optional.of(decoder.apply(ExiDecodingEntity.decode(exiResponse).get()));
+            }
+            if (status >= HttpStatus.SC_OK && status < HttpStatus.SC_MULTIPLE_CHOICES) {
+                LOGGER.warn("Data source {} does not answer with EXI, falling back to plain XML",
+                        config.getItemName());
+                config.setDisableExi(true);
+            }
+            // e.g. a plain XML response or exception report
+            return Optional.of(decoder.apply(exiResponse));
+        });
+    }
+
     private Object getSosResponseFor(SoapRequest request, String namespace, String serviceUrl) {
-        counter++;
+        return getSosResponseFor(request, namespace, serviceUrl, this::decodeResponse);
+    }
+
+    private <T> T getSosResponseFor(SoapRequest request, String namespace, String serviceUrl,
+            Function<HttpResponse, T> decoder) {
+        counter.incrementAndGet();
         try {
+            Object body = request.getSoapBodyContent();
+            String operation = body instanceof OwsServiceRequest ? ((OwsServiceRequest) body).getOperationName() : null;
+            Optional<HttpEntity> entity = SosRequestEntity.create(body, true);
+            if (entity.isPresent()) {
+                return executeLimited(serviceUrl, operation,
+                        () -> decoder.apply(sendPostRequest(entity.get(), serviceUrl)));
+            }
             EncoderKey encoderKey = CodingHelper.getEncoderKey(namespace, request);
             Encoder<XmlObject, Object> encoder = getEncoderRepository().getEncoder(encoderKey);
             if (encoder == null) {
                 throw new NoEncoderForKeyException(encoderKey);
             }
             XmlObject xmlRequest = encoder.encode(request);
-            return decodeResponse(sendPostRequest(xmlRequest, serviceUrl));
+            return executeLimited(serviceUrl, operation,
+                    () -> decoder.apply(sendPostRequest(xmlRequest, serviceUrl)));
         } catch (IOException ex) {
             LOGGER.error(COULD_NOT_RETRIEVE_RESPONSE, ex);
             throw new ConnectorRequestFailedException(ex);
@@ -206,9 +448,37 @@ public abstract class AbstractSosConnector extends AbstractConnector {
         }
     }
 
+    /**
+     * Sends a request with the JSON binding.
+     *
+     * @param <T>       the response type
+     * @param entity    the JSON request
+     * @param operation the requested operation
+     * @param config    the data source
+     * @param decoder   the decoder of the response
+     * @return the decoded response or an empty optional if the request has to be sent with the XML bindings
+     */
+    private <T> Optional<T> getJsonResponseFor(HttpEntity entity, String operation, DataSourceConfiguration config,
+            Function<HttpResponse, Optional<T>> decoder) {
+        counter.incrementAndGet();
+        try {
+            String url = getJsonUrl(config).toString();
+            Optional<T> response = executeLimited(url, operation, () -> decoder.apply(sendPostRequest(entity, url)));
+            if (!response.isPresent()) {
+                LOGGER.debug("Falling back to the XML binding for {} request to {}", operation, url);
+            }
+            return response;
+        } catch (MalformedURLException ex) {
+            throw new IllegalArgumentException(ex);
+        } catch (IOException ex) {
+            LOGGER.error(COULD_NOT_RETRIEVE_RESPONSE, ex);
+            throw new ConnectorRequestFailedException(ex);
+        }
+    }
+
     protected Object decodeResponse(HttpResponse response) {
-        try (InputStream content = response.getEntity().getContent()) {
-            XmlObject xmlResponse = XmlObject.Factory.parse(content);
+        try {
+            XmlObject xmlResponse = parseResponse(response.getEntity());
             DecoderKey decoderKey = CodingHelper.getDecoderKey(xmlResponse);
             Decoder<Object, Object> decoder = getDecoderRepository().getDecoder(decoderKey);
             if (decoder == null) {
@@ -231,6 +501,18 @@ public abstract class AbstractSosConnector extends AbstractConnector {
         }
     }
 
+    private XmlObject parseResponse(HttpEntity entity) throws IOException, XmlException {
+        if (entity instanceof ExiDecodingEntity) {
+            // build the document from the decoded events without serializing them as XML
+            XmlSaxHandler handler = XmlObject.Factory.newXmlSaxHandler();
+            ((ExiDecodingEntity) entity).parse(handler.getContentHandler(), handler.getLexicalHandler());
+            return handler.getObject();
+        }
+        try (InputStream content = entity.getContent()) {
+            return XmlObject.Factory.parse(content);
+        }
+    }
+
     protected abstract boolean canHandle(DataSourceConfiguration config, GetCapabilitiesResponse capabilities);
 
     public abstract ServiceConstellation getConstellation(DataSourceConfiguration config,
@@ -257,26 +539,93 @@ public abstract class AbstractSosConnector extends AbstractConnector {
         return getFeatureOfInterest(featureId, null, null, serviceUri);
     }
 
+    /**
+     * Returns the features of a procedure. The response is cached for the harvest, so procedures shared by several
+     * offerings are requested once.
+     *
+     * @param procedureId the procedure
+     * @param cache       the feature cache of the harvest
+     * @param serviceUri  the service URL
+     * @return the feature or feature collection of the procedure
+     */
+    protected AbstractFeature getFeatureOfInterestByProcedure(String procedureId, FeatureCache cache,
+            String serviceUri) {
+        Optional<AbstractFeature> cached = cache.getFeaturesOfProcedure(procedureId);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        AbstractFeature feature = getFeatureOfInterestByProcedure(procedureId, serviceUri).getAbstractFeature();
+        cache.putFeaturesOfProcedure(procedureId, feature);
+        return feature;
+    }
+
+    /**
+     * Requests the features that are not cached yet with batched GetFeatureOfInterest requests carrying up to
+     * {@value #FEATURE_BATCH_SIZE} identifiers each. A failing batch is logged and leaves its features missing.
+     *
+     * @param featureIds the feature identifiers
+     * @param cache      the feature cache of the harvest
+     * @param serviceUri the service URL
+     */
+    protected void loadFeaturesOfInterest(Collection<String> featureIds, FeatureCache cache, String serviceUri) {
+        List<String> missing = new ArrayList<>(cache.getMissing(featureIds));
+        for (List<String> batch : Lists.partition(missing, FEATURE_BATCH_SIZE)) {
+            try {
+                cache.putFeature(
+                        getFeatureOfInterest(batch, Collections.emptyList(), null, serviceUri).getAbstractFeature());
+            } catch (ConnectorRequestFailedException ex) {
+                LOGGER.warn("Could not request {} features of {}", batch.size(), serviceUri, ex);
+            }
+        }
+    }
+
     protected GetFeatureOfInterestResponse getFeatureOfInterest(String featureId, String procedureId, String obsProp,
             String serviceURL) {
+        return getFeatureOfInterest(toList(featureId), toList(procedureId), obsProp, serviceURL);
+    }
+
+    private static List<String> toList(String value) {
+        return value != null ? Collections.singletonList(value) : Collections.emptyList();
+    }
+
+    private GetFeatureOfInterestResponse getFeatureOfInterest(List<String> featureIds, List<String> procedureIds,
+            String obsProp, String serviceURL) {
         DataSourceConfiguration config = getServiceConfig(serviceURL);
+        GetFeatureOfInterestRequest request =
+                new GetFeatureOfInterestRequest(SosConstants.SOS, Sos2Constants.SERVICEVERSION);
+        if (!featureIds.isEmpty()) {
+            request.setFeatureIdentifiers(featureIds);
+        }
+        if (!procedureIds.isEmpty()) {
+            request.setProcedures(procedureIds);
+        }
+        Optional.ofNullable(obsProp).map(Arrays::asList).ifPresent(request::setObservedProperties);
+        if (supportsJson(config)) {
+            Optional<GetFeatureOfInterestResponse> response = SosJsonRequests.getFeatureOfInterest(request)
+                    .flatMap(entity -> getJsonResponseFor(entity, request.getOperationName(), config,
+                            SosJsonDecoder::decodeFeatureOfInterest));
+            if (response.isPresent()) {
+                return response.get();
+            }
+        }
         try {
             if (supportsKvp(config)) {
                 QueryBuilder builder = new QueryBuilder(getKvpUrl(config));
                 builder.add(OWSConstants.RequestParams.service, SosConstants.SOS);
                 builder.add(OWSConstants.RequestParams.version, Sos2Constants.SERVICEVERSION);
                 builder.add(OWSConstants.RequestParams.request, SosConstants.Operations.GetFeatureOfInterest);
-                builder.add(Sos2Constants.GetFeatureOfInterestParams.procedure, procedureId);
+                if (!procedureIds.isEmpty()) {
+                    builder.add(Sos2Constants.GetFeatureOfInterestParams.procedure,
+                            procedureIds.toArray(new String[0]));
+                }
                 builder.add(Sos2Constants.GetFeatureOfInterestParams.observedProperty, obsProp);
-                builder.add(Sos2Constants.GetFeatureOfInterestParams.featureOfInterest, featureId);
+                if (!featureIds.isEmpty()) {
+                    builder.add(Sos2Constants.GetFeatureOfInterestParams.featureOfInterest,
+                            featureIds.toArray(new String[0]));
+                }
                 checkHumanReadableName(config, builder);
                 return (GetFeatureOfInterestResponse) getSosResponseFor(builder.build());
             } else {
-                GetFeatureOfInterestRequest request =
-                        new GetFeatureOfInterestRequest(SosConstants.SOS, Sos2Constants.SERVICEVERSION);
-                Optional.ofNullable(featureId).map(Arrays::asList).ifPresent(request::setFeatureIdentifiers);
-                Optional.ofNullable(procedureId).map(Arrays::asList).ifPresent(request::setProcedures);
-                Optional.ofNullable(obsProp).map(Arrays::asList).ifPresent(request::setObservedProperties);
                 if (supportsPox(config)) {
                     return (GetFeatureOfInterestResponse) getSosResponseFor(request, Sos2Constants.NS_SOS_20,
                             getPoxUrl(config).toString());
@@ -332,6 +681,45 @@ public abstract class AbstractSosConnector extends AbstractConnector {
                         .anyMatch(name -> name.equals(GetDataAvailabilityConstants.OPERATION_NAME));
     }
 
+    protected boolean supportsResultHandling(OwsCapabilities owsCaps) {
+        Set<String> operations = owsCaps.getOperationsMetadata().map(OwsOperationsMetadata::getOperations)
+                .map(Set::stream).orElseGet(Stream::empty).map(OwsOperation::getName).collect(Collectors.toSet());
+        return operations.contains(GET_RESULT_TEMPLATE) && operations.contains(GET_RESULT);
+    }
+
+    /**
+     * Requests the data availability of the whole service with one unfiltered GetDataAvailability request. If the
+     * data source rejects the request, e.g. because the response would exceed its size limit, service-wide requests
+     * are disabled for it.
+     *
+     * @param config the data source
+     * @return the data availability grouped by offering or an empty optional if it has to be requested per
+     *         procedure
+     */
+    protected Optional<Map<String, List<DataAvailability>>> getServiceDataAvailability(
+            DataSourceConfiguration config) {
+        if (config.isDisableServiceDataAvailability()) {
+            return Optional.empty();
+        }
+        try {
+            Map<String, List<DataAvailability>> byOffering = new LinkedHashMap<>();
+            getDataAvailability(null, null, null, null, config.getUrl()).getDataAvailabilities()
+                    .forEach(dataAval -> byOffering
+                            .computeIfAbsent(dataAval.getOffering().getHref(), key -> new ArrayList<>())
+                            .add(dataAval));
+            LOGGER.debug("Received the data availability of {} offerings of {}", byOffering.size(),
+                    config.getItemName());
+            return Optional.of(byOffering);
+        } catch (ConnectorRequestFailedException ex) {
+            LOGGER.warn("Could not request the data availability of {}, requesting it per procedure",
+                    config.getItemName(), ex);
+            if (ex.getCause() instanceof OwsExceptionReport) {
+                config.setDisableServiceDataAvailability(true);
+            }
+            return Optional.empty();
+        }
+    }
+
     protected GetDataAvailabilityResponse getDataAvailabilityByProcedure(String procedureId, String serviceURL) {
         return getDataAvailability(procedureId, null, null, null, serviceURL);
     }
@@ -351,6 +739,31 @@ public abstract class AbstractSosConnector extends AbstractConnector {
     protected GetDataAvailabilityResponse getDataAvailability(String procedure, String offering, String phenomenon,
             String feature, String serviceURL) {
         DataSourceConfiguration config = getServiceConfig(serviceURL);
+        if (supportsJson(config)) {
+            Optional<GetDataAvailabilityResponse> response = getJsonResponseFor(
+                    SosJsonRequests.getDataAvailability(procedure, offering, phenomenon, feature),
+                    GetDataAvailabilityConstants.OPERATION_NAME, config, SosJsonDecoder::decodeDataAvailability);
+            if (response.isPresent()) {
+                return response.get();
+            }
+        }
+        return (GetDataAvailabilityResponse) getSosResponseFor(
+                createDataAvailabilityUrl(procedure, offering, phenomenon, feature, serviceURL));
+    }
+
+    protected CompletableFuture<GetDataAvailabilityResponse> getDataAvailabilityByProcedureAsync(String procedureId,
+            String serviceURL) {
+        if (supportsJson(getServiceConfig(serviceURL))) {
+            // the asynchronous client only sends GET requests
+            return executeLimitedAsync(serviceURL, () -> getDataAvailabilityByProcedure(procedureId, serviceURL));
+        }
+        return getSosResponseForAsync(createDataAvailabilityUrl(procedureId, null, null, null, serviceURL))
+                .thenApply(GetDataAvailabilityResponse.class::cast);
+    }
+
+    private String createDataAvailabilityUrl(String procedure, String offering, String phenomenon, String feature,
+            String serviceURL) {
+        DataSourceConfiguration config = getServiceConfig(serviceURL);
         try {
             QueryBuilder builder = new QueryBuilder(getKvpUrl(config));
             builder.add(OWSConstants.RequestParams.service, SosConstants.SOS);
@@ -361,7 +774,7 @@ public abstract class AbstractSosConnector extends AbstractConnector {
             builder.add(GetDataAvailabilityConstants.GetDataAvailabilityParams.observedProperty, phenomenon);
             builder.add(GetDataAvailabilityConstants.GetDataAvailabilityParams.featureOfInterest, feature);
             checkHumanReadableName(config, builder);
-            return (GetDataAvailabilityResponse) getSosResponseFor(builder.build());
+            return builder.build().toString();
         } catch (MalformedURLException ex) {
             throw new IllegalArgumentException(ex);
         }
@@ -390,6 +803,151 @@ public abstract class AbstractSosConnector extends AbstractConnector {
 
     protected GetObservationResponse getObservation(DatasetEntity seriesEntity, List<TemporalFilter> temporalFilter,
             SpatialFilter spatialFilter, String responseFormat) {
+        return getObservation(createObservationRequest(seriesEntity, temporalFilter, spatialFilter, responseFormat),
+                seriesEntity.getService().getUrl());
+    }
+
+    /**
+     * Requests the observations of a dataset and creates the data entities. Measurement, count and text
+     * observations are decoded while the response is read, see {@link StreamingObservationDecoder}. Responses the
+     * streaming decoder does not understand are buffered and decoded by the generic decoders.
+     *
+     * @param seriesEntity   the dataset
+     * @param temporalFilter the optional temporal filter
+     * @return the data entities
+     */
+    protected List<DataEntity<?>> getObservationData(DatasetEntity seriesEntity, TemporalFilter temporalFilter) {
+        GetObservationRequest request = createObservationRequest(seriesEntity,
+                Optional.ofNullable(temporalFilter).map(Arrays::asList).orElseGet(Collections::emptyList), null,
+                null);
+        String serviceURL = seriesEntity.getService().getUrl();
+        if (StreamingObservationDecoder.supports(seriesEntity.getValueType())) {
+            DataSourceConfiguration config = getServiceConfig(serviceURL);
+            if (supportsJson(config)) {
+                Optional<List<DataEntity<?>>> data = SosJsonRequests.getObservation(request)
+                        .flatMap(entity -> getJsonResponseFor(entity, request.getOperationName(), config,
+                                response -> SosJsonDecoder.decodeObservations(response,
+                                        seriesEntity.getValueType())));
+                if (data.isPresent()) {
+                    return data.get();
+                }
+            }
+            StreamingObservationDecoder decoder = new StreamingObservationDecoder(seriesEntity.getValueType());
+            return getObservation(request, serviceURL, response -> {
+                try {
+                    return decoder.decode(response, buffered -> {
+                        LOGGER.debug("Falling back to generic decoding of observations for dataset {}",
+                                seriesEntity.getId());
+                        return createDataEntities(decodeObservationResponse(buffered), seriesEntity);
+                    });
+                } catch (IOException ex) {
+                    LOGGER.error(COULD_NOT_RETRIEVE_RESPONSE, ex);
+                    throw new ConnectorRequestFailedException(ex);
+                }
+            });
+        }
+        return createDataEntities(getObservation(request, serviceURL), seriesEntity);
+    }
+
+    private List<DataEntity<?>> createDataEntities(GetObservationResponse response, DatasetEntity seriesEntity) {
+        return response.getObservationCollection().toStream()
+                .map(observation -> createDataEntity(observation, seriesEntity)).collect(Collectors.toList());
+    }
+
+    /**
+     * Requests the observations of a dataset as compact result values via GetResult, if the data source supports
+     * result handling and the offering of the dataset has a single procedure. The result template of the dataset is
+     * cached until its result can not be decoded or the capabilities are harvested again.
+     *
+     * @param seriesEntity the dataset
+     * @param timespan     the optional timespan
+     * @return the data entities or an empty optional if they have to be requested as observations
+     */
+    protected Optional<List<DataEntity<?>>> getResultData(DatasetEntity seriesEntity, Interval timespan) {
+        DataSourceConfiguration config = getServiceConfig(seriesEntity.getService().getUrl());
+        if (config == null || !config.isSupportsResultHandling() || !supportsKvp(config)
+                || !config.getResultHandlingOfferings().contains(seriesEntity.getOffering().getIdentifier())
+                || !StreamingObservationDecoder.supports(seriesEntity.getValueType())) {
+            return Optional.empty();
+        }
+        Map<Long, Optional<ResultTemplate>> templates =
+                resultTemplates.computeIfAbsent(config.getUrl(), url -> new ConcurrentHashMap<>());
+        Optional<ResultTemplate> template = templates.get(seriesEntity.getId());
+        if (template == null) {
+            template = getResultTemplate(seriesEntity, config);
+            templates.putIfAbsent(seriesEntity.getId(), template);
+        }
+        if (!template.isPresent()) {
+            return Optional.empty();
+        }
+        ResultTemplate resultTemplate = template.get();
+        try {
+            QueryBuilder builder = createResultHandlingQuery(seriesEntity, config, GET_RESULT);
+            builder.add(Sos2Constants.GetObservationParams.featureOfInterest,
+                    seriesEntity.getFeature().getIdentifier());
+            if (timespan != null) {
+                builder.add(Sos2Constants.GetObservationParams.temporalFilter,
+                        OmConstants.PHENOMENON_TIME_NAME + ","
+                                + (timespan.toDurationMillis() == 0 ? timespan.getStart().toString()
+                                        : timespan.getStart() + "/" + timespan.getEnd()));
+            }
+            String uri = builder.build().toString();
+            Optional<List<DataEntity<?>>> data = executeLimited(uri, GET_RESULT,
+                    () -> resultTemplate.decodeResult(sendGetRequest(uri), seriesEntity.getValueType()));
+            if (!data.isPresent()) {
+                LOGGER.debug("Falling back to observations for dataset {}", seriesEntity.getId());
+                templates.remove(seriesEntity.getId());
+            }
+            return data;
+        } catch (IOException ex) {
+            LOGGER.error(COULD_NOT_RETRIEVE_RESPONSE, ex);
+            throw new ConnectorRequestFailedException(ex);
+        }
+    }
+
+    /**
+     * Determines the offerings whose observations can be requested via GetResult and forgets the result templates
+     * of the data source, as they may have changed with the capabilities.
+     *
+     * @param config       the data source
+     * @param capabilities the capabilities of the data source
+     */
+    protected void updateResultHandling(DataSourceConfiguration config, SosCapabilities capabilities) {
+        config.setSupportsResultHandling(supportsResultHandling(capabilities));
+        config.setResultHandlingOfferings(capabilities.getContents().map(Collection::stream).orElseGet(Stream::empty)
+                .filter(offering -> offering.getProcedures().size() == 1).map(SosObservationOffering::getIdentifier)
+                .collect(Collectors.toSet()));
+        resultTemplates.remove(config.getUrl());
+    }
+
+    private Optional<ResultTemplate> getResultTemplate(DatasetEntity seriesEntity, DataSourceConfiguration config) {
+        try {
+            String uri = createResultHandlingQuery(seriesEntity, config, GET_RESULT_TEMPLATE).build().toString();
+            return executeLimited(uri, GET_RESULT_TEMPLATE, () -> ResultTemplate.decode(sendGetRequest(uri)));
+        } catch (IOException ex) {
+            LOGGER.error(COULD_NOT_RETRIEVE_RESPONSE, ex);
+            throw new ConnectorRequestFailedException(ex);
+        }
+    }
+
+    private QueryBuilder createResultHandlingQuery(DatasetEntity seriesEntity, DataSourceConfiguration config,
+            String operation) {
+        try {
+            QueryBuilder builder = new QueryBuilder(getKvpUrl(config));
+            builder.add(OWSConstants.RequestParams.service, SosConstants.SOS);
+            builder.add(OWSConstants.RequestParams.version, Sos2Constants.SERVICEVERSION);
+            builder.add(OWSConstants.RequestParams.request, operation);
+            builder.add(Sos2Constants.GetObservationParams.offering, seriesEntity.getOffering().getIdentifier());
+            builder.add(Sos2Constants.GetObservationParams.observedProperty,
+                    seriesEntity.getPhenomenon().getIdentifier());
+            return builder;
+        } catch (MalformedURLException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    private GetObservationRequest createObservationRequest(DatasetEntity seriesEntity,
+            List<TemporalFilter> temporalFilter, SpatialFilter spatialFilter, String responseFormat) {
         GetObservationRequest request = new GetObservationRequest(SosConstants.SOS, Sos2Constants.SERVICEVERSION);
         request.addProcedure(seriesEntity.getProcedure().getIdentifier());
         request.addOffering(seriesEntity.getOffering().getIdentifier());
@@ -398,7 +956,7 @@ public abstract class AbstractSosConnector extends AbstractConnector {
         Optional.ofNullable(temporalFilter).ifPresent(request::setTemporalFilters);
         Optional.ofNullable(spatialFilter).ifPresent(request::setSpatialFilter);
         request.setResponseFormat(Optional.ofNullable(responseFormat).orElse(OmConstants.NS_OM_2));
-        return getObservation(request, seriesEntity.getService().getUrl());
+        return request;
     }
 
     private GetObservationResponse getObservation(String procedure, String offering, String phenomenon, String feature,
@@ -414,20 +972,30 @@ public abstract class AbstractSosConnector extends AbstractConnector {
     }
 
     private GetObservationResponse getObservation(GetObservationRequest request, String serviceURL) {
+        return getObservation(request, serviceURL, this::decodeObservationResponse);
+    }
+
+    private GetObservationResponse decodeObservationResponse(HttpResponse response) {
+        Object decoded = decodeResponse(response);
+        return (GetObservationResponse) (decoded instanceof SoapResponse ? ((SoapResponse) decoded).getBodyContent()
+                : decoded);
+    }
+
+    private <T> T getObservation(GetObservationRequest request, String serviceURL,
+            Function<HttpResponse, T> decoder) {
         DataSourceConfiguration config = getServiceConfig(serviceURL);
         try {
             if (supportsPox(config)) {
-                return (GetObservationResponse) getSosResponseFor(request,
+                return getSosResponseFor(request,
                         request.isSetVersion() && request.getVersion().equals(Sos1Constants.SERVICEVERSION)
                                 ? Sos1Constants.NS_SOS
                                 : Sos2Constants.NS_SOS_20,
-                        getPoxUrl(config).toString());
+                        getPoxUrl(config).toString(), decoder);
             }
             SoapRequest soap =
                     new SoapRequest(SOAPConstants.URI_NS_SOAP_1_2_ENVELOPE, SOAPConstants.SOAP_1_2_PROTOCOL);
             soap.setSoapBodyContent(request);
-            return (GetObservationResponse) ((SoapResponse) getSosResponseFor(soap, SoapConstants.NS_SOAP_12,
-                    getSoapUrl(config).toString())).getBodyContent();
+            return getSosResponseFor(soap, SoapConstants.NS_SOAP_12, getSoapUrl(config).toString(), decoder);
         } catch (MalformedURLException ex) {
             throw new IllegalArgumentException(ex);
         }
@@ -435,6 +1003,8 @@ public abstract class AbstractSosConnector extends AbstractConnector {
     }
 
     protected void addBindingUrls(SosCapabilities capabilities, DataSourceConfiguration config) {
+        // negotiate the EXI binding again, the data source may support it now
+        config.setDisableExi(false);
         Optional<OwsOperation> operation = capabilities.getOperationsMetadata()
                 .map(OwsOperationsMetadata::getOperations).map(Set::stream).orElseGet(Stream::empty)
                 .filter(o -> o.getName().equals(SosConstants.Operations.GetObservation.name())).findFirst();
@@ -508,6 +1078,28 @@ public abstract class AbstractSosConnector extends AbstractConnector {
                 .toURL();
     }
 
+    protected URL getJsonUrl(DataSourceConfiguration config) throws MalformedURLException {
+        return URI.create(config.getPostUrls().get(MediaTypes.APPLICATION_JSON.toString())).toURL();
+    }
+
+    /**
+     * @param config the data source
+     * @return if requests can be sent with the JSON binding. The JSON requests carry no extensions, so data
+     *         sources disabling human readable names are requested with the XML bindings.
+     */
+    protected boolean supportsJson(DataSourceConfiguration config) {
+        return config != null && !config.isDisableJson() && !config.isDisableHumanReadableName()
+                && config.getPostUrls().containsKey(MediaTypes.APPLICATION_JSON.toString());
+    }
+
+    protected URL getExiUrl(DataSourceConfiguration config) throws MalformedURLException {
+        return URI.create(config.getPostUrls().get(ExiEntity.CONTENT_TYPE)).toURL();
+    }
+
+    protected boolean supportsExi(DataSourceConfiguration config) {
+        return config != null && !config.isDisableExi() && config.getPostUrls().containsKey(ExiEntity.CONTENT_TYPE);
+    }
+
     protected boolean supportsKvp(DataSourceConfiguration config) {
         return !config.getGetUrls().isEmpty() && (config.getGetUrls().containsKey(DEFAULT)
                 || config.getGetUrls().containsKey(MediaTypes.APPLICATION_KVP.toString()));
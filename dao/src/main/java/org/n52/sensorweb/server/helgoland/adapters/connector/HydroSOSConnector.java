@@ -27,12 +27,9 @@
  */
 package org.n52.sensorweb.server.helgoland.adapters.connector;
 
-import static java.util.stream.Collectors.toList;
-
 import java.util.List;
 import java.util.Optional;
 
-import org.n52.janmayen.function.Functions;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceConstellation;
@@ -70,10 +67,7 @@ public class HydroSOSConnector extends SOS2Connector {
     @Override
     public List<DataEntity<?>> getObservations(DatasetEntity seriesEntity, DbQuery query) {
         // TODO set responseFormat and fix response enoding
-        List<DataEntity<?>> data = getObservation(seriesEntity, createTimeFilter(query))
-                .getObservationCollection().toStream()
-                .map(Functions.currySecond(this::createDataEntity, seriesEntity))
-                .collect(toList());
+        List<DataEntity<?>> data = getObservationData(seriesEntity, createTimeFilter(query));
         LOGGER.info("Found {} Entries", data.size());
         return data;
     }
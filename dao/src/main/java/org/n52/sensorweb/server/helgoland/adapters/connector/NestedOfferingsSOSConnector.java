@@ -28,6 +28,7 @@
 package org.n52.sensorweb.server.helgoland.adapters.connector;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 import java.util.List;
 import java.util.Optional;
@@ -38,19 +39,18 @@ import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
 import org.n52.sensorweb.server.helgoland.adapters.connector.constellations.QuantityDatasetConstellation;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.EntityBuilder;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.FeatureCache;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ProxyException;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceConstellation;
 import org.n52.series.db.beans.DataEntity;
 import org.n52.series.db.beans.DatasetEntity;
 import org.n52.series.db.beans.UnitEntity;
-import org.n52.shetland.ogc.gml.AbstractFeature;
 import org.n52.shetland.ogc.gml.ReferenceType;
 import org.n52.shetland.ogc.om.features.samplingFeatures.AbstractSamplingFeature;
 import org.n52.shetland.ogc.ows.service.GetCapabilitiesResponse;
 import org.n52.shetland.ogc.ows.service.OwsServiceResponse;
 import org.n52.shetland.ogc.sos.SosObservationOffering;
 import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityResponse;
-import org.n52.shetland.ogc.sos.response.GetFeatureOfInterestResponse;
 import org.n52.shetland.ogc.sos.ro.RelatedOfferingConstants;
 import org.n52.shetland.ogc.sos.ro.RelatedOfferings;
 import org.slf4j.Logger;
@@ -116,6 +116,10 @@ public class NestedOfferingsSOSConnector extends SOS2Connector {
                 if (relatedOffering.getTitle().equalsIgnoreCase(
                         "http://ressource.brgm-rec.fr/obs/RawGeologicLogs/BSS000AAEU")) {
                     GetDataAvailabilityResponse response = getDataAvailabilityForOffering(relatedOffering.getHref());
+                    FeatureCache featureCache = serviceConstellation.getFeatureCache();
+                    loadFeaturesOfInterest(response.getDataAvailabilities().stream()
+                            .map(dataAvail -> dataAvail.getFeatureOfInterest().getHref()).collect(toSet()),
+                            featureCache, serviceUri);
                     response.getDataAvailabilities().forEach(dataAvail -> {
                         String procedureId = addProcedure(dataAvail, true, false, serviceConstellation);
                         String phenomenonId = addPhenomenon(dataAvail, serviceConstellation);
@@ -123,11 +127,9 @@ public class NestedOfferingsSOSConnector extends SOS2Connector {
                         String offeringId = addOffering(dataAvail.getOffering(), serviceConstellation);
                         String featureId = dataAvail.getFeatureOfInterest().getHref();
                         if (!serviceConstellation.hasFeature(featureId)) {
-                            GetFeatureOfInterestResponse foiResponse = getFeatureOfInterestById(featureId, serviceUri);
-                            AbstractFeature abstractFeature = foiResponse.getAbstractFeature();
-                            if (abstractFeature instanceof AbstractSamplingFeature) {
-                                addFeature((AbstractSamplingFeature) abstractFeature, serviceConstellation);
-                            }
+                            featureCache.getFeature(featureId).filter(AbstractSamplingFeature.class::isInstance)
+                                    .ifPresent(feature -> addFeature((AbstractSamplingFeature) feature,
+                                            serviceConstellation));
                         }
                         // TODO maybe not only QuantityDatasetConstellation
                         serviceConstellation.add(new QuantityDatasetConstellation(procedureId, offeringId, categoryId,
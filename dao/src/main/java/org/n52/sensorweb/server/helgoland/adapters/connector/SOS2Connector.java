@@ -28,21 +28,36 @@
 package org.n52.sensorweb.server.helgoland.adapters.connector;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import org.n52.janmayen.function.Functions;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
 import org.n52.sensorweb.server.helgoland.adapters.connector.constellations.DatasetConstellation;
 import org.n52.sensorweb.server.helgoland.adapters.connector.constellations.QuantityDatasetConstellation;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.EntityBuilder;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.FeatureCache;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.OfferingCheckpoint;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.OfferingFingerprints;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceConstellation;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceMetadata;
 import org.n52.series.db.beans.DataEntity;
 import org.n52.series.db.beans.DatasetEntity;
 import org.n52.series.db.beans.UnitEntity;
+import org.n52.shetland.ogc.filter.TemporalFilter;
 import org.n52.shetland.ogc.gml.AbstractFeature;
 import org.n52.shetland.ogc.gml.time.Time;
 import org.n52.shetland.ogc.gml.time.TimeInstant;
@@ -55,7 +70,7 @@ import org.n52.shetland.ogc.sos.Sos2Constants;
 import org.n52.shetland.ogc.sos.SosCapabilities;
 import org.n52.shetland.ogc.sos.SosObservationOffering;
 import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityResponse;
-import org.n52.shetland.ogc.sos.response.GetFeatureOfInterestResponse;
+import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityResponse.DataAvailability;
 import org.n52.shetland.ogc.sos.response.GetObservationResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +83,8 @@ public class SOS2Connector extends AbstractSosConnector {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SOS2Connector.class);
 
+    private static final int DEFAULT_REQUEST_WINDOW = 8;
+
     /**
      * Matches when the provider name is equal "52North" and service version is 2.0.0
      *
@@ -93,31 +110,42 @@ public class SOS2Connector extends AbstractSosConnector {
                 ServiceMetadata.createXmlServiceMetadata(capabilities.getXmlString()));
         SosCapabilities sosCaps = (SosCapabilities) capabilities.getCapabilities();
         config.setSupportsGDA(supportsGDA(sosCaps));
+        updateResultHandling(config, sosCaps);
         addBindingUrls(sosCaps, config);
         addServiceConfig(config);
+        streamDatasets(config, serviceConstellation);
         addDatasets(serviceConstellation, sosCaps, config);
-        LOGGER.info("{} requests were send to harvest the service {}", counter, config.getItemName());
+        saveUoms(config.getUrl());
+        LOGGER.info("{} requests were send to harvest the service {}", counter.get(), config.getItemName());
         return serviceConstellation;
     }
 
     @Override
     public List<DataEntity<?>> getObservations(DatasetEntity seriesEntity, DbQuery query) {
-        List<DataEntity<?>> data = getObservation(seriesEntity, createTimeFilter(query)).getObservationCollection()
-                .toStream().map(Functions.currySecond(this::createDataEntity, seriesEntity)).collect(toList());
+        List<DataEntity<?>> data = getResultData(seriesEntity, query.getTimespan())
+                .orElseGet(() -> getObservationData(seriesEntity, createTimeFilter(query)));
         LOGGER.info("Found {} Entries", data.size());
         return data;
     }
 
     @Override
     public Optional<DataEntity<?>> getFirstObservation(DatasetEntity dataset) {
-        return getObservation(dataset, createFirstTimefilter(dataset)).getObservationCollection().toStream()
-                .findFirst().map(obs -> createDataEntity(obs, dataset));
+        return getBoundaryObservation(dataset, createFirstTimefilter(dataset));
     }
 
     @Override
     public Optional<DataEntity<?>> getLastObservation(DatasetEntity dataset) {
-        return getObservation(dataset, createLatestTimefilter(dataset)).getObservationCollection().toStream()
-                .findFirst().map(obs -> createDataEntity(obs, dataset));
+        return getBoundaryObservation(dataset, createLatestTimefilter(dataset));
+    }
+
+    private Optional<DataEntity<?>> getBoundaryObservation(DatasetEntity dataset, TemporalFilter temporalFilter) {
+        try {
+            return executeHedged(dataset.getService().getUrl(),
+                    () -> getObservation(dataset, temporalFilter).getObservationCollection().toStream()
+                            .findFirst().map(obs -> createDataEntity(obs, dataset)));
+        } catch (IOException ex) {
+            throw new ConnectorRequestFailedException(ex);
+        }
     }
 
     @Override
@@ -129,70 +157,225 @@ public class SOS2Connector extends AbstractSosConnector {
 
     protected void addDatasets(ServiceConstellation serviceConstellation, SosCapabilities sosCaps,
             DataSourceConfiguration config) {
-        sosCaps.getContents().ifPresent(
-                contents -> contents.forEach(sosObsOff -> doForOffering(sosObsOff, serviceConstellation, config)));
+        if (config.isSupportsGDA()) {
+            serviceConstellation.setDataAvailability(() -> getServiceDataAvailability(config));
+        }
+        sosCaps.getContents().ifPresent(contents -> {
+            OfferingFingerprints previous = new OfferingFingerprints(config.getOfferingFingerprints());
+            Map<String, OfferingCheckpoint> checkpoints = getCheckpointStore()
+                    .map(store -> store.load(config, serviceConstellation.getService()))
+                    .orElse(Collections.emptyMap());
+            Map<String, SosObservationOffering> changed = new LinkedHashMap<>();
+            Map<String, String> fingerprints = new LinkedHashMap<>();
+            contents.forEach(offering -> {
+                String fingerprint = OfferingFingerprints.of(offering);
+                OfferingCheckpoint checkpoint = checkpoints.get(offering.getIdentifier());
+                fingerprints.put(offering.getIdentifier(), fingerprint);
+                if (previous.isUnchanged(offering, fingerprint)) {
+                    serviceConstellation.addUnchangedOffering(offering.getIdentifier());
+                } else if (checkpoint != null && checkpoint.getFingerprint().equals(fingerprint)) {
+                    checkpoint.restore(serviceConstellation);
+                    serviceConstellation.removeDatasets(offering.getIdentifier());
+                } else {
+                    changed.put(offering.getIdentifier(), offering);
+                }
+            });
+            LOGGER.info("{} of {} offerings of {} changed since the last harvest, {} resumed from a checkpoint",
+                    changed.size(), contents.size(), config.getItemName(),
+                    contents.size() - changed.size() - serviceConstellation.getUnchangedOfferings().size());
+            harvest(config, changed.values(), sosObsOff -> {
+                doForOffering(sosObsOff, serviceConstellation, config);
+                addCheckpoint(sosObsOff.getIdentifier(), fingerprints.get(sosObsOff.getIdentifier()),
+                        serviceConstellation, config);
+            });
+            addOfferingFingerprints(fingerprints, serviceConstellation);
+        });
+    }
+
+    private void addCheckpoint(String offering, String fingerprint, ServiceConstellation serviceConstellation,
+            DataSourceConfiguration config) {
+        if (serviceConstellation.getFailedOfferings().contains(offering)) {
+            LOGGER.warn("Offering '{}' was not harvested completely and is harvested again next time", offering);
+        } else {
+            getCheckpointStore().ifPresent(store -> {
+                OfferingCheckpoint checkpoint = OfferingCheckpoint.of(offering, fingerprint, serviceConstellation);
+                if (!checkpoint.isEmpty()) {
+                    store.append(config, checkpoint);
+                }
+            });
+        }
+        // datasets already passed to a pipeline are not kept beyond the checkpoint
+        serviceConstellation.removeDatasets(offering);
+    }
+
+    /**
+     * Keeps the fingerprints of the unchanged offerings and of the changed offerings that were harvested completely
+     * and resulted in datasets. Offerings with a failed request or without datasets are harvested again next time.
+     */
+    private void addOfferingFingerprints(Map<String, String> fingerprints, ServiceConstellation serviceConstellation) {
+        Set<String> harvested = serviceConstellation.getDatasetOfferings();
+        Set<String> failed = serviceConstellation.getFailedOfferings();
+        fingerprints.forEach((offering, fingerprint) -> {
+            if (serviceConstellation.getUnchangedOfferings().contains(offering)
+                    || harvested.contains(offering) && !failed.contains(offering)) {
+                serviceConstellation.getOfferingFingerprints().put(offering, fingerprint);
+            }
+        });
     }
 
     protected void doForOffering(SosObservationOffering offering, ServiceConstellation serviceConstellation,
             DataSourceConfiguration config) {
         LOGGER.debug("Harvest data for offering '{}'", offering.getIdentifier());
         String offeringId = addOffering(offering, serviceConstellation);
-
+        if (config.isSupportsGDA()) {
+            addDataAvailabilities(offering, offeringId, serviceConstellation, config);
+            return;
+        }
         offering.getProcedures().forEach(procedureId -> {
             try {
                 addProcedure(procedureId, true, false, serviceConstellation);
-                GetFeatureOfInterestResponse foiResponse =
-                        getFeatureOfInterestByProcedure(procedureId, config.getUrl());
-                AbstractFeature abstractFeature = foiResponse.getAbstractFeature();
+                AbstractFeature abstractFeature = getFeatureOfInterestByProcedure(procedureId,
+                        serviceConstellation.getFeatureCache(), config.getUrl());
                 addFeature(abstractFeature, serviceConstellation);
-                if (config.isSupportsGDA()) {
-                    GetDataAvailabilityResponse gdaResponse =
-                            getDataAvailabilityByProcedure(procedureId, config.getUrl());
-                    if (gdaResponse != null) {
-                        gdaResponse.getDataAvailabilities().forEach(dataAval -> {
-                            String phenomenonId = addPhenomenon(dataAval, serviceConstellation);
-                            String categoryId = addCategory(dataAval, serviceConstellation);
-                            String featureId = dataAval.getFeatureOfInterest().getHref();
-                            TimePeriod phenomenonTime = dataAval.getPhenomenonTime();
-
-                            UnitEntity unit = getUom(procedureId, offeringId, phenomenonId, featureId,
-                                    serviceConstellation.getService().getSupportsFirstLast(), phenomenonTime.getEnd(),
-                                    config.getUrl());
-                            serviceConstellation.add(new QuantityDatasetConstellation(procedureId, offeringId,
-                                    categoryId, phenomenonId, featureId, featureId).setUnit(unit)
-                                            .setSamplingTimeStart(phenomenonTime.getStart().toDate())
-                                            .setSamplingTimeEnd(phenomenonTime.getEnd().toDate()));
+                offering.getObservableProperties().forEach(phenomenonId -> {
+                    addPhenomenon(phenomenonId, serviceConstellation);
+                    String categoryId = addCategory(phenomenonId, serviceConstellation);
+
+                    if (abstractFeature instanceof FeatureCollection) {
+                        FeatureCollection featureCollection = (FeatureCollection) abstractFeature;
+                        featureCollection.getMembers().forEach((key, feature) -> {
+                            String featureId = addFeature((AbstractSamplingFeature) feature, serviceConstellation);
+                            // TODO maybe not only QuantityDatasetConstellation
+                            serviceConstellation.add(
+                                    addPhenomenonTime(new QuantityDatasetConstellation(procedureId, offeringId,
+                                            categoryId, phenomenonId, featureId, featureId), offering));
                         });
+                    } else {
+                        String featureId =
+                                addFeature((AbstractSamplingFeature) abstractFeature, serviceConstellation);
+                        // TODO maybe not only QuantityDatasetConstellation
+                        serviceConstellation.add(addPhenomenonTime(new QuantityDatasetConstellation(procedureId,
+                                offeringId, categoryId, phenomenonId, featureId, featureId), offering));
                     }
-                } else {
-                    offering.getObservableProperties().forEach(phenomenonId -> {
-                        addPhenomenon(phenomenonId, serviceConstellation);
-                        String categoryId = addCategory(phenomenonId, serviceConstellation);
-
-                        if (abstractFeature instanceof FeatureCollection) {
-                            FeatureCollection featureCollection = (FeatureCollection) abstractFeature;
-                            featureCollection.getMembers().forEach((key, feature) -> {
-                                String featureId = addFeature((AbstractSamplingFeature) feature, serviceConstellation);
-                                // TODO maybe not only QuantityDatasetConstellation
-                                serviceConstellation.add(
-                                        addPhenomenonTime(new QuantityDatasetConstellation(procedureId, offeringId,
-                                                categoryId, phenomenonId, featureId, featureId), offering));
-                            });
-                        } else {
-                            String featureId =
-                                    addFeature((AbstractSamplingFeature) abstractFeature, serviceConstellation);
-                            // TODO maybe not only QuantityDatasetConstellation
-                            serviceConstellation.add(addPhenomenonTime(new QuantityDatasetConstellation(procedureId,
-                                    offeringId, categoryId, phenomenonId, featureId, featureId), offering));
-                        }
-                    });
-                }
+                });
             } catch (Exception e) {
-                LOGGER.debug(String.format("Error while processing offering '%s'", offeringId), e);
+                LOGGER.warn(String.format("Error while processing procedure '%s' of offering '%s'", procedureId,
+                        offeringId), e);
+                serviceConstellation.addFailedOffering(offering.getIdentifier());
             }
         });
     }
 
+    /**
+     * Adds the datasets of the offering from the data availability of its procedures. The data availability is taken
+     * from the service-wide response, if available, or requested for the procedures concurrently. The referenced
+     * features are requested in batches afterwards. The offering is marked as failed if the data availability or a
+     * feature of a procedure is missing.
+     */
+    private void addDataAvailabilities(SosObservationOffering offering, String offeringId,
+            ServiceConstellation serviceConstellation, DataSourceConfiguration config) {
+        offering.getProcedures().forEach(procedureId -> addProcedure(procedureId, true, false, serviceConstellation));
+        Map<String, List<DataAvailability>> dataAvailabilities = serviceConstellation.getDataAvailability()
+                .map(byOffering -> groupByProcedure(offering, byOffering.getOrDefault(offeringId,
+                        Collections.emptyList())))
+                .orElseGet(() -> getDataAvailabilities(offering, serviceConstellation, config));
+
+        FeatureCache featureCache = serviceConstellation.getFeatureCache();
+        loadFeaturesOfInterest(dataAvailabilities.values().stream().flatMap(List::stream)
+                .map(dataAval -> dataAval.getFeatureOfInterest().getHref()).collect(toSet()), featureCache,
+                config.getUrl());
+        boolean supportsFirstLast = serviceConstellation.getService().getSupportsFirstLast();
+        validateUoms(offeringId, OfferingFingerprints.ofObservables(offering), config.getUrl());
+        if (supportsFirstLast) {
+            loadUoms(offeringId, dataAvailabilities.values().stream().flatMap(List::stream).collect(toList()),
+                    config.getUrl());
+        }
+
+        dataAvailabilities.forEach((procedureId, procedureDataAvailabilities) -> {
+            try {
+                procedureDataAvailabilities.forEach(dataAval -> {
+                    String featureId = dataAval.getFeatureOfInterest().getHref();
+                    Optional<AbstractFeature> feature = featureCache.getFeature(featureId);
+                    if (!feature.isPresent()) {
+                        LOGGER.warn("Feature '{}' of procedure '{}' not found", featureId, procedureId);
+                        serviceConstellation.addFailedOffering(offering.getIdentifier());
+                        return;
+                    }
+                    addFeature(feature.get(), serviceConstellation);
+                    String phenomenonId = addPhenomenon(dataAval, serviceConstellation);
+                    String categoryId = addCategory(dataAval, serviceConstellation);
+                    TimePeriod phenomenonTime = dataAval.getPhenomenonTime();
+
+                    UnitEntity unit = getCachedUom(procedureId, offeringId, phenomenonId, featureId,
+                            supportsFirstLast, phenomenonTime.getEnd(), config.getUrl());
+                    serviceConstellation.add(new QuantityDatasetConstellation(procedureId, offeringId, categoryId,
+                            phenomenonId, featureId, featureId).setUnit(unit)
+                                    .setSamplingTimeStart(phenomenonTime.getStart().toDate())
+                                    .setSamplingTimeEnd(phenomenonTime.getEnd().toDate()));
+                });
+            } catch (Exception e) {
+                LOGGER.warn(String.format("Error while processing procedure '%s' of offering '%s'", procedureId,
+                        offeringId), e);
+                serviceConstellation.addFailedOffering(offering.getIdentifier());
+            }
+        });
+    }
+
+    private Map<String, List<DataAvailability>> groupByProcedure(SosObservationOffering offering,
+            List<DataAvailability> dataAvailabilities) {
+        Map<String, List<DataAvailability>> byProcedure = new LinkedHashMap<>();
+        dataAvailabilities.stream()
+                .filter(dataAval -> offering.getProcedures().contains(dataAval.getProcedure().getHref()))
+                .forEach(dataAval -> byProcedure
+                        .computeIfAbsent(dataAval.getProcedure().getHref(), key -> new ArrayList<>())
+                        .add(dataAval));
+        return byProcedure;
+    }
+
+    /**
+     * Requests the data availability of the procedures of the offering, with at most as many requests in flight as
+     * the data source allows concurrent requests. Procedures whose request failed are missing in the result and mark
+     * the offering as failed.
+     */
+    private Map<String, List<DataAvailability>> getDataAvailabilities(SosObservationOffering offering,
+            ServiceConstellation serviceConstellation, DataSourceConfiguration config) {
+        int window = config.getMaxConcurrentRequests() != null && config.getMaxConcurrentRequests() > 0
+                ? config.getMaxConcurrentRequests()
+                : DEFAULT_REQUEST_WINDOW;
+        Deque<Map.Entry<String, CompletableFuture<GetDataAvailabilityResponse>>> requests = new ArrayDeque<>(window);
+        Map<String, List<DataAvailability>> dataAvailabilities = new LinkedHashMap<>();
+        for (String procedureId : offering.getProcedures()) {
+            if (requests.size() >= window) {
+                addDataAvailability(requests.poll(), dataAvailabilities, offering, serviceConstellation);
+            }
+            requests.add(new SimpleImmutableEntry<>(procedureId,
+                    getDataAvailabilityByProcedureAsync(procedureId, config.getUrl())));
+        }
+        while (!requests.isEmpty()) {
+            addDataAvailability(requests.poll(), dataAvailabilities, offering, serviceConstellation);
+        }
+        return dataAvailabilities;
+    }
+
+    private void addDataAvailability(Map.Entry<String, CompletableFuture<GetDataAvailabilityResponse>> request,
+            Map<String, List<DataAvailability>> dataAvailabilities, SosObservationOffering offering,
+            ServiceConstellation serviceConstellation) {
+        String procedureId = request.getKey();
+        try {
+            GetDataAvailabilityResponse gdaResponse = request.getValue().join();
+            if (gdaResponse != null) {
+                dataAvailabilities.put(procedureId, gdaResponse.getDataAvailabilities());
+                return;
+            }
+            LOGGER.warn("No data availability of procedure '{}' of offering '{}'", procedureId,
+                    offering.getIdentifier());
+        } catch (CompletionException e) {
+            LOGGER.warn(String.format("Could not request the data availability of procedure '%s' of offering '%s'",
+                    procedureId, offering.getIdentifier()), e.getCause());
+        }
+        serviceConstellation.addFailedOffering(offering.getIdentifier());
+    }
+
     private DatasetConstellation addPhenomenonTime(QuantityDatasetConstellation quantityDatasetConstellation,
             SosObservationOffering offering) {
         if (offering.isSetPhenomenonTime()) {
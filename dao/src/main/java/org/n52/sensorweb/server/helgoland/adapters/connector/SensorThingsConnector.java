@@ -90,18 +90,19 @@ public class SensorThingsConnector extends AbstractConnector {
 
     @Override
     public Optional<DataEntity<?>> getFirstObservation(DatasetEntity entity) {
-        return Optional.of(createObservationBounds(entity, "asc"));
+        return Optional.ofNullable(createHedgedObservationBounds(entity, "asc"));
     }
 
     @Override
     public Optional<DataEntity<?>> getLastObservation(DatasetEntity entity) {
-        return Optional.of(createObservationBounds(entity, "desc"));
+        return Optional.ofNullable(createHedgedObservationBounds(entity, "desc"));
     }
 
     public ServiceConstellation getConstellation(DataSourceConfiguration config) {
         ServiceConstellation serviceConstellation = new ServiceConstellation();
         config.setConnector(getConnectorName());
         addService(config, serviceConstellation, null);
+        addServiceConfig(config);
         createDatasets(serviceConstellation, config.getUrl());
         return serviceConstellation;
     }
@@ -145,10 +146,13 @@ public class SensorThingsConnector extends AbstractConnector {
 
     private Object doGetRequest(String urlString, Class<?> clazz) {
         try {
-            HttpResponse response = sendGetRequest(urlString);
-            try (Reader reader = new InputStreamReader(response.getEntity().getContent(), getEncoding(response))) {
-                return gson.fromJson(reader, clazz);
-            }
+            return executeLimited(urlString, () -> {
+                HttpResponse response = sendGetRequest(urlString);
+                try (Reader reader =
+                        new InputStreamReader(response.getEntity().getContent(), getEncoding(response))) {
+                    return gson.fromJson(reader, clazz);
+                }
+            });
         } catch (MalformedURLException ex) {
             LOGGER.error(ex.getLocalizedMessage(), ex);
         } catch (JsonSyntaxException | IOException ex) {
@@ -188,6 +192,14 @@ public class SensorThingsConnector extends AbstractConnector {
         observations.getValue().stream().map(this::createObservation).forEach(list::add);
     }
 
+    private DataEntity<?> createHedgedObservationBounds(DatasetEntity entity, String order) {
+        try {
+            return executeHedged(entity.getService().getUrl(), () -> createObservationBounds(entity, order));
+        } catch (IOException ex) {
+            throw new ConnectorRequestFailedException(ex);
+        }
+    }
+
     private DataEntity<?> createObservationBounds(DatasetEntity entity, String order) {
         String e = String.format("Datastreams(%s)/Observations?$orderby=phenomenonTime%%20%s&$top=1",
                                  entity.getIdentifier(), order);
@@ -31,11 +31,11 @@ import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
 import org.n52.sensorweb.server.helgoland.adapters.connector.constellations.QuantityDatasetConstellation;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.EntityBuilder;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.FeatureCache;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceConstellation;
 import org.n52.series.db.beans.DataEntity;
 import org.n52.series.db.beans.DatasetEntity;
 import org.n52.series.db.beans.UnitEntity;
-import org.n52.shetland.ogc.gml.AbstractFeature;
 import org.n52.shetland.ogc.gml.time.Time;
 import org.n52.shetland.ogc.gml.time.TimeInstant;
 import org.n52.shetland.ogc.gml.time.TimePeriod;
@@ -49,11 +49,9 @@ import org.n52.shetland.ogc.sensorML.elements.SmlIdentifier;
 import org.n52.shetland.ogc.sensorML.elements.SmlIo;
 import org.n52.shetland.ogc.sensorML.v20.AbstractProcessV20;
 import org.n52.shetland.ogc.sensorML.v20.PhysicalSystem;
-import org.n52.shetland.ogc.sos.SosCapabilities;
 import org.n52.shetland.ogc.sos.SosObservationOffering;
 import org.n52.shetland.ogc.sos.SosProcedureDescription;
 import org.n52.shetland.ogc.sos.response.DescribeSensorResponse;
-import org.n52.shetland.ogc.sos.response.GetFeatureOfInterestResponse;
 import org.n52.shetland.ogc.swe.SweAbstractDataComponent;
 import org.n52.shetland.ogc.swe.simpleType.SweQuantity;
 import org.n52.shetland.ogc.swe.simpleType.SweText;
@@ -63,9 +61,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.SortedSet;
 
@@ -74,8 +70,6 @@ public class UfzSos2Connector extends SOS2Connector {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UfzSos2Connector.class);
 
-    private Map<String, AbstractFeature> featureCache = new LinkedHashMap<>();
-
     @Override
     public List<DataEntity<?>> getObservations(DatasetEntity seriesEntity, DbQuery query) {
         return Collections.emptyList();
@@ -103,13 +97,6 @@ public class UfzSos2Connector extends SOS2Connector {
         // .map(obs -> createDataEntity(obs, dataset));
     }
 
-    @Override
-    protected void addDatasets(ServiceConstellation serviceConstellation, SosCapabilities sosCaps,
-                               DataSourceConfiguration config) {
-        this.featureCache.clear();
-        super.addDatasets(serviceConstellation, sosCaps, config);
-    }
-
     @Override
     protected void doForOffering(SosObservationOffering obsOff, ServiceConstellation serviceConstellation,
                                  DataSourceConfiguration config) {
@@ -280,10 +267,12 @@ public class UfzSos2Connector extends SOS2Connector {
     private String getFeatureId(AbstractProcessV20 ap, DataSourceConfiguration config,
                                 ServiceConstellation serviceConstellation) {
         if (ap.isSetSmlFeatureOfInterest() && ap.getSmlFeatureOfInterest().isSetFeatures()) {
+            FeatureCache featureCache = serviceConstellation.getFeatureCache();
             for (String identifier : ap.getSmlFeatureOfInterest().getFeaturesOfInterest()) {
-                GetFeatureOfInterestResponse foiResponse = getFeatureOfInterestById(identifier, config.getUrl());
-                AbstractFeature abstractFeature = foiResponse.getAbstractFeature();
-                return addFeature((AbstractSamplingFeature) abstractFeature, serviceConstellation);
+                loadFeaturesOfInterest(Collections.singleton(identifier), featureCache, config.getUrl());
+                return featureCache.getFeature(identifier)
+                        .map(feature -> addFeature((AbstractSamplingFeature) feature, serviceConstellation))
+                        .orElse(null);
             }
         }
         return null;
@@ -27,6 +27,7 @@
  */
 package org.n52.sensorweb.server.helgoland.adapters.connector.constellations;
 
+import java.io.Serializable;
 import java.util.Date;
 import java.util.Optional;
 
@@ -44,7 +45,9 @@ import org.n52.series.db.beans.ServiceEntity;
 /**
  * @author Jan Schulte
  */
-public abstract class DatasetConstellation {
+public abstract class DatasetConstellation implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final String procedure;
     private final String offering;
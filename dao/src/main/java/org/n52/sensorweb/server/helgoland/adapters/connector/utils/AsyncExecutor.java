@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the asynchronous work of the connectors on a fixed number of threads, e.g. handling the responses of
+ * asynchronous requests. Requests waiting for a permit of their {@link RequestLimiter} do not occupy a thread, they
+ * are completed by the limiter once a permit is released or the rate limit allows another request.
+ */
+public class AsyncExecutor implements Executor {
+
+    private final ScheduledExecutorService executor;
+
+    public AsyncExecutor(int threads) {
+        this.executor = Executors.newScheduledThreadPool(Math.max(1, threads),
+                new ThreadFactoryBuilder().setNameFormat("connector-async-%d").setDaemon(true).build());
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    /**
+     * @param command the command
+     * @param delay   the delay in milliseconds
+     * @return the future of the scheduled command
+     */
+    public ScheduledFuture<?> schedule(Runnable command, long delay) {
+        return executor.schedule(command, delay, TimeUnit.MILLISECONDS);
+    }
+
+}
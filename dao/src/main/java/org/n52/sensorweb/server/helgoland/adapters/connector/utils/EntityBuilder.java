@@ -30,7 +30,6 @@ package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
 import org.slf4j.LoggerFactory;
 
 import org.n52.series.db.beans.ServiceEntity;
-import org.n52.series.db.beans.ServiceMetadataEntity;
 import org.n52.series.db.beans.CategoryEntity;
 import org.n52.series.db.beans.FeatureEntity;
 import org.n52.series.db.beans.GeometryEntity;
@@ -59,8 +58,7 @@ public final class EntityBuilder {
         service.setUrl(url);
         service.setConnector(connector);
         if (serviceMetadata != null) {
-            service.setServiceMetadata(new ServiceMetadataEntity().setMetadata(serviceMetadata.getMetadata())
-                    .setFormat(serviceMetadata.getFormat()));
+            service.setServiceMetadata(serviceMetadata.toEntity());
         }
         return createService(name, description, connector, url, version, true, serviceMetadata);
     }
@@ -77,8 +75,7 @@ public final class EntityBuilder {
         service.setSupportsFirstLast(supportsFirstLast);
         service.setConnector(connector);
         if (serviceMetadata != null) {
-            service.setServiceMetadata(new ServiceMetadataEntity().setMetadata(serviceMetadata.getMetadata())
-                    .setFormat(serviceMetadata.getFormat()));
+            service.setServiceMetadata(serviceMetadata.toEntity());
         }
         return service;
     }
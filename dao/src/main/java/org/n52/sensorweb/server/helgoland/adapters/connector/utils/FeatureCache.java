@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.n52.shetland.ogc.gml.AbstractFeature;
+import org.n52.shetland.ogc.om.features.FeatureCollection;
+
+/**
+ * Features of interest requested during the harvest of a service. The cache lives as long as the
+ * {@link ServiceConstellation} and is shared by all offerings of the service.
+ */
+public class FeatureCache {
+
+    private final Map<String, AbstractFeature> features = new ConcurrentHashMap<>();
+
+    private final Map<String, AbstractFeature> featuresByProcedure = new ConcurrentHashMap<>();
+
+    public Optional<AbstractFeature> getFeature(String featureId) {
+        return Optional.ofNullable(features.get(featureId));
+    }
+
+    public boolean containsFeature(String featureId) {
+        return features.containsKey(featureId);
+    }
+
+    /**
+     * @param featureIds the feature identifiers
+     * @return the identifiers of the features that are not cached
+     */
+    public Set<String> getMissing(Collection<String> featureIds) {
+        return featureIds.stream().filter(id -> !containsFeature(id)).collect(Collectors.toSet());
+    }
+
+    /**
+     * Adds a feature. The members of feature collections are added individually.
+     *
+     * @param feature the feature
+     */
+    public void putFeature(AbstractFeature feature) {
+        if (feature instanceof FeatureCollection) {
+            ((FeatureCollection) feature).forEach(this::putFeature);
+        } else if (feature != null && feature.getIdentifier() != null) {
+            features.put(feature.getIdentifier(), feature);
+        }
+    }
+
+    /**
+     * @param procedureId the procedure
+     * @return the feature or feature collection of the procedure, if it was requested before
+     */
+    public Optional<AbstractFeature> getFeaturesOfProcedure(String procedureId) {
+        return Optional.ofNullable(featuresByProcedure.get(procedureId));
+    }
+
+    public void putFeaturesOfProcedure(String procedureId, AbstractFeature feature) {
+        if (feature != null) {
+            featuresByProcedure.put(procedureId, feature);
+            putFeature(feature);
+        }
+    }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+import org.n52.series.db.beans.ServiceEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+
+/**
+ * Stores the progress of running harvests in one file per data source. Every harvested offering is appended as an
+ * {@link OfferingCheckpoint}, so a harvest interrupted by a restart or a failing data source can resume with the
+ * offerings that are not checkpointed yet. The file is removed once the harvest result is saved.
+ *
+ * Records are length prefixed, a record torn by a crash is ignored when the checkpoint is loaded. The service entity
+ * is not written with every record but replaced by the service of the resumed harvest.
+ *
+ * Records are only read back into the classes a checkpoint consists of, i.e. the entities, dataset constellations,
+ * geometries and basic JDK types, any other class fails the checkpoint before it is instantiated. The directory is
+ * created accessible by its owner only, checkpoints in a directory writable by others are ignored.
+ */
+public class HarvestCheckpointStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HarvestCheckpointStore.class);
+
+    private static final String SUFFIX = ".checkpoint";
+
+    private static final Set<String> ALLOWED_CLASSES = ImmutableSet.of(
+            OfferingCheckpoint.class.getName(),
+            ServiceReference.class.getName(),
+            "java.lang.Boolean", "java.lang.Byte", "java.lang.Character", "java.lang.Double", "java.lang.Enum",
+            "java.lang.Float", "java.lang.Integer", "java.lang.Long", "java.lang.Number", "java.lang.Short",
+            "java.lang.String", "java.math.BigDecimal", "java.math.BigInteger", "java.sql.Timestamp",
+            "java.util.ArrayList", "java.util.Arrays$ArrayList", "java.util.Date", "java.util.HashMap",
+            "java.util.HashSet", "java.util.LinkedHashMap", "java.util.LinkedHashSet", "java.util.LinkedList",
+            "java.util.TreeMap", "java.util.TreeSet", "java.util.Collections$EmptyList",
+            "java.util.Collections$EmptyMap", "java.util.Collections$EmptySet", "java.util.Collections$SingletonList",
+            "java.util.Collections$SingletonMap", "java.util.Collections$SingletonSet",
+            "java.util.Collections$UnmodifiableCollection", "java.util.Collections$UnmodifiableList",
+            "java.util.Collections$UnmodifiableMap", "java.util.Collections$UnmodifiableRandomAccessList",
+            "java.util.Collections$UnmodifiableSet");
+
+    private static final List<String> ALLOWED_PACKAGES = Arrays.asList(
+            "org.n52.series.db.beans.",
+            "org.n52.sensorweb.server.helgoland.adapters.connector.constellations.",
+            "org.locationtech.jts.geom.");
+
+    private static final Set<PosixFilePermission> SHARED_PERMISSIONS = ImmutableSet.of(
+            PosixFilePermission.GROUP_WRITE, PosixFilePermission.OTHERS_WRITE);
+
+    private final Path directory;
+
+    public HarvestCheckpointStore(String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * Loads the checkpointed offerings of the last unfinished harvest of a data source.
+     *
+     * @param config  the data source
+     * @param service the service entity of the resumed harvest
+     * @return the checkpoints by offering identifier, empty if there is no unfinished harvest
+     */
+    public Map<String, OfferingCheckpoint> load(DataSourceConfiguration config, ServiceEntity service) {
+        Map<String, OfferingCheckpoint> checkpoints = new HashMap<>();
+        Path file = getFile(config);
+        if (!Files.isRegularFile(file)) {
+            return checkpoints;
+        }
+        if (isShared(directory)) {
+            LOGGER.warn("Ignoring the checkpoint of {}, {} is writable by other users", config.getItemName(),
+                    directory);
+            return checkpoints;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length = in.readInt();
+                if (length < 0) {
+                    throw new IOException("Invalid record length " + length);
+                }
+                byte[] record = new byte[length];
+                in.readFully(record);
+                OfferingCheckpoint checkpoint = read(record, service);
+                checkpoints.put(checkpoint.getOffering(), checkpoint);
+            }
+        } catch (EOFException ex) {
+            LOGGER.debug("Read {} checkpointed offerings of {}", checkpoints.size(), config.getItemName());
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            LOGGER.warn("Discarding unreadable checkpoint of {}: {}", config.getItemName(), ex.getMessage());
+            remove(config);
+            checkpoints.clear();
+        }
+        return checkpoints;
+    }
+
+    /**
+     * Appends a harvested offering to the checkpoint of a data source.
+     *
+     * @param config     the data source
+     * @param checkpoint the harvested offering
+     */
+    public synchronized void append(DataSourceConfiguration config, OfferingCheckpoint checkpoint) {
+        try {
+            byte[] record = write(checkpoint);
+            createPrivateDirectory(directory);
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(getFile(config),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                out.writeInt(record.length);
+                out.write(record);
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Could not checkpoint offering {} of {}: {}", checkpoint.getOffering(),
+                    config.getItemName(), ex.getMessage());
+        }
+    }
+
+    /**
+     * Removes the checkpoint of a data source after its harvest result is saved.
+     *
+     * @param config the data source
+     */
+    public synchronized void remove(DataSourceConfiguration config) {
+        try {
+            Files.deleteIfExists(getFile(config));
+        } catch (IOException ex) {
+            LOGGER.warn("Could not remove the checkpoint of {}: {}", config.getItemName(), ex.getMessage());
+        }
+    }
+
+    private Path getFile(DataSourceConfiguration config) {
+        return directory.resolve(Hashing.sha256().hashString(config.getUrl(), StandardCharsets.UTF_8) + SUFFIX);
+    }
+
+    /**
+     * Creates the directory and its missing parents accessible by the owner only, where the file system supports it.
+     *
+     * @param directory the directory
+     * @throws IOException if the directory could not be created
+     */
+    static void createPrivateDirectory(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            return;
+        }
+        if (directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(directory);
+        }
+    }
+
+    /**
+     * @param directory the directory
+     * @return if other users may write to the directory, where the file system supports it
+     */
+    static boolean isShared(Path directory) {
+        if (!directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return false;
+        }
+        try {
+            return Files.getPosixFilePermissions(directory).stream().anyMatch(SHARED_PERMISSIONS::contains);
+        } catch (IOException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * @param className the name of a class in a checkpoint record
+     * @return if the class may be read from a checkpoint
+     */
+    static boolean isAllowed(String className) {
+        String name = className;
+        if (name.startsWith("[")) {
+            name = name.substring(name.lastIndexOf('[') + 1);
+            if (name.length() == 1) {
+                // array of primitives
+                return true;
+            }
+            name = name.substring(1, name.length() - 1);
+        }
+        return ALLOWED_CLASSES.contains(name) || ALLOWED_PACKAGES.stream().anyMatch(name::startsWith);
+    }
+
+    private static byte[] write(OfferingCheckpoint checkpoint) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new CheckpointOutputStream(bytes)) {
+            out.writeObject(checkpoint);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static OfferingCheckpoint read(byte[] record, ServiceEntity service)
+            throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new CheckpointInputStream(new ByteArrayInputStream(record), service)) {
+            return (OfferingCheckpoint) in.readObject();
+        }
+    }
+
+    /**
+     * Placeholder for the service entity referenced by the checkpointed entities.
+     */
+    private static final class ServiceReference implements Serializable {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class CheckpointOutputStream extends ObjectOutputStream {
+
+        CheckpointOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            return obj instanceof ServiceEntity ? new ServiceReference() : obj;
+        }
+
+    }
+
+    private static final class CheckpointInputStream extends ObjectInputStream {
+
+        private final ServiceEntity service;
+
+        CheckpointInputStream(InputStream in, ServiceEntity service) throws IOException {
+            super(in);
+            this.service = service;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowed(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "not allowed in a checkpoint");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("proxy classes are not allowed in a checkpoint");
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            return obj instanceof ServiceReference ? service : obj;
+        }
+
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+import org.n52.sensorweb.server.helgoland.adapters.connector.ConnectorRequestFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the work items of a harvest, e.g. the offerings of a service, concurrently. At most
+ * {@link DataSourceConfiguration#getHarvestParallelism()} items of a data source run at the same time, or the
+ * default parallelism if the data source does not configure one. A parallelism of 1 harvests sequentially on the
+ * calling thread.
+ */
+public class HarvestExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HarvestExecutor.class);
+
+    private final ExecutorService executor;
+
+    private final int parallelism;
+
+    public HarvestExecutor(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        this.executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("harvest-%d").setDaemon(true).build());
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs the task for all items and waits until all are done.
+     *
+     * @param <T>    the item type
+     * @param config the data source
+     * @param items  the items
+     * @param task   the task, called concurrently for different items
+     */
+    public <T> void forEach(DataSourceConfiguration config, Collection<T> items, Consumer<T> task) {
+        int limit = getParallelism(config);
+        if (limit == 1 || items.size() <= 1) {
+            items.forEach(task);
+            return;
+        }
+        LOGGER.debug("Harvesting {} items of {} with a parallelism of {}", items.size(), config.getItemName(), limit);
+        Semaphore permits = new Semaphore(limit);
+        List<Future<?>> futures = new ArrayList<>(items.size());
+        try {
+            for (T item : items) {
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        task.accept(item);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new ConnectorRequestFailedException(ex);
+        } catch (ExecutionException ex) {
+            futures.forEach(future -> future.cancel(true));
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new ConnectorRequestFailedException(ex.getCause());
+        }
+    }
+
+    private int getParallelism(DataSourceConfiguration config) {
+        return config.getHarvestParallelism() != null ? Math.max(1, config.getHarvestParallelism()) : parallelism;
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.n52.sensorweb.server.helgoland.adapters.connector.constellations.DatasetConstellation;
+import org.n52.series.db.beans.CategoryEntity;
+import org.n52.series.db.beans.FeatureEntity;
+import org.n52.series.db.beans.OfferingEntity;
+import org.n52.series.db.beans.PhenomenonEntity;
+import org.n52.series.db.beans.PlatformEntity;
+import org.n52.series.db.beans.ProcedureEntity;
+
+/**
+ * The harvested part of a {@link ServiceConstellation} belonging to a single offering: its datasets and the
+ * entities they reference. It is written to a checkpoint once the offering is harvested and restored into the
+ * constellation of a resumed harvest.
+ */
+public class OfferingCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String offering;
+    private final String fingerprint;
+    private final List<DatasetConstellation> datasets = new ArrayList<>();
+    private final Map<String, ProcedureEntity> procedures = new HashMap<>();
+    private final Map<String, OfferingEntity> offerings = new HashMap<>();
+    private final Map<String, CategoryEntity> categories = new HashMap<>();
+    private final Map<String, PhenomenonEntity> phenomena = new HashMap<>();
+    private final Map<String, FeatureEntity> features = new HashMap<>();
+    private final Map<String, PlatformEntity> platforms = new HashMap<>();
+
+    public OfferingCheckpoint(String offering, String fingerprint) {
+        this.offering = offering;
+        this.fingerprint = fingerprint;
+    }
+
+    public String getOffering() {
+        return offering;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public boolean isEmpty() {
+        return datasets.isEmpty();
+    }
+
+    /**
+     * Collects the datasets of the offering and the entities they reference.
+     *
+     * @param offering      the offering identifier
+     * @param fingerprint   the fingerprint of the offering
+     * @param constellation the constellation of the running harvest
+     * @return the checkpoint
+     */
+    public static OfferingCheckpoint of(String offering, String fingerprint, ServiceConstellation constellation) {
+        OfferingCheckpoint checkpoint = new OfferingCheckpoint(offering, fingerprint);
+        constellation.getDatasets(offering).forEach(dataset -> {
+            checkpoint.datasets.add(dataset);
+            copy(dataset.getProcedure(), constellation.getProcedures(), checkpoint.procedures);
+            copy(dataset.getOffering(), constellation.getOfferings(), checkpoint.offerings);
+            copy(dataset.getCategory(), constellation.getCategories(), checkpoint.categories);
+            copy(dataset.getPhenomenon(), constellation.getPhenomena(), checkpoint.phenomena);
+            copy(dataset.getFeature(), constellation.getFeatures(), checkpoint.features);
+            copy(dataset.getPlatform(), constellation.getPlatforms(), checkpoint.platforms);
+        });
+        return checkpoint;
+    }
+
+    /**
+     * Adds the datasets and entities of this checkpoint to a constellation.
+     *
+     * @param constellation the constellation of the resumed harvest
+     */
+    public void restore(ServiceConstellation constellation) {
+        restore(procedures, constellation::putProcedure);
+        restore(offerings, constellation::putOffering);
+        restore(categories, constellation::putCategory);
+        restore(phenomena, constellation::putPhenomenon);
+        restore(features, constellation::putFeature);
+        restore(platforms, constellation::putPlatform);
+        datasets.forEach(constellation::add);
+    }
+
+    private static <T> void copy(String id, Map<String, T> from, Map<String, T> to) {
+        if (id != null && from.containsKey(id)) {
+            to.put(id, from.get(id));
+        }
+    }
+
+    private static <T> void restore(Map<String, T> entities, Consumer<T> consumer) {
+        entities.values().forEach(consumer);
+    }
+
+}
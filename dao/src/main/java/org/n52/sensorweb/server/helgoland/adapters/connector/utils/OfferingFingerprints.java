@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.locationtech.jts.geom.Geometry;
+import org.n52.shetland.ogc.gml.time.Time;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.gml.time.TimePeriod;
+import org.n52.shetland.ogc.sos.SosObservationOffering;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Fingerprints of the offerings of a service by offering identifier. A fingerprint covers the procedures,
+ * observable properties, phenomenon time and observed area of an offering, so an offering with an unchanged
+ * fingerprint does not have to be harvested again.
+ */
+public class OfferingFingerprints {
+
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    public OfferingFingerprints() {
+    }
+
+    public OfferingFingerprints(Map<String, String> fingerprints) {
+        if (fingerprints != null) {
+            this.fingerprints.putAll(fingerprints);
+        }
+    }
+
+    /**
+     * @param offering the offering
+     * @param fingerprint the current fingerprint of the offering
+     * @return if the offering had the same fingerprint
+     */
+    public boolean isUnchanged(SosObservationOffering offering, String fingerprint) {
+        return Objects.equals(fingerprints.get(offering.getIdentifier()), fingerprint);
+    }
+
+    public void put(String offering, String fingerprint) {
+        fingerprints.put(offering, fingerprint);
+    }
+
+    public boolean isEmpty() {
+        return fingerprints.isEmpty();
+    }
+
+    public Map<String, String> toMap() {
+        return new HashMap<>(fingerprints);
+    }
+
+    /**
+     * Creates the fingerprint of an offering.
+     *
+     * @param offering the offering
+     * @return the hex encoded SHA-256 fingerprint
+     */
+    public static String of(SosObservationOffering offering) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        putAll(hasher, offering.getProcedures());
+        putAll(hasher, offering.getObservableProperties());
+        if (offering.isSetPhenomenonTime()) {
+            putTime(hasher, offering.getPhenomenonTime());
+        }
+        hasher.putChar('|');
+        if (offering.isSetObservedArea()) {
+            Geometry area = offering.getObservedArea().toGeometry();
+            hasher.putInt(area.getSRID()).putString(area.toText(), StandardCharsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Creates the fingerprint of the procedures and observable properties of an offering only, for data that does
+     * not change with new observations, e.g. the units of its datasets.
+     *
+     * @param offering the offering
+     * @return the hex encoded SHA-256 fingerprint
+     */
+    public static String ofObservables(SosObservationOffering offering) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        putAll(hasher, offering.getProcedures());
+        putAll(hasher, offering.getObservableProperties());
+        return hasher.hash().toString();
+    }
+
+    private static void putAll(Hasher hasher, Collection<String> values) {
+        if (values != null) {
+            new TreeSet<>(values).forEach(value -> hasher.putString(value, StandardCharsets.UTF_8).putChar(','));
+        }
+        hasher.putChar('|');
+    }
+
+    private static void putTime(Hasher hasher, Time time) {
+        if (time instanceof TimePeriod) {
+            TimePeriod period = (TimePeriod) time;
+            hasher.putString(String.valueOf(period.getStart()), StandardCharsets.UTF_8).putChar('/')
+                    .putString(String.valueOf(period.getEnd()), StandardCharsets.UTF_8);
+        } else if (time instanceof TimeInstant) {
+            hasher.putString(String.valueOf(((TimeInstant) time).getValue()), StandardCharsets.UTF_8);
+        } else {
+            hasher.putString(String.valueOf(time), StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+import org.n52.sensorweb.server.helgoland.adapters.connector.ConnectorRequestFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Hedges latency critical requests: if a request has not answered within a percentile of the recent response times
+ * of its data source, a duplicate is sent on the {@link AsyncExecutor} and the first successful response is taken.
+ * The duplicate is only sent if the {@link RequestLimiter} of the data source grants a permit immediately, so hedging
+ * never exceeds the request limits of a data source. The HTTP requests of the losing request are aborted, if they
+ * were registered with {@link #register(HttpRequestBase)}.
+ */
+public class RequestHedger {
+
+    static final String METRIC_HEDGED = "proxy.connector.hedge.sent";
+
+    static final String METRIC_WON = "proxy.connector.hedge.won";
+
+    static final String METRIC_REJECTED = "proxy.connector.hedge.rejected";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestHedger.class);
+
+    private static final ThreadLocal<Attempt> CURRENT = new ThreadLocal<>();
+
+    private static final int WINDOW_SIZE = 128;
+
+    private static final int MIN_SAMPLES = 16;
+
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    private final AsyncExecutor executor;
+
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    public RequestHedger(AsyncExecutor executor) {
+        this.executor = executor;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Registers an HTTP request of the hedged request executed by the current thread, so it is aborted if the
+     * other request answers first. Does nothing outside of hedged requests.
+     *
+     * @param request the HTTP request
+     */
+    public static void register(HttpRequestBase request) {
+        Attempt attempt = CURRENT.get();
+        if (attempt != null) {
+            attempt.add(request);
+        }
+    }
+
+    /**
+     * Executes the request, hedged if the data source configures a hedging percentile and enough response times
+     * were recorded. The request itself is executed on the calling thread, only the duplicate is sent on the
+     * {@link AsyncExecutor}. The response times are taken after a permit was granted.
+     *
+     * @param <T>     the result type
+     * @param config  the data source configuration
+     * @param limiter the request limiter of the data source, may be <code>null</code>
+     * @param request the request
+     * @return the first successful result
+     * @throws IOException if the request (and its duplicate) failed
+     */
+    public <T> T execute(DataSourceConfiguration config, RequestLimiter limiter, RequestLimiter.Request<T> request)
+            throws IOException {
+        if (config.getHedgingPercentile() == null) {
+            return limiter != null ? limiter.execute(request) : request.execute();
+        }
+        LatencyWindow window = latencies.computeIfAbsent(config.getUrl(), url -> new LatencyWindow());
+        long delay = window.percentile(config.getHedgingPercentile());
+        if (delay < 0) {
+            return limiter != null ? limiter.execute(() -> timed(window, request)) : timed(window, request);
+        }
+        Attempt primary = new Attempt();
+        Attempt secondary = new Attempt();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<Optional<T>> duplicate = new CompletableFuture<>();
+        ScheduledFuture<?> hedge = executor.schedule(() -> duplicate.complete(
+                hedge(config, window, limiter, request, result, primary, secondary)), delay);
+        try {
+            T value = primary.run(() -> limiter != null ? limiter.execute(() -> timed(window, request))
+                    : timed(window, request));
+            if (result.complete(value)) {
+                secondary.abort();
+            }
+        } catch (IOException | RuntimeException ex) {
+            if (hedge.cancel(false)) {
+                throw ex;
+            }
+            // the duplicate won and aborted the request or may still answer
+            Optional<T> value = await(duplicate);
+            if (!value.isPresent()) {
+                throw ex;
+            }
+            return value.get();
+        } finally {
+            hedge.cancel(false);
+        }
+        return await(result);
+    }
+
+    private <T> Optional<T> hedge(DataSourceConfiguration config, LatencyWindow window, RequestLimiter limiter,
+            RequestLimiter.Request<T> request, CompletableFuture<T> result, Attempt primary, Attempt secondary) {
+        if (result.isDone()) {
+            return Optional.empty();
+        }
+        String source = config.getItemName() != null ? config.getItemName() : config.getUrl();
+        LOGGER.debug("Request to {} exceeded hedging delay, sending duplicate", source);
+        meterRegistry.counter(METRIC_HEDGED, "source", source).increment();
+        try {
+            Optional<T> value = secondary.run(() -> limiter != null ? limiter.tryExecute(() -> timed(window, request))
+                    : Optional.ofNullable(timed(window, request)));
+            if (!value.isPresent()) {
+                meterRegistry.counter(METRIC_REJECTED, "source", source).increment();
+            } else if (result.complete(value.get())) {
+                meterRegistry.counter(METRIC_WON, "source", source).increment();
+                primary.abort();
+            }
+            return value;
+        } catch (IOException | RuntimeException ex) {
+            // the error of the primary request is more meaningful
+            LOGGER.debug("Duplicate request to {} failed", source, ex);
+            return Optional.empty();
+        }
+    }
+
+    private static <T> T timed(LatencyWindow window, RequestLimiter.Request<T> request) throws IOException {
+        long start = System.nanoTime();
+        T result = request.execute();
+        window.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw new ConnectorRequestFailedException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorRequestFailedException(ex);
+        }
+    }
+
+    /**
+     * The HTTP requests of one of the hedged requests.
+     */
+    private static class Attempt {
+
+        private final List<HttpRequestBase> requests = new CopyOnWriteArrayList<>();
+
+        private volatile boolean aborted;
+
+        <T> T run(RequestLimiter.Request<T> request) throws IOException {
+            Attempt previous = CURRENT.get();
+            CURRENT.set(this);
+            try {
+                return request.execute();
+            } finally {
+                if (previous != null) {
+                    CURRENT.set(previous);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+        }
+
+        void add(HttpRequestBase request) {
+            requests.add(request);
+            if (aborted) {
+                request.abort();
+            }
+        }
+
+        void abort() {
+            aborted = true;
+            requests.forEach(HttpRequestBase::abort);
+        }
+    }
+
+    /**
+     * The most recent response times of a data source.
+     */
+    private static class LatencyWindow {
+
+        private final long[] values = new long[WINDOW_SIZE];
+
+        private int size;
+
+        private int next;
+
+        synchronized void add(long millis) {
+            values[next] = millis;
+            next = (next + 1) % WINDOW_SIZE;
+            size = Math.min(size + 1, WINDOW_SIZE);
+        }
+
+        /**
+         * @param percentile the percentile (0-100)
+         * @return the response time of the percentile or -1 if there are not enough samples
+         */
+        synchronized long percentile(double percentile) {
+            if (size < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * size) - 1;
+            return sorted[Math.max(index, 0)];
+        }
+    }
+
+}
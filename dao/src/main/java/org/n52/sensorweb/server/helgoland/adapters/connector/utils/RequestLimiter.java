@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+import org.n52.sensorweb.server.helgoland.adapters.connector.ConnectorRequestFailedException;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Limits the requests sent to a single data source by a token bucket (requests per second) and a bulkhead
+ * (concurrent requests). Requests that do not get a permit within the permit timeout fail instead of queuing up,
+ * so a slow data source can not tie up the threads serving the others. Nested requests of a thread already
+ * holding a permit are not limited again. A thread waiting to retry a request gives its permit back in the
+ * meantime, see {@link #suspend()}. Asynchronous requests wait for a permit in a queue without occupying a thread,
+ * see {@link #acquireAsync(AsyncExecutor)}.
+ */
+public class RequestLimiter {
+
+    private static final long DEFAULT_PERMIT_TIMEOUT = 30000;
+    private static final ThreadLocal<RequestLimiter> CURRENT = new ThreadLocal<>();
+
+    private final RateLimiter rateLimiter;
+    private final Semaphore bulkhead;
+    private final long permitTimeout;
+    private final ThreadLocal<Boolean> permitted = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private final ThreadLocal<Boolean> suspended = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private final AtomicBoolean refillScheduled = new AtomicBoolean();
+
+    public RequestLimiter(Double maxRequestsPerSecond, Integer maxConcurrentRequests, Integer permitTimeout) {
+        this.rateLimiter = maxRequestsPerSecond != null && maxRequestsPerSecond > 0
+                ? RateLimiter.create(maxRequestsPerSecond)
+                : null;
+        this.bulkhead = maxConcurrentRequests != null && maxConcurrentRequests > 0
+                ? new Semaphore(maxConcurrentRequests, true)
+                : null;
+        this.permitTimeout = permitTimeout != null ? permitTimeout : DEFAULT_PERMIT_TIMEOUT;
+    }
+
+    public static RequestLimiter create(DataSourceConfiguration config) {
+        return new RequestLimiter(config.getMaxRequestsPerSecond(), config.getMaxConcurrentRequests(),
+                config.getPermitTimeout());
+    }
+
+    /**
+     * Executes the request as soon as the limits allow it.
+     *
+     * @param <T>     the result type
+     * @param request the request
+     * @return the result of the request
+     * @throws IOException                     if the request fails
+     * @throws ConnectorRequestFailedException if no permit was granted within the permit timeout
+     */
+    public <T> T execute(Request<T> request) throws IOException {
+        if (permitted.get()) {
+            return request.execute();
+        }
+        acquire();
+        return executePermitted(request);
+    }
+
+    /**
+     * Executes the request only if the limits allow it immediately.
+     *
+     * @param <T>     the result type
+     * @param request the request
+     * @return the result of the request or an empty optional if the limits did not allow the request
+     * @throws IOException if the request fails
+     */
+    public <T> Optional<T> tryExecute(Request<T> request) throws IOException {
+        if (permitted.get()) {
+            return Optional.ofNullable(request.execute());
+        }
+        return tryAcquire() ? Optional.ofNullable(executePermitted(request)) : Optional.empty();
+    }
+
+    /**
+     * Acquires a permit for a request, that is released by {@link #release()} once it completed, e.g. for
+     * asynchronous requests.
+     *
+     * @throws ConnectorRequestFailedException if no permit was granted within the permit timeout
+     */
+    public void acquire() {
+        try {
+            if (rateLimiter != null && !rateLimiter.tryAcquire(permitTimeout, TimeUnit.MILLISECONDS)) {
+                throw new ConnectorRequestFailedException("Request rate limit exceeded");
+            }
+            if (bulkhead != null && !bulkhead.tryAcquire(permitTimeout, TimeUnit.MILLISECONDS)) {
+                throw new ConnectorRequestFailedException("Maximum of concurrent requests exceeded");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorRequestFailedException(ex);
+        }
+    }
+
+    /**
+     * Acquires a permit like {@link #acquire()} without blocking the calling thread. If no permit is available
+     * immediately, the request waits in a queue until a permit is released or the rate limit allows another request.
+     * The returned future is completed on the executor, or fails if no permit was granted within the permit timeout.
+     *
+     * @param executor the executor completing the future and timing the permit timeout
+     * @return the future completed once the permit is acquired
+     */
+    public CompletableFuture<Void> acquireAsync(AsyncExecutor executor) {
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        Waiter waiter = new Waiter(permit, executor);
+        synchronized (waiters) {
+            if (waiters.isEmpty() && tryAcquire()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            waiters.add(waiter);
+        }
+        executor.schedule(() -> {
+            if (permit.completeExceptionally(
+                    new ConnectorRequestFailedException("No request permit within the permit timeout"))) {
+                synchronized (waiters) {
+                    waiters.remove(waiter);
+                }
+            }
+        }, permitTimeout);
+        // a permit may have been released while the request was queued
+        dispatch();
+        return permit;
+    }
+
+    /**
+     * Executes the request on the executor once a permit is acquired by {@link #acquireAsync(AsyncExecutor)}.
+     *
+     * @param <T>      the result type
+     * @param request  the request
+     * @param executor the executor
+     * @return the future result of the request
+     */
+    public <T> CompletableFuture<T> executeAsync(Request<T> request, AsyncExecutor executor) {
+        return acquireAsync(executor).thenApplyAsync(permit -> {
+            try {
+                return executePermitted(request);
+            } catch (IOException ex) {
+                throw new ConnectorRequestFailedException(ex);
+            }
+        }, executor);
+    }
+
+    /**
+     * Releases a permit and passes it on to the next waiting asynchronous request, if any.
+     */
+    public void release() {
+        releaseBulkhead();
+        dispatch();
+    }
+
+    /**
+     * Releases the permit of the request executed by the current thread while it waits to retry the request, so
+     * the backoff does not block other requests to the data source. Does nothing if the thread holds no permit.
+     */
+    public static void suspend() {
+        RequestLimiter limiter = CURRENT.get();
+        if (limiter != null && !limiter.suspended.get()) {
+            limiter.suspended.set(Boolean.TRUE);
+            limiter.release();
+        }
+    }
+
+    /**
+     * Acquires the permit released by {@link #suspend()} again before the request is retried.
+     *
+     * @throws ConnectorRequestFailedException if no permit was granted within the permit timeout
+     */
+    public static void resume() {
+        RequestLimiter limiter = CURRENT.get();
+        if (limiter != null && limiter.suspended.get()) {
+            limiter.acquire();
+            limiter.suspended.set(Boolean.FALSE);
+        }
+    }
+
+    private boolean tryAcquire() {
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            return false;
+        }
+        if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+            releaseBulkhead();
+            return false;
+        }
+        return true;
+    }
+
+    private void releaseBulkhead() {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Grants permits to the waiting asynchronous requests in order as long as the limits allow it.
+     */
+    private void dispatch() {
+        while (true) {
+            Waiter waiter;
+            synchronized (waiters) {
+                waiter = waiters.peek();
+                if (waiter == null) {
+                    return;
+                }
+                if (waiter.permit.isDone()) {
+                    // timed out
+                    waiters.poll();
+                    continue;
+                }
+                if (!tryAcquire()) {
+                    scheduleRefill(waiter.executor);
+                    return;
+                }
+                waiters.poll();
+            }
+            grant(waiter);
+        }
+    }
+
+    private void grant(Waiter waiter) {
+        try {
+            waiter.executor.execute(() -> {
+                if (!waiter.permit.complete(null)) {
+                    release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            releaseBulkhead();
+            waiter.permit.completeExceptionally(new ConnectorRequestFailedException(ex));
+        }
+    }
+
+    /**
+     * Retries to grant a permit once the rate limit allows the next request. Released permits are passed on by
+     * {@link #release()}.
+     */
+    private void scheduleRefill(AsyncExecutor executor) {
+        if (rateLimiter != null && refillScheduled.compareAndSet(false, true)) {
+            long interval = Math.max(1, (long) Math.ceil(1000 / rateLimiter.getRate()));
+            try {
+                executor.schedule(() -> {
+                    refillScheduled.set(false);
+                    dispatch();
+                }, interval);
+            } catch (RejectedExecutionException ex) {
+                refillScheduled.set(false);
+            }
+        }
+    }
+
+    private <T> T executePermitted(Request<T> request) throws IOException {
+        permitted.set(Boolean.TRUE);
+        CURRENT.set(this);
+        try {
+            return request.execute();
+        } finally {
+            CURRENT.remove();
+            permitted.set(Boolean.FALSE);
+            if (!suspended.get()) {
+                release();
+            }
+            suspended.set(Boolean.FALSE);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Request<T> {
+        T execute() throws IOException;
+    }
+
+    private static final class Waiter {
+
+        private final CompletableFuture<Void> permit;
+        private final AsyncExecutor executor;
+
+        Waiter(CompletableFuture<Void> permit, AsyncExecutor executor) {
+            this.permit = permit;
+            this.executor = executor;
+        }
+
+    }
+
+}
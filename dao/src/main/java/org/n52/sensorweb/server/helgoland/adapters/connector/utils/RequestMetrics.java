@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records the requests of the connectors per data source and operation: latency and outcome
+ * ({@value #METRIC_REQUESTS}), requests in flight ({@value #METRIC_ACTIVE}) and response sizes
+ * ({@value #METRIC_RESPONSE_BYTES}). Latency and sizes are published as histograms.
+ */
+public class RequestMetrics {
+
+    static final String METRIC_REQUESTS = "proxy.upstream.requests";
+
+    static final String METRIC_ACTIVE = "proxy.upstream.requests.active";
+
+    static final String METRIC_RESPONSE_BYTES = "proxy.upstream.response.bytes";
+
+    private static final String TAG_SOURCE = "source";
+
+    private static final String TAG_OPERATION = "operation";
+
+    private static final String TAG_OUTCOME = "outcome";
+
+    private static final String TAG_EXCEPTION = "exception";
+
+    private static final String NONE = "none";
+
+    private static final String UNKNOWN = "unknown";
+
+    private final ThreadLocal<Tags> current = new ThreadLocal<>();
+
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Executes and records a request. Responses counted by
+     * {@link #countBytes(HttpResponse, DataSourceConfiguration, String)} while the request is executed are
+     * attributed to its data source and operation.
+     *
+     * @param <T>       the result type
+     * @param config    the configuration of the data source, may be <code>null</code>
+     * @param uri       the request URI
+     * @param operation the operation or <code>null</code> to derive it from the URI
+     * @param request   the request
+     * @return the result of the request
+     * @throws IOException if the request fails
+     */
+    public <T> T record(DataSourceConfiguration config, String uri, String operation,
+            RequestLimiter.Request<T> request) throws IOException {
+        Tags tags = createTags(config, uri, operation);
+        Tags previous = current.get();
+        current.set(tags);
+        LongTaskTimer.Sample active = startActive(tags);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Throwable error = null;
+        try {
+            return request.execute();
+        } catch (IOException | RuntimeException ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            active.stop();
+            sample.stop(timer(tags, error));
+            if (previous != null) {
+                current.set(previous);
+            } else {
+                current.remove();
+            }
+        }
+    }
+
+    /**
+     * Records an asynchronous request until the returned future completes.
+     *
+     * @param <T>       the result type
+     * @param config    the configuration of the data source, may be <code>null</code>
+     * @param uri       the request URI
+     * @param operation the operation or <code>null</code> to derive it from the URI
+     * @param request   starts the request
+     * @return the future result
+     */
+    public <T> CompletableFuture<T> recordAsync(DataSourceConfiguration config, String uri, String operation,
+            Supplier<CompletableFuture<T>> request) {
+        Tags tags = createTags(config, uri, operation);
+        LongTaskTimer.Sample active = startActive(tags);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return request.get().whenComplete((result, error) -> {
+                active.stop();
+                sample.stop(timer(tags, error));
+            });
+        } catch (RuntimeException ex) {
+            active.stop();
+            sample.stop(timer(tags, ex));
+            throw ex;
+        }
+    }
+
+    /**
+     * Counts the bytes of the response body once it is consumed. The response is attributed to the request
+     * currently recorded by this thread or else to the data source and operation of the URI.
+     *
+     * @param response the response
+     * @param config   the configuration of the data source, may be <code>null</code>
+     * @param uri      the request URI
+     * @return the response
+     */
+    public HttpResponse countBytes(HttpResponse response, DataSourceConfiguration config, String uri) {
+        Tags tags = current.get();
+        return countBytes(response, tags != null ? tags : createTags(config, uri, null));
+    }
+
+    private HttpResponse countBytes(HttpResponse response, Tags tags) {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            response.setEntity(new CountingEntity(entity, DistributionSummary.builder(METRIC_RESPONSE_BYTES)
+                    .baseUnit("bytes")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)));
+        }
+        return response;
+    }
+
+    private LongTaskTimer.Sample startActive(Tags tags) {
+        return LongTaskTimer.builder(METRIC_ACTIVE).tags(tags).register(meterRegistry).start();
+    }
+
+    private Timer timer(Tags tags, Throwable error) {
+        return Timer.builder(METRIC_REQUESTS)
+                .tags(tags)
+                .tag(TAG_OUTCOME, error == null ? "success" : "failure")
+                .tag(TAG_EXCEPTION, error == null ? NONE : unwrap(error).getClass().getSimpleName())
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return (error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static Tags createTags(DataSourceConfiguration config, String uri, String operation) {
+        String source = config != null && config.getItemName() != null ? config.getItemName() : getHost(uri);
+        return Tags.of(TAG_SOURCE, source, TAG_OPERATION, operation != null ? operation : getOperation(uri));
+    }
+
+    private static String getHost(String uri) {
+        if (uri == null) {
+            return UNKNOWN;
+        }
+        try {
+            String host = URI.create(uri).getHost();
+            return host != null ? host : UNKNOWN;
+        } catch (IllegalArgumentException ex) {
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * Derives the operation of a request from the KVP <code>request</code> parameter or else from the last path
+     * segment without keys, e.g. <code>Observations</code> for SensorThings requests.
+     */
+    private static String getOperation(String uri) {
+        if (uri == null) {
+            return UNKNOWN;
+        }
+        int query = uri.indexOf('?');
+        if (query >= 0) {
+            for (NameValuePair parameter : URLEncodedUtils.parse(uri.substring(query + 1), StandardCharsets.UTF_8)) {
+                if ("request".equals(parameter.getName().toLowerCase(Locale.ROOT))
+                        && parameter.getValue() != null) {
+                    return parameter.getValue();
+                }
+            }
+        }
+        String path = query >= 0 ? uri.substring(0, query) : uri;
+        String segment = path.substring(path.lastIndexOf('/') + 1);
+        int key = segment.indexOf('(');
+        segment = key >= 0 ? segment.substring(0, key) : segment;
+        return segment.isEmpty() ? UNKNOWN : segment;
+    }
+
+    /**
+     * Records the number of bytes read from the content when it is closed.
+     */
+    private static class CountingEntity extends HttpEntityWrapper {
+
+        private final DistributionSummary summary;
+
+        CountingEntity(HttpEntity wrappedEntity, DistributionSummary summary) {
+            super(wrappedEntity);
+            this.summary = summary;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            CountingInputStream counting = new CountingInputStream(super.getContent());
+            return new FilterInputStream(counting) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (!closed) {
+                            closed = true;
+                            summary.record(counting.getCount());
+                        }
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            try (InputStream in = getContent()) {
+                ByteStreams.copy(in, outstream);
+            }
+        }
+    }
+
+}
@@ -28,14 +28,20 @@
 package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.n52.sensorweb.server.helgoland.adapters.connector.constellations.DatasetConstellation;
 import org.n52.series.db.beans.CategoryEntity;
+import org.n52.series.db.beans.DescribableEntity;
 import org.n52.series.db.beans.FeatureEntity;
 import org.n52.series.db.beans.GeometryEntity;
 import org.n52.series.db.beans.OfferingEntity;
@@ -43,40 +49,71 @@ import org.n52.series.db.beans.PhenomenonEntity;
 import org.n52.series.db.beans.PlatformEntity;
 import org.n52.series.db.beans.ProcedureEntity;
 import org.n52.series.db.beans.ServiceEntity;
+import org.n52.shetland.ogc.ows.OwsCapabilities;
+import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityResponse.DataAvailability;
 import org.n52.shetland.util.JTSHelper;
 
+import com.google.common.base.Suppliers;
+
 public class ServiceConstellation {
 
     // service
     private ServiceEntity service;
 
     // map für procedures
-    private final Map<String, ProcedureEntity> procedures = new HashMap<>();
+    private final Map<String, ProcedureEntity> procedures = new ConcurrentHashMap<>();
 
     // map für offerings
-    private final Map<String, OfferingEntity> offerings = new HashMap<>();
+    private final Map<String, OfferingEntity> offerings = new ConcurrentHashMap<>();
 
     // map für categories
-    private final Map<String, CategoryEntity> categories = new HashMap<>();
+    private final Map<String, CategoryEntity> categories = new ConcurrentHashMap<>();
 
     // map für phenomena
-    private final Map<String, PhenomenonEntity> phenomena = new HashMap<>();
+    private final Map<String, PhenomenonEntity> phenomena = new ConcurrentHashMap<>();
 
     // map für feature
-    private final Map<String, FeatureEntity> features = new HashMap<>();
+    private final Map<String, FeatureEntity> features = new ConcurrentHashMap<>();
 
     // map für platform
-    private final Map<String, PlatformEntity> platforms = new HashMap<>();
+    private final Map<String, PlatformEntity> platforms = new ConcurrentHashMap<>();
 
     // dataset collection
-    private final Collection<DatasetConstellation> datasets = new HashSet<>();
+    private final Collection<DatasetConstellation> datasets = ConcurrentHashMap.newKeySet();
+
+    // offerings of the added datasets
+    private final Set<String> datasetOfferings = ConcurrentHashMap.newKeySet();
+
+    // added datasets by offering until the offering is checkpointed
+    private final Map<String, Collection<DatasetConstellation>> offeringDatasets = new ConcurrentHashMap<>();
+
+    // receives the added datasets instead of the dataset collection if they are persisted while harvesting
+    private volatile Consumer<DatasetConstellation> datasetConsumer;
+
+    // features requested during the harvest
+    private final FeatureCache featureCache = new FeatureCache();
+
+    // fingerprints of the harvested offerings
+    private final OfferingFingerprints offeringFingerprints = new OfferingFingerprints();
+
+    // offerings unchanged since the last harvest, their stored datasets are kept
+    private final Set<String> unchangedOfferings = ConcurrentHashMap.newKeySet();
+
+    // offerings of which not all datasets could be harvested, their stored datasets are kept
+    private final Set<String> failedOfferings = ConcurrentHashMap.newKeySet();
+
+    // decoded capabilities of the service
+    private Supplier<OwsCapabilities> capabilities = () -> null;
+
+    // data availability of the whole service by offering
+    private Supplier<Optional<Map<String, List<DataAvailability>>>> dataAvailability = Optional::empty;
 
     public ServiceEntity getService() {
         return service;
     }
 
     public PhenomenonEntity putPhenomenon(PhenomenonEntity phenomenon) {
-        phenomena.put(phenomenon.getIdentifier(), phenomenon);
+        put(phenomena, phenomenon);
         return phenomenon;
     }
 
@@ -89,7 +126,7 @@ public class ServiceConstellation {
     }
 
     public ProcedureEntity putProcedure(ProcedureEntity procedure) {
-        procedures.put(procedure.getIdentifier(), procedure);
+        put(procedures, procedure);
         return procedure;
     }
 
@@ -98,7 +135,7 @@ public class ServiceConstellation {
     }
 
     public OfferingEntity putOffering(OfferingEntity offering) {
-        offerings.put(offering.getIdentifier(), offering);
+        put(offerings, offering);
         return offering;
     }
 
@@ -107,7 +144,7 @@ public class ServiceConstellation {
     }
 
     public FeatureEntity putFeature(FeatureEntity feature) {
-        features.put(feature.getIdentifier(), feature);
+        put(features, feature);
         return feature;
     }
 
@@ -123,11 +160,11 @@ public class ServiceConstellation {
     }
 
     public boolean containsFeature(String id) {
-        return features.containsKey(id);
+        return id != null && features.containsKey(id);
     }
 
     public PlatformEntity putPlatform(PlatformEntity platform) {
-        platforms.put(platform.getIdentifier(), platform);
+        put(platforms, platform);
         return platform;
     }
 
@@ -140,7 +177,7 @@ public class ServiceConstellation {
     }
 
     public CategoryEntity putCategory(CategoryEntity category) {
-        categories.put(category.getIdentifier(), category);
+        put(categories, category);
         return category;
     }
 
@@ -148,6 +185,29 @@ public class ServiceConstellation {
         return putCategory(EntityBuilder.createCategory(id, name, service));
     }
 
+    /**
+     * Puts the entity by its identifier. The maps are accessed concurrently and can not hold <code>null</code>
+     * keys, entities without identifier are not kept, like datasets referencing them, see
+     * {@link #get(Map, String)}.
+     */
+    private static <T extends DescribableEntity> void put(Map<String, T> entities, T entity) {
+        if (entity.getIdentifier() != null) {
+            entities.put(entity.getIdentifier(), entity);
+        }
+    }
+
+    /**
+     * Looks up an entity of one of the maps of a constellation.
+     *
+     * @param <T>      the entity type
+     * @param entities the entities by identifier
+     * @param id       the identifier, may be <code>null</code>
+     * @return the entity or <code>null</code> if the identifier is <code>null</code> or unknown
+     */
+    public static <T> T get(Map<String, T> entities, String id) {
+        return id != null ? entities.get(id) : null;
+    }
+
     public void setService(ServiceEntity service) {
         this.service = service;
     }
@@ -205,9 +265,118 @@ public class ServiceConstellation {
     }
 
     public boolean add(DatasetConstellation e) {
+        if (e.getOffering() != null) {
+            datasetOfferings.add(e.getOffering());
+            offeringDatasets.computeIfAbsent(e.getOffering(), key -> ConcurrentHashMap.newKeySet()).add(e);
+        }
+        if (datasetConsumer != null) {
+            datasetConsumer.accept(e);
+            return true;
+        }
         return datasets.add(e);
     }
 
+    /**
+     * @param offering the offering
+     * @return the added datasets of the offering, including the datasets passed to the dataset consumer, until they
+     *         are removed by {@link #removeDatasets(String)}
+     */
+    public Collection<DatasetConstellation> getDatasets(String offering) {
+        return offeringDatasets.getOrDefault(offering, Collections.emptySet());
+    }
+
+    /**
+     * Releases the datasets of an offering kept for {@link #getDatasets(String)}, e.g. once the offering is
+     * checkpointed. Collected datasets stay in {@link #getDatasets()}.
+     *
+     * @param offering the offering
+     */
+    public void removeDatasets(String offering) {
+        offeringDatasets.remove(offering);
+    }
+
+    /**
+     * @return the offerings of all added datasets, including the datasets passed to the dataset consumer
+     */
+    public Set<String> getDatasetOfferings() {
+        return datasetOfferings;
+    }
+
+    /**
+     * Passes all datasets added from now on to the consumer instead of collecting them, e.g. to persist them while
+     * the harvest continues. The entities referenced by a dataset have to be added before the dataset.
+     *
+     * @param datasetConsumer the consumer of the datasets
+     */
+    public void setDatasetConsumer(Consumer<DatasetConstellation> datasetConsumer) {
+        this.datasetConsumer = datasetConsumer;
+    }
+
+    public FeatureCache getFeatureCache() {
+        return featureCache;
+    }
+
+    public OfferingFingerprints getOfferingFingerprints() {
+        return offeringFingerprints;
+    }
+
+    /**
+     * @return the offerings that did not change since the last harvest and were not harvested again
+     */
+    public Set<String> getUnchangedOfferings() {
+        return unchangedOfferings;
+    }
+
+    public void addUnchangedOffering(String offering) {
+        unchangedOfferings.add(offering);
+    }
+
+    /**
+     * @return the offerings of which not all datasets could be harvested, e.g. because a request failed
+     */
+    public Set<String> getFailedOfferings() {
+        return failedOfferings;
+    }
+
+    public void addFailedOffering(String offering) {
+        if (offering != null) {
+            failedOfferings.add(offering);
+        }
+    }
+
+    /**
+     * @return the decoded capabilities of the service, if they are known
+     */
+    public Optional<OwsCapabilities> getCapabilities() {
+        return Optional.ofNullable(capabilities.get());
+    }
+
+    /**
+     * Sets the capabilities of the service. The supplier is called once on first access and the result is shared by
+     * all consumers of this constellation.
+     *
+     * @param capabilities the supplier of the decoded capabilities
+     */
+    public void setCapabilities(Supplier<OwsCapabilities> capabilities) {
+        this.capabilities = Suppliers.memoize(capabilities::get);
+    }
+
+    /**
+     * @return the data availability of the whole service grouped by offering, if it is known
+     */
+    public Optional<Map<String, List<DataAvailability>>> getDataAvailability() {
+        return dataAvailability.get();
+    }
+
+    /**
+     * Sets the data availability of the whole service. The supplier is called once on first access.
+     *
+     * @param dataAvailability the supplier of the data availability grouped by offering
+     */
+    public void setDataAvailability(Supplier<Optional<Map<String, List<DataAvailability>>>> dataAvailability) {
+        this.dataAvailability = Suppliers.memoize(dataAvailability::get);
+    }
+
     protected GeometryEntity createGeometryEntitity(Geometry geometry) {
         GeometryEntity geometryEntity = new GeometryEntity();
         geometryEntity.setGeometry(geometry);
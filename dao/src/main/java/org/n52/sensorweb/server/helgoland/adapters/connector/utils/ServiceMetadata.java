@@ -27,25 +27,59 @@
  */
 package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
 import org.n52.janmayen.http.MediaTypes;
+import org.n52.series.db.beans.ServiceMetadataEntity;
+
+import com.google.common.base.Suppliers;
+import com.google.common.io.ByteStreams;
 
+/**
+ * Service metadata of a data source. The metadata can be stored gzip compressed and Base64 encoded, see
+ * {@link #toEntity(boolean)}. The format of the stored entity stays the media type of the metadata, compressed
+ * metadata is recognized by the Base64 encoded gzip header, that no XML or JSON document starts with. Stored
+ * metadata is decompressed on first access.
+ */
 public class ServiceMetadata {
 
-    private final String metadata;
+    /**
+     * The Base64 encoding of the gzip magic number and compression method.
+     */
+    private static final String GZIP_BASE64_PREFIX = "H4sI";
+
+    private final Supplier<String> metadata;
+
+    private final String storedMetadata;
 
     private final String format;
 
     public ServiceMetadata(String metadata, String format) {
+        this(() -> metadata, metadata, format);
+    }
+
+    private ServiceMetadata(Supplier<String> metadata, String storedMetadata, String format) {
         this.metadata = metadata;
+        this.storedMetadata = storedMetadata;
         this.format = format;
     }
 
     public String getMetadata() {
-        return metadata;
+        return metadata.get();
     }
 
     public boolean isSetMetadata() {
-        return getMetadata() != null && !getMetadata().isEmpty();
+        return storedMetadata != null && !storedMetadata.isEmpty();
     }
 
     public String getFormat() {
@@ -56,6 +90,50 @@ public class ServiceMetadata {
         return getFormat() != null && !getFormat().isEmpty();
     }
 
+    /**
+     * Compares the stored text first and decompresses the stored metadata only if it differs, e.g. because it is
+     * stored compressed.
+     *
+     * @param entity the stored metadata
+     * @return if the stored metadata has the same content as this metadata
+     */
+    public boolean isContentOf(ServiceMetadataEntity entity) {
+        if (!isSetMetadata() || entity == null || entity.getMetadata() == null) {
+            return false;
+        }
+        return storedMetadata.equals(entity.getMetadata()) || getMetadata().equals(of(entity).getMetadata());
+    }
+
+    /**
+     * Creates the entity to store the metadata. Compressed metadata is much smaller, but other readers of the
+     * database get the Base64 encoded gzip data and have to decode it like {@link #of(ServiceMetadataEntity)}.
+     *
+     * @param compress if the metadata is stored compressed
+     * @return the entity
+     */
+    public ServiceMetadataEntity toEntity(boolean compress) {
+        return new ServiceMetadataEntity().setMetadata(compress && isSetMetadata() ? compress(getMetadata())
+                : getMetadata()).setFormat(format);
+    }
+
+    public ServiceMetadataEntity toEntity() {
+        return toEntity(false);
+    }
+
+    /**
+     * Creates the metadata of a stored entity, that may be stored compressed.
+     *
+     * @param entity the stored metadata
+     * @return the metadata
+     */
+    public static ServiceMetadata of(ServiceMetadataEntity entity) {
+        String stored = entity.getMetadata();
+        if (stored == null || !stored.startsWith(GZIP_BASE64_PREFIX)) {
+            return new ServiceMetadata(stored, entity.getFormat());
+        }
+        return new ServiceMetadata(Suppliers.memoize(() -> decompress(stored)), stored, entity.getFormat());
+    }
+
     public static ServiceMetadata createXmlServiceMetadata(String metadata) {
         return new ServiceMetadata(metadata, MediaTypes.APPLICATION_XML.toString());
     }
@@ -63,4 +141,26 @@ public class ServiceMetadata {
     public static ServiceMetadata createJsonServiceMetadata(String metadata) {
         return new ServiceMetadata(metadata, MediaTypes.APPLICATION_JSON.toString());
     }
+
+    private static String compress(String metadata) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(metadata.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    private static String decompress(String encodedMetadata) {
+        if (encodedMetadata == null) {
+            return null;
+        }
+        try (InputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(Base64.getDecoder().decode(encodedMetadata)))) {
+            return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Optional;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.n52.shetland.ogc.filter.FilterConstants.TimeOperator;
+import org.n52.shetland.ogc.filter.TemporalFilter;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.gml.time.TimePeriod;
+import org.n52.shetland.ogc.sos.Sos2Constants;
+import org.n52.shetland.ogc.sos.SosConstants;
+import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityConstants;
+import org.n52.shetland.ogc.sos.request.GetFeatureOfInterestRequest;
+import org.n52.shetland.ogc.sos.request.GetObservationRequest;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes GetObservation, GetFeatureOfInterest and GetDataAvailability requests for the JSON binding of the
+ * 52°North SOS. Requests using anything beyond identifiers, determinate instant/period temporal filters and the
+ * response format are not supported and have to be sent with the XML bindings.
+ */
+public final class SosJsonRequests {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private SosJsonRequests() {
+    }
+
+    /**
+     * @param request the request
+     * @return the entity or an empty optional if the request is not supported
+     */
+    public static Optional<HttpEntity> getObservation(GetObservationRequest request) {
+        if (request.isSetExtensions() || request.isSetSpatialFilter() || request.isSetResultFilter()
+                || request.getTemporalFilters() != null
+                        && !request.getTemporalFilters().stream().allMatch(SosJsonRequests::isSupported)) {
+            return Optional.empty();
+        }
+        return Optional.of(write(SosConstants.Operations.GetObservation.name(), json -> {
+            writeArray(json, "procedure", request.getProcedures());
+            writeArray(json, "offering", request.getOfferings());
+            writeArray(json, "observedProperty", request.getObservedProperties());
+            writeArray(json, "featureOfInterest", request.getFeatureIdentifiers());
+            if (request.getTemporalFilters() != null && !request.getTemporalFilters().isEmpty()) {
+                json.writeArrayFieldStart("temporalFilter");
+                for (TemporalFilter filter : request.getTemporalFilters()) {
+                    writeTemporalFilter(json, filter);
+                }
+                json.writeEndArray();
+            }
+            if (request.getResponseFormat() != null && !request.getResponseFormat().isEmpty()) {
+                json.writeStringField("responseFormat", request.getResponseFormat());
+            }
+        }));
+    }
+
+    /**
+     * @param request the request
+     * @return the entity or an empty optional if the request is not supported
+     */
+    public static Optional<HttpEntity> getFeatureOfInterest(GetFeatureOfInterestRequest request) {
+        if (request.isSetExtensions() || !isEmpty(request.getSpatialFilters())
+                || !isEmpty(request.getTemporalFilters())) {
+            return Optional.empty();
+        }
+        return Optional.of(write(SosConstants.Operations.GetFeatureOfInterest.name(), json -> {
+            writeArray(json, "procedure", request.getProcedures());
+            writeArray(json, "observedProperty", request.getObservedProperties());
+            writeArray(json, "featureOfInterest", request.getFeatureIdentifiers());
+        }));
+    }
+
+    public static HttpEntity getDataAvailability(String procedure, String offering, String phenomenon,
+            String feature) {
+        return write(GetDataAvailabilityConstants.OPERATION_NAME, json -> {
+            writeString(json, "procedure", procedure);
+            writeString(json, "offering", offering);
+            writeString(json, "observedProperty", phenomenon);
+            writeString(json, "featureOfInterest", feature);
+        });
+    }
+
+    private static HttpEntity write(String operation, Body body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("request", operation);
+            json.writeStringField("service", SosConstants.SOS);
+            json.writeStringField("version", Sos2Constants.SERVICEVERSION);
+            body.write(json);
+            json.writeEndObject();
+        } catch (IOException ex) {
+            // writing to memory does not fail
+            throw new UncheckedIOException(ex);
+        }
+        return new ByteArrayEntity(out.toByteArray(), ContentType.APPLICATION_JSON);
+    }
+
+    private static boolean isSupported(TemporalFilter filter) {
+        if (filter.getValueReference() == null) {
+            return false;
+        } else if (TimeOperator.TM_Equals.equals(filter.getOperator()) && filter.getTime() instanceof TimeInstant) {
+            return ((TimeInstant) filter.getTime()).isSetValue();
+        }
+        return TimeOperator.TM_During.equals(filter.getOperator()) && filter.getTime() instanceof TimePeriod
+                && ((TimePeriod) filter.getTime()).getStart() != null
+                && ((TimePeriod) filter.getTime()).getEnd() != null;
+    }
+
+    private static void writeTemporalFilter(JsonGenerator json, TemporalFilter filter) throws IOException {
+        json.writeStartObject();
+        json.writeObjectFieldStart(TimeOperator.TM_Equals.equals(filter.getOperator()) ? "equals" : "during");
+        json.writeStringField("ref", filter.getValueReference());
+        if (filter.getTime() instanceof TimeInstant) {
+            json.writeStringField("value", ((TimeInstant) filter.getTime()).getValue().toString());
+        } else {
+            TimePeriod period = (TimePeriod) filter.getTime();
+            json.writeArrayFieldStart("value");
+            json.writeString(period.getStart().toString());
+            json.writeString(period.getEnd().toString());
+            json.writeEndArray();
+        }
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    private static void writeArray(JsonGenerator json, String name, Collection<String> values) throws IOException {
+        if (!isEmpty(values)) {
+            json.writeArrayFieldStart(name);
+            for (String value : values) {
+                json.writeString(value);
+            }
+            json.writeEndArray();
+        }
+    }
+
+    private static void writeString(JsonGenerator json, String name, String value) throws IOException {
+        if (value != null) {
+            json.writeStringField(name, value);
+        }
+    }
+
+    private static boolean isEmpty(Collection<?> values) {
+        return values == null || values.isEmpty();
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        void write(JsonGenerator json) throws IOException;
+    }
+
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.n52.shetland.ogc.filter.FilterConstants.TimeOperator;
+import org.n52.shetland.ogc.filter.TemporalFilter;
+import org.n52.shetland.ogc.gml.time.Time;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.gml.time.TimePeriod;
+import org.n52.shetland.ogc.sos.request.GetFeatureOfInterestRequest;
+import org.n52.shetland.ogc.sos.request.GetObservationRequest;
+
+/**
+ * Writes the common SOS 2.0 GetObservation and GetFeatureOfInterest requests (POX or SOAP 1.2) from precompiled
+ * templates directly to the request stream, without building and serializing an XmlBeans document. Requests using
+ * anything beyond identifiers, instant/period temporal filters and the response format (e.g. extensions or spatial
+ * filters) are not supported and have to be encoded by the encoder repository.
+ */
+public final class SosRequestEntity extends AbstractHttpEntity {
+
+    private static final String CONTENT_TYPE = "text/xml; charset=UTF-8";
+
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+    private static final String SOAP_START =
+            "<env:Envelope xmlns:env=\"http://www.w3.org/2003/05/soap-envelope\"><env:Body>";
+
+    private static final String SOAP_END = "</env:Body></env:Envelope>";
+
+    private static final String NAMESPACES = " service=\"SOS\" version=\"2.0.0\""
+            + " xmlns:sos=\"http://www.opengis.net/sos/2.0\""
+            + " xmlns:fes=\"http://www.opengis.net/fes/2.0\""
+            + " xmlns:gml=\"http://www.opengis.net/gml/3.2\">";
+
+    private static final String GET_OBSERVATION_START = "<sos:GetObservation" + NAMESPACES;
+
+    private static final String GET_OBSERVATION_END = "</sos:GetObservation>";
+
+    private static final String GET_FEATURE_OF_INTEREST_START = "<sos:GetFeatureOfInterest" + NAMESPACES;
+
+    private static final String GET_FEATURE_OF_INTEREST_END = "</sos:GetFeatureOfInterest>";
+
+    private final Template template;
+
+    private final boolean soap;
+
+    private SosRequestEntity(Template template, boolean soap) {
+        this.template = template;
+        this.soap = soap;
+        setContentType(CONTENT_TYPE);
+    }
+
+    /**
+     * Creates the entity for a request if it is supported by the templates.
+     *
+     * @param request the request
+     * @param soap    if the request should be wrapped in a SOAP 1.2 envelope
+     * @return the entity or an empty optional if the request has to be encoded by the encoder repository
+     */
+    public static Optional<HttpEntity> create(Object request, boolean soap) {
+        Template template = null;
+        if (request instanceof GetObservationRequest) {
+            template = getObservation((GetObservationRequest) request);
+        } else if (request instanceof GetFeatureOfInterestRequest) {
+            template = getFeatureOfInterest((GetFeatureOfInterestRequest) request);
+        }
+        return Optional.ofNullable(template).map(t -> new SosRequestEntity(t, soap));
+    }
+
+    private static Template getObservation(GetObservationRequest request) {
+        if (request.isSetExtensions() || request.isSetSpatialFilter() || request.isSetResultFilter()
+                || !isSupported(request.getTemporalFilters())) {
+            return null;
+        }
+        List<String> procedures = copy(request.getProcedures());
+        List<String> offerings = copy(request.getOfferings());
+        List<String> observedProperties = copy(request.getObservedProperties());
+        List<TemporalFilter> temporalFilters = copy(request.getTemporalFilters());
+        List<String> features = copy(request.getFeatureIdentifiers());
+        String responseFormat = request.getResponseFormat();
+        return writer -> {
+            writer.write(GET_OBSERVATION_START);
+            writeElements(writer, "sos:procedure", procedures);
+            writeElements(writer, "sos:offering", offerings);
+            writeElements(writer, "sos:observedProperty", observedProperties);
+            int id = 0;
+            for (TemporalFilter filter : temporalFilters) {
+                writeTemporalFilter(writer, filter, ++id);
+            }
+            writeElements(writer, "sos:featureOfInterest", features);
+            if (responseFormat != null && !responseFormat.isEmpty()) {
+                writeElement(writer, "sos:responseFormat", responseFormat);
+            }
+            writer.write(GET_OBSERVATION_END);
+        };
+    }
+
+    private static Template getFeatureOfInterest(GetFeatureOfInterestRequest request) {
+        if (request.isSetExtensions() || !isEmpty(request.getSpatialFilters())
+                || !isEmpty(request.getTemporalFilters())) {
+            return null;
+        }
+        List<String> procedures = copy(request.getProcedures());
+        List<String> observedProperties = copy(request.getObservedProperties());
+        List<String> features = copy(request.getFeatureIdentifiers());
+        return writer -> {
+            writer.write(GET_FEATURE_OF_INTEREST_START);
+            writeElements(writer, "sos:procedure", procedures);
+            writeElements(writer, "sos:observedProperty", observedProperties);
+            writeElements(writer, "sos:featureOfInterest", features);
+            writer.write(GET_FEATURE_OF_INTEREST_END);
+        };
+    }
+
+    private static boolean isSupported(Collection<TemporalFilter> filters) {
+        return filters == null || filters.stream().allMatch(SosRequestEntity::isSupported);
+    }
+
+    private static boolean isSupported(TemporalFilter filter) {
+        Time time = filter.getTime();
+        if (filter.getValueReference() == null) {
+            return false;
+        } else if (TimeOperator.TM_Equals.equals(filter.getOperator()) && time instanceof TimeInstant) {
+            return ((TimeInstant) time).isSetIndeterminateValue() || ((TimeInstant) time).isSetValue();
+        }
+        return TimeOperator.TM_During.equals(filter.getOperator()) && time instanceof TimePeriod
+                && ((TimePeriod) time).getStart() != null && ((TimePeriod) time).getEnd() != null;
+    }
+
+    private static void writeTemporalFilter(Writer writer, TemporalFilter filter, int id) throws IOException {
+        String operator = TimeOperator.TM_Equals.equals(filter.getOperator()) ? "fes:TEquals" : "fes:During";
+        writer.write("<sos:temporalFilter><");
+        writer.write(operator);
+        writer.write('>');
+        writeElement(writer, "fes:ValueReference", filter.getValueReference());
+        if (filter.getTime() instanceof TimeInstant) {
+            TimeInstant instant = (TimeInstant) filter.getTime();
+            writer.write("<gml:TimeInstant gml:id=\"ti_" + id + "\">");
+            writeElement(writer, "gml:timePosition", instant.isSetIndeterminateValue()
+                    ? instant.getIndeterminateValue().getValue()
+                    : instant.getValue().toString());
+            writer.write("</gml:TimeInstant>");
+        } else {
+            TimePeriod period = (TimePeriod) filter.getTime();
+            writer.write("<gml:TimePeriod gml:id=\"tp_" + id + "\">");
+            writeElement(writer, "gml:beginPosition", period.getStart().toString());
+            writeElement(writer, "gml:endPosition", period.getEnd().toString());
+            writer.write("</gml:TimePeriod>");
+        }
+        writer.write("</");
+        writer.write(operator);
+        writer.write("></sos:temporalFilter>");
+    }
+
+    private static void writeElements(Writer writer, String name, List<String> values) throws IOException {
+        for (String value : values) {
+            writeElement(writer, name, value);
+        }
+    }
+
+    private static void writeElement(Writer writer, String name, String value) throws IOException {
+        writer.write('<');
+        writer.write(name);
+        writer.write('>');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<':
+                    writer.write("&lt;");
+                    break;
+                case '>':
+                    writer.write("&gt;");
+                    break;
+                case '&':
+                    writer.write("&amp;");
+                    break;
+                default:
+                    writer.write(c);
+            }
+        }
+        writer.write("</");
+        writer.write(name);
+        writer.write('>');
+    }
+
+    private static <T> List<T> copy(Collection<T> values) {
+        return values != null ? new ArrayList<>(values) : Collections.emptyList();
+    }
+
+    private static boolean isEmpty(Collection<?> values) {
+        return values == null || values.isEmpty();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(XML_DECLARATION);
+        if (soap) {
+            writer.write(SOAP_START);
+        }
+        template.write(writer);
+        if (soap) {
+            writer.write(SOAP_END);
+        }
+        writer.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeTo(out);
+        } catch (IOException ex) {
+            return super.toString();
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface Template {
+        void write(Writer writer) throws IOException;
+    }
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Units of the observed properties of procedures by offering, kept across harvests. The units of an offering are
+ * discarded when its fingerprint changes, see {@link #validate(String, String, String)}. Unknown units are cached as
+ * well, but only for a limited time, as a dataset without values gets a unit with its first value.
+ *
+ * With a directory, the known units of a service are written to one file per service by {@link #save(String)} and
+ * read again on first access, so they are kept across restarts.
+ */
+public class UnitCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UnitCache.class);
+
+    private static final String SUFFIX = ".units";
+
+    private static final long DEFAULT_UNKNOWN_TTL = TimeUnit.HOURS.toSeconds(1);
+
+    private final Path directory;
+
+    private final long unknownTtl;
+
+    private final Map<String, Map<String, Units>> services = new ConcurrentHashMap<>();
+
+    public UnitCache() {
+        this(null);
+    }
+
+    public UnitCache(String directory) {
+        this(directory, DEFAULT_UNKNOWN_TTL);
+    }
+
+    /**
+     * @param directory  the directory to keep the units in or <code>null</code> to keep them in memory only
+     * @param unknownTtl the seconds an unknown unit is not requested again
+     */
+    public UnitCache(String directory, long unknownTtl) {
+        this.directory = directory != null ? Paths.get(directory) : null;
+        this.unknownTtl = TimeUnit.SECONDS.toNanos(unknownTtl);
+    }
+
+    /**
+     * Discards the units of the offering if they were cached for another fingerprint.
+     *
+     * @param service     the service URL
+     * @param offering    the offering
+     * @param fingerprint the current fingerprint of the offering
+     */
+    public void validate(String service, String offering, String fingerprint) {
+        getOfferings(service).compute(offering, (key, units) -> units != null
+                && Objects.equals(units.fingerprint, fingerprint) ? units : new Units(fingerprint));
+    }
+
+    public boolean contains(String service, String offering, String procedure, String phenomenon) {
+        Units units = getOfferings(service).get(offering);
+        if (units == null) {
+            return false;
+        }
+        String key = key(procedure, phenomenon);
+        if (units.units.containsKey(key)) {
+            return true;
+        }
+        Long expiry = units.unknown.get(key);
+        if (expiry != null && expiry - System.nanoTime() <= 0) {
+            units.unknown.remove(key, expiry);
+            return false;
+        }
+        return expiry != null;
+    }
+
+    /**
+     * @param service    the service URL
+     * @param offering   the offering
+     * @param procedure  the procedure
+     * @param phenomenon the observed property
+     * @return the unit or an empty optional if the unit is unknown or not cached
+     */
+    public Optional<String> getUnit(String service, String offering, String procedure, String phenomenon) {
+        return Optional.ofNullable(getOfferings(service).get(offering))
+                .map(units -> units.units.get(key(procedure, phenomenon)));
+    }
+
+    /**
+     * @param service    the service URL
+     * @param offering   the offering
+     * @param procedure  the procedure
+     * @param phenomenon the observed property
+     * @param unit       the unit or <code>null</code> if it is unknown, unknown units expire and are not saved
+     */
+    public void putUnit(String service, String offering, String procedure, String phenomenon, String unit) {
+        Units units = getOfferings(service).computeIfAbsent(offering, key -> new Units(null));
+        String key = key(procedure, phenomenon);
+        if (unit != null) {
+            units.units.put(key, unit);
+            units.unknown.remove(key);
+        } else {
+            units.units.remove(key);
+            units.unknown.put(key, System.nanoTime() + unknownTtl);
+        }
+    }
+
+    /**
+     * Writes the known units of a service to the directory, if any.
+     *
+     * @param service the service URL
+     */
+    public void save(String service) {
+        Map<String, Units> offerings = services.get(service);
+        if (directory == null || offerings == null) {
+            return;
+        }
+        Path file = getFile(service);
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, null, SUFFIX);
+            try (DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(offerings.size());
+                for (Map.Entry<String, Units> offering : offerings.entrySet()) {
+                    out.writeUTF(offering.getKey());
+                    out.writeUTF(Optional.ofNullable(offering.getValue().fingerprint).orElse(""));
+                    Map<String, String> units = new LinkedHashMap<>(offering.getValue().units);
+                    out.writeInt(units.size());
+                    for (Map.Entry<String, String> unit : units.entrySet()) {
+                        out.writeUTF(unit.getKey());
+                        out.writeUTF(unit.getValue());
+                    }
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            LOGGER.warn("Could not save the units of {}: {}", service, ex.getMessage());
+        }
+    }
+
+    private Map<String, Units> getOfferings(String service) {
+        return services.computeIfAbsent(service, this::load);
+    }
+
+    private Map<String, Units> load(String service) {
+        Map<String, Units> offerings = new ConcurrentHashMap<>();
+        if (directory == null || !Files.isRegularFile(getFile(service))) {
+            return offerings;
+        }
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(getFile(service))))) {
+            for (int i = in.readInt(); i > 0; i--) {
+                String offering = in.readUTF();
+                String fingerprint = in.readUTF();
+                Units units = new Units(fingerprint.isEmpty() ? null : fingerprint);
+                for (int j = in.readInt(); j > 0; j--) {
+                    units.units.put(in.readUTF(), in.readUTF());
+                }
+                offerings.put(offering, units);
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Discarding unreadable units of {}: {}", service, ex.getMessage());
+            offerings.clear();
+        }
+        return offerings;
+    }
+
+    private Path getFile(String service) {
+        return directory.resolve(Hashing.sha256().hashString(service, StandardCharsets.UTF_8) + SUFFIX);
+    }
+
+    private static String key(String procedure, String phenomenon) {
+        return procedure + '\n' + phenomenon;
+    }
+
+    private static final class Units {
+
+        private final String fingerprint;
+
+        private final Map<String, String> units = new ConcurrentHashMap<>();
+
+        private final Map<String, Long> unknown = new ConcurrentHashMap<>();
+
+        Units(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.da;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.n52.sensorweb.server.helgoland.adapters.connector.ConnectorRequestFailedException;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.ServiceEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import net.jodah.failsafe.CircuitBreaker;
+import net.jodah.failsafe.CircuitBreakerOpenException;
+import net.jodah.failsafe.Failsafe;
+
+/**
+ * Guards the {@code ValueConnector} calls of a service by a circuit breaker. The circuit opens if too many of the
+ * recent calls failed or exceeded the slow call threshold. While it is open, calls fail fast (or use a fallback)
+ * instead of waiting for the socket timeout of an unresponsive service; after the delay a few calls are let through
+ * to probe whether the service recovered.
+ *
+ * The state of each circuit is published as gauge {@value #METRIC_STATE} (0 closed, 1 open, 2 half-open).
+ */
+public class ConnectorCircuitBreaker {
+
+    static final String METRIC_STATE = "proxy.connector.circuit.state";
+
+    static final String METRIC_REJECTED = "proxy.connector.circuit.rejected";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectorCircuitBreaker.class);
+
+    private final Map<String, CircuitBreaker<Object>> breakers = new ConcurrentHashMap<>();
+
+    private final int failureThreshold;
+
+    private final int failureExecutions;
+
+    private final int successThreshold;
+
+    private final long slowCallThreshold;
+
+    private final long openDelay;
+
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    public ConnectorCircuitBreaker() {
+        this(5, 10, 2, 60000, 30000);
+    }
+
+    /**
+     * @param failureThreshold  number of failed calls within the last {@code failureExecutions} calls opening the
+     *                          circuit
+     * @param failureExecutions number of recent calls considered
+     * @param successThreshold  number of successful probes closing the circuit again
+     * @param slowCallThreshold calls taking longer (in milliseconds) are counted as failed
+     * @param openDelay         time (in milliseconds) an open circuit waits before probing the service
+     */
+    public ConnectorCircuitBreaker(int failureThreshold, int failureExecutions, int successThreshold,
+            long slowCallThreshold, long openDelay) {
+        this.failureThreshold = failureThreshold;
+        this.failureExecutions = Math.max(failureThreshold, failureExecutions);
+        this.successThreshold = successThreshold;
+        this.slowCallThreshold = slowCallThreshold;
+        this.openDelay = openDelay;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Executes the call unless the circuit of the dataset's service is open.
+     *
+     * @param <T>     the result type
+     * @param dataset the dataset
+     * @param call    the connector call
+     * @return the result of the call
+     * @throws ConnectorRequestFailedException if the circuit is open
+     */
+    public <T> T execute(DatasetEntity dataset, Supplier<T> call) {
+        return execute(dataset, call, null);
+    }
+
+    /**
+     * Executes the call unless the circuit of the dataset's service is open, in which case the fallback is used.
+     *
+     * @param <T>      the result type
+     * @param dataset  the dataset
+     * @param call     the connector call
+     * @param fallback the fallback, may be {@code null} to fail fast
+     * @return the result of the call or the fallback
+     * @throws ConnectorRequestFailedException if the circuit is open and there is no fallback
+     */
+    public <T> T execute(DatasetEntity dataset, Supplier<T> call, Supplier<T> fallback) {
+        String service = getServiceName(dataset.getService());
+        try {
+            return Failsafe.with(getBreaker(service)).get(call::get);
+        } catch (CircuitBreakerOpenException ex) {
+            meterRegistry.counter(METRIC_REJECTED, "service", service).increment();
+            if (fallback != null) {
+                LOGGER.debug("Circuit for service '{}' is open, using stored values of dataset {}", service,
+                        dataset.getId());
+                return fallback.get();
+            }
+            throw new ConnectorRequestFailedException("Service '" + service + "' is currently unavailable", ex);
+        }
+    }
+
+    private CircuitBreaker<Object> getBreaker(String service) {
+        return breakers.computeIfAbsent(service, this::createBreaker);
+    }
+
+    private CircuitBreaker<Object> createBreaker(String service) {
+        CircuitBreaker<Object> breaker = new CircuitBreaker<>()
+                .withFailureThreshold(failureThreshold, failureExecutions)
+                .withSuccessThreshold(successThreshold)
+                .withTimeout(Duration.ofMillis(slowCallThreshold))
+                .withDelay(Duration.ofMillis(openDelay))
+                .onOpen(() -> LOGGER.warn("Circuit for service '{}' opened", service))
+                .onHalfOpen(() -> LOGGER.info("Circuit for service '{}' half-open, probing", service))
+                .onClose(() -> LOGGER.info("Circuit for service '{}' closed", service));
+        Gauge.builder(METRIC_STATE, breaker, ConnectorCircuitBreaker::toStateValue)
+                .description("state of the connector circuit breaker (0 closed, 1 open, 2 half-open)")
+                .tag("service", service)
+                .register(meterRegistry);
+        return breaker;
+    }
+
+    private static double toStateValue(CircuitBreaker<?> breaker) {
+        if (breaker.isOpen()) {
+            return 1;
+        }
+        return breaker.isHalfOpen() ? 2 : 0;
+    }
+
+    private static String getServiceName(ServiceEntity service) {
+        if (service == null) {
+            return "unknown";
+        }
+        return service.getName() != null ? service.getName() : String.valueOf(service.getId());
+    }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.da;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+import org.n52.sensorweb.server.helgoland.adapters.connector.ConnectorRequestFailedException;
+import org.n52.sensorweb.server.helgoland.adapters.connector.constellations.DatasetConstellation;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceConstellation;
+import org.n52.series.db.beans.ServiceEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Persists the datasets of a running harvest in batches while the connector continues harvesting. The connector
+ * passes its datasets to a bounded queue, which blocks the harvest if the database falls behind. The harvesting job
+ * closes the pipeline once the connector is done and cleans up the datasets of the service that were not harvested.
+ */
+public class DatasetPipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetPipeline.class);
+
+    private static final long POLL_INTERVAL = 100;
+
+    private final Map<String, Harvest> harvests = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+
+    private final int capacity;
+
+    private final int batchSize;
+
+    @Autowired
+    private InsertRepository insertRepository;
+
+    public DatasetPipeline(int capacity, int batchSize) {
+        this.capacity = Math.max(1, capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("dataset-pipeline-%d").setDaemon(true).build());
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts persisting the datasets of a harvest. The service of the constellation is inserted right away.
+     *
+     * @param config        the data source
+     * @param constellation the constellation of the harvest, with the service set
+     * @return the consumer of the harvested datasets
+     */
+    public Consumer<DatasetConstellation> open(DataSourceConfiguration config, ServiceConstellation constellation) {
+        abort(config);
+        Harvest harvest = new Harvest(config, constellation);
+        harvests.put(config.getUrl(), harvest);
+        return harvest::put;
+    }
+
+    /**
+     * Waits until all datasets of the harvest are persisted.
+     *
+     * @param config the data source
+     * @return the persisted harvest, if the pipeline was opened for the data source
+     */
+    public Optional<Harvest> close(DataSourceConfiguration config) {
+        Harvest harvest = harvests.remove(config.getUrl());
+        if (harvest != null) {
+            harvest.finish();
+        }
+        return Optional.ofNullable(harvest);
+    }
+
+    /**
+     * Stops persisting the datasets of a failed harvest. Datasets persisted so far are kept.
+     *
+     * @param config the data source
+     */
+    public void abort(DataSourceConfiguration config) {
+        Harvest harvest = harvests.remove(config.getUrl());
+        if (harvest != null) {
+            harvest.cancel();
+        }
+    }
+
+    /**
+     * The datasets of a harvest persisted by the pipeline.
+     */
+    public final class Harvest {
+
+        private final String source;
+        private final ServiceConstellation constellation;
+        private final BlockingQueue<DatasetConstellation> queue = new ArrayBlockingQueue<>(capacity);
+        private final ServiceEntity service;
+        private final Set<Long> datasetIds;
+        private final int datasetCount;
+        private final Future<?> worker;
+        private volatile boolean closed;
+        private volatile RuntimeException failure;
+        private int persisted;
+
+        Harvest(DataSourceConfiguration config, ServiceConstellation constellation) {
+            this.source = config.getItemName();
+            this.constellation = constellation;
+            this.service = insertRepository.insertService(constellation.getService());
+            this.datasetIds = insertRepository.getIdsForService(service);
+            this.datasetCount = datasetIds.size();
+            this.worker = executor.submit(this::run);
+        }
+
+        /**
+         * @return the persisted service
+         */
+        public ServiceEntity getService() {
+            return service;
+        }
+
+        /**
+         * @return the ids of the stored datasets of the service that were not harvested
+         */
+        public Set<Long> getDatasetIds() {
+            return datasetIds;
+        }
+
+        /**
+         * @return the number of stored datasets of the service before the harvest
+         */
+        public int getDatasetCount() {
+            return datasetCount;
+        }
+
+        private void put(DatasetConstellation dataset) {
+            try {
+                while (failure == null && !closed) {
+                    if (queue.offer(dataset, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ConnectorRequestFailedException(ex);
+            }
+            // fail the harvest instead of dropping the dataset
+            if (failure != null) {
+                throw failure;
+            }
+            throw new ConnectorRequestFailedException(
+                    String.format("The dataset pipeline of %s is already closed", source));
+        }
+
+        private void run() {
+            List<DatasetConstellation> batch = new ArrayList<>(batchSize);
+            try {
+                while (!closed || !queue.isEmpty()) {
+                    DatasetConstellation first = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        queue.drainTo(batch, batchSize - 1);
+                        datasetIds.removeAll(insertRepository.insertDatasets(service, constellation, batch));
+                        persisted += batch.size();
+                        LOGGER.debug("Persisted {} datasets of {}", persisted, source);
+                        batch.clear();
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException ex) {
+                LOGGER.warn("Persisting the datasets of {} failed", source, ex);
+                failure = ex;
+            }
+        }
+
+        private void finish() {
+            closed = true;
+            try {
+                worker.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ConnectorRequestFailedException(ex);
+            } catch (ExecutionException ex) {
+                throw new ConnectorRequestFailedException(ex.getCause());
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            LOGGER.info("Persisted {} datasets of {} while harvesting", persisted, source);
+        }
+
+        private void cancel() {
+            closed = true;
+            worker.cancel(true);
+        }
+
+    }
+
+}
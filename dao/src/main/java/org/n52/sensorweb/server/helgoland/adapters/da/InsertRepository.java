@@ -29,12 +29,18 @@ package org.n52.sensorweb.server.helgoland.adapters.da;
 
 import static java.util.stream.Collectors.toSet;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 import org.n52.io.request.IoParameters;
 import org.n52.sensorweb.server.db.repositories.core.DatasetRepository;
 import org.n52.sensorweb.server.db.repositories.core.UnitRepository;
 import org.n52.sensorweb.server.db.repositories.core.DataRepository;
+import org.n52.sensorweb.server.db.repositories.core.ServiceRepository;
 import org.n52.sensorweb.server.db.assembler.core.CategoryAssembler;
 import org.n52.sensorweb.server.db.assembler.core.DatasetAssembler;
 import org.n52.sensorweb.server.db.assembler.core.FeatureAssembler;
@@ -46,25 +52,35 @@ import org.n52.sensorweb.server.db.assembler.core.ServiceAssembler;
 import org.n52.sensorweb.server.db.old.dao.DbQueryFactory;
 import org.n52.sensorweb.server.db.query.DatasetQuerySpecifications;
 import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+import org.n52.sensorweb.server.helgoland.adapters.connector.constellations.DatasetConstellation;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceConstellation;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceMetadata;
 import org.n52.series.db.beans.AbstractFeatureEntity;
 import org.n52.series.db.beans.CategoryEntity;
 import org.n52.series.db.beans.DataEntity;
 import org.n52.series.db.beans.DatasetEntity;
 import org.n52.series.db.beans.DescribableEntity;
+import org.n52.series.db.beans.FeatureEntity;
 import org.n52.series.db.beans.OfferingEntity;
 import org.n52.series.db.beans.PhenomenonEntity;
 import org.n52.series.db.beans.PlatformEntity;
 import org.n52.series.db.beans.ProcedureEntity;
 import org.n52.series.db.beans.QuantityDataEntity;
 import org.n52.series.db.beans.ServiceEntity;
+import org.n52.series.db.beans.ServiceMetadataEntity;
 import org.n52.series.db.beans.UnitEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 @Component
 public class InsertRepository {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(InsertRepository.class);
+
     @Autowired
     private DbQueryFactory dbQueryFactory;
 
@@ -98,6 +114,9 @@ public class InsertRepository {
     @Autowired
     private UnitRepository unitRepository;
 
+    @Autowired
+    private ServiceRepository serviceRepository;
+
     @Autowired
     private DataRepository dataRepository;
 
@@ -108,6 +127,21 @@ public class InsertRepository {
         return datasetRepository.findAll(specification).stream().map(DescribableEntity::getId).collect(toSet());
     }
 
+    /**
+     * @param service   the service
+     * @param offerings the offering identifiers
+     * @return the ids of the stored datasets of the service belonging to one of the offerings
+     */
+    public synchronized Set<Long> getIdsForOfferings(ServiceEntity service, Collection<String> offerings) {
+        Set<Long> ids = new HashSet<>();
+        for (DatasetEntity dataset : datasetRepository.findByService(service)) {
+            if (dataset.getOffering() != null && offerings.contains(dataset.getOffering().getIdentifier())) {
+                ids.add(dataset.getId());
+            }
+        }
+        return ids;
+    }
+
     public void cleanUp(ServiceEntity service, Set<Long> datasetIds, boolean removeService) {
         if (datasetIds != null && !datasetIds.isEmpty()) {
             for (Long id : datasetIds) {
@@ -141,9 +175,63 @@ public class InsertRepository {
     }
 
     public ServiceEntity insertService(ServiceEntity service) {
+        ServiceMetadataEntity metadata = service.getServiceMetadata();
+        if (metadata != null) {
+            ServiceEntity stored =
+                    serviceRepository.findByNameAndUrlAndType(service.getName(), service.getUrl(), service.getType());
+            if (stored != null && ServiceMetadata.of(metadata).isContentOf(stored.getServiceMetadata())) {
+                // keep the stored metadata, so the unchanged document is not written again
+                service.setServiceMetadata(stored.getServiceMetadata());
+            }
+        }
         return serviceAssembler.getOrInsertInstance(service);
     }
 
+    /**
+     * Inserts a batch of harvested datasets with the entities they reference and their first and latest values.
+     *
+     * @param service       the inserted service
+     * @param constellation the constellation holding the referenced entities
+     * @param datasets      the datasets
+     * @return the ids of the inserted datasets
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public Set<Long> insertDatasets(ServiceEntity service, ServiceConstellation constellation,
+            Collection<DatasetConstellation> datasets) {
+        Set<Long> ids = new HashSet<>();
+        datasets.forEach(dataset -> {
+            ProcedureEntity procedure = ServiceConstellation.get(constellation.getProcedures(), dataset.getProcedure());
+            CategoryEntity category = new CategoryEntity();
+            category.setId(1L);
+            category.setIdentifier("DEFAULT_PROXY_CATEGORY");
+            FeatureEntity feature = ServiceConstellation.get(constellation.getFeatures(), dataset.getFeature());
+            OfferingEntity offering = ServiceConstellation.get(constellation.getOfferings(), dataset.getOffering());
+            PhenomenonEntity phenomenon =
+                    ServiceConstellation.get(constellation.getPhenomena(), dataset.getPhenomenon());
+            PlatformEntity platform = ServiceConstellation.get(constellation.getPlatforms(), dataset.getPlatform());
+
+            List<DescribableEntity> entities =
+                    Arrays.asList(procedure, category, feature, offering, phenomenon, platform);
+            if (entities.stream().allMatch(Objects::nonNull)) {
+                entities.stream().forEach(x -> x.setService(service));
+                DatasetEntity ds = insertDataset(dataset.createDatasetEntity(procedure, category,
+                        feature, offering, phenomenon, platform, service));
+                if (ds != null) {
+                    ids.add(ds.getId());
+
+                    dataset.getFirst().ifPresent(data -> insertData(ds, data));
+                    dataset.getLatest().ifPresent(data -> insertData(ds, data));
+                    LOGGER.info("Added dataset: {}", dataset);
+                } else {
+                    LOGGER.warn("Can't save dataset: {}", dataset);
+                }
+            } else {
+                LOGGER.warn("Can't add dataset: {}", dataset);
+            }
+        });
+        return ids;
+    }
+
     public synchronized DatasetEntity insertDataset(DatasetEntity dataset) {
         ProcedureEntity procedure = insertProcedure(dataset.getProcedure());
         CategoryEntity category = insertCategory(dataset.getCategory());
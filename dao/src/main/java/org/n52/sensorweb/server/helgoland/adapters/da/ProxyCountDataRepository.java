@@ -51,6 +51,8 @@ public class ProxyCountDataRepository extends CountValueAssembler {
 
     private Map<String, ValueConnector> connectorMap;
 
+    private ConnectorCircuitBreaker circuitBreaker;
+
     @Autowired
     public ProxyCountDataRepository(DataRepository<CountDataEntity> dataRepository,
             DatasetRepository datasetRepository) {
@@ -63,22 +65,30 @@ public class ProxyCountDataRepository extends CountValueAssembler {
                 connectors.stream().collect(toMap(ValueConnector::getName, Function.identity()));
     }
 
+    @Autowired
+    public void setCircuitBreaker(ConnectorCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
     @Override
     public CountValue getFirstValue(DatasetEntity entity, DbQuery query) {
-        DataEntity<?> firstObs = getConnector(entity).getFirstObservation(entity).orElse(null);
+        DataEntity<?> firstObs = circuitBreaker.execute(entity,
+                () -> getConnector(entity).getFirstObservation(entity).orElse(null), entity::getFirstObservation);
         return assembleDataValue((CountDataEntity) firstObs, entity, query);
     }
 
     @Override
     public CountValue getLastValue(DatasetEntity entity, DbQuery query) {
-        DataEntity<?> lastObs = getConnector(entity).getLastObservation(entity).orElse(null);
+        DataEntity<?> lastObs = circuitBreaker.execute(entity,
+                () -> getConnector(entity).getLastObservation(entity).orElse(null), entity::getLastObservation);
         return assembleDataValue((CountDataEntity) lastObs, entity, query);
     }
 
     @Override
     protected Data<CountValue> assembleDataValues(DatasetEntity seriesEntity, DbQuery query) {
         Data<CountValue> result = new Data<>();
-        this.getConnector(seriesEntity).getObservations(seriesEntity, query).stream()
+        circuitBreaker.execute(seriesEntity, () -> getConnector(seriesEntity).getObservations(seriesEntity, query))
+                .stream()
                 .map(entry -> assembleDataValue((CountDataEntity) entry, seriesEntity, query))
                 .forEach(entry -> result.addNewValue(entry));
         return result;
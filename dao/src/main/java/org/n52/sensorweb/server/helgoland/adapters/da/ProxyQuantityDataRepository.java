@@ -52,6 +52,8 @@ public class ProxyQuantityDataRepository extends QuantityValueAssembler {
 
 private Map<String, ValueConnector> connectorMap;
 
+    private ConnectorCircuitBreaker circuitBreaker;
+
 public ProxyQuantityDataRepository(DataRepository<QuantityDataEntity> dataRepository,
             DatasetRepository datasetRepository) {
         super(dataRepository, datasetRepository);
@@ -63,6 +65,11 @@ public ProxyQuantityDataRepository(DataRepository<QuantityDataEntity> dataReposi
                 .collect(toMap(ValueConnector::getName, Function.identity()));
     }
 
+    @Autowired
+    public void setCircuitBreaker(ConnectorCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
     @Override
     public ValueConnector getConnector(DatasetEntity seriesEntity) {
         String connectorName = seriesEntity.getService().getConnector();
@@ -71,21 +78,23 @@ public ProxyQuantityDataRepository(DataRepository<QuantityDataEntity> dataReposi
 
     @Override
     public QuantityValue getFirstValue(DatasetEntity entity, DbQuery query) {
-        DataEntity<?> firstObservation = this.getConnector(entity).getFirstObservation(entity).orElse(null);
+        DataEntity<?> firstObservation = circuitBreaker.execute(entity,
+                () -> getConnector(entity).getFirstObservation(entity).orElse(null), entity::getFirstObservation);
         return assembleDataValue((QuantityDataEntity) firstObservation, entity, query);
     }
 
     @Override
     public QuantityValue getLastValue(DatasetEntity entity, DbQuery query) {
-        DataEntity<?> lastObservation = this.getConnector(entity).getLastObservation(entity).orElse(null);
+        DataEntity<?> lastObservation = circuitBreaker.execute(entity,
+                () -> getConnector(entity).getLastObservation(entity).orElse(null), entity::getLastObservation);
         return assembleDataValue((QuantityDataEntity) lastObservation, entity, query);
     }
 
     @Override
     protected Data<QuantityValue> assembleDataValues(DatasetEntity seriesEntity, DbQuery query) {
         Data<QuantityValue> result = new Data<>();
-        this.getConnector(seriesEntity)
-                .getObservations(seriesEntity, query).stream()
+        circuitBreaker.execute(seriesEntity, () -> getConnector(seriesEntity).getObservations(seriesEntity, query))
+                .stream()
                 .map(entry -> assembleDataValue((QuantityDataEntity) entry, seriesEntity, query))
                 .forEach(entry -> result.addNewValue(entry));
         return result;
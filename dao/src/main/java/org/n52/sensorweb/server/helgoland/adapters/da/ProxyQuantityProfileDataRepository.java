@@ -60,6 +60,8 @@ public class ProxyQuantityProfileDataRepository extends QuantityProfileValueAsse
 
     private Map<String, ValueConnector> connectorMap;
 
+    private ConnectorCircuitBreaker circuitBreaker;
+
     public ProxyQuantityProfileDataRepository(DataRepository<ProfileDataEntity> profileDataRepository,
             DatasetRepository datasetRepository) {
         super(profileDataRepository, datasetRepository);
@@ -71,6 +73,11 @@ public class ProxyQuantityProfileDataRepository extends QuantityProfileValueAsse
                 connectors.stream().collect(toMap(ValueConnector::getName, Function.identity()));
     }
 
+    @Autowired
+    public void setCircuitBreaker(ConnectorCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
     @Override
     public ValueConnector getConnector(DatasetEntity profileDatasetEntity) {
         String connectorName = profileDatasetEntity.getService().getConnector();
@@ -79,8 +86,9 @@ public class ProxyQuantityProfileDataRepository extends QuantityProfileValueAsse
 
     @Override
     public ProfileValue<BigDecimal> getFirstValue(DatasetEntity profileDatasetEntity, DbQuery query) {
-        DataEntity<?> firstObs =
-                getConnector(profileDatasetEntity).getFirstObservation(profileDatasetEntity).orElse(null);
+        DataEntity<?> firstObs = circuitBreaker.execute(profileDatasetEntity,
+                () -> getConnector(profileDatasetEntity).getFirstObservation(profileDatasetEntity).orElse(null),
+                profileDatasetEntity::getFirstObservation);
         if (firstObs == null) {
             return null;
         }
@@ -89,8 +97,9 @@ public class ProxyQuantityProfileDataRepository extends QuantityProfileValueAsse
 
     @Override
     public ProfileValue<BigDecimal> getLastValue(DatasetEntity profileDatasetEntity, DbQuery query) {
-        DataEntity<?> lastObs =
-                getConnector(profileDatasetEntity).getLastObservation(profileDatasetEntity).orElse(null);
+        DataEntity<?> lastObs = circuitBreaker.execute(profileDatasetEntity,
+                () -> getConnector(profileDatasetEntity).getLastObservation(profileDatasetEntity).orElse(null),
+                profileDatasetEntity::getLastObservation);
         if (lastObs == null) {
             return null;
         }
@@ -100,7 +109,8 @@ public class ProxyQuantityProfileDataRepository extends QuantityProfileValueAsse
     @Override
     protected Data<ProfileValue<BigDecimal>> assembleDataValues(DatasetEntity profileDatasetEntity, DbQuery query) {
         Data<ProfileValue<BigDecimal>> result = new Data<>();
-        this.getConnector(profileDatasetEntity).getObservations(profileDatasetEntity, query).stream()
+        circuitBreaker.execute(profileDatasetEntity,
+                () -> getConnector(profileDatasetEntity).getObservations(profileDatasetEntity, query)).stream()
                 .map(entry -> assembleDataValue((ProfileDataEntity) entry, profileDatasetEntity, query))
                 .forEach(entry -> result.addNewValue(entry));
         return result;
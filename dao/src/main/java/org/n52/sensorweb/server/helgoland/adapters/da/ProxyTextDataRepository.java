@@ -51,6 +51,8 @@ public class ProxyTextDataRepository extends TextValueAssembler {
 
     private Map<String, ValueConnector> connectorMap;
 
+    private ConnectorCircuitBreaker circuitBreaker;
+
     public ProxyTextDataRepository(DataRepository<TextDataEntity> dataRepository,
             DatasetRepository datasetRepository) {
         super(dataRepository, datasetRepository);
@@ -62,22 +64,30 @@ public class ProxyTextDataRepository extends TextValueAssembler {
                 connectors.stream().collect(toMap(ValueConnector::getName, Function.identity()));
     }
 
+    @Autowired
+    public void setCircuitBreaker(ConnectorCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
     @Override
     public TextValue getFirstValue(DatasetEntity entity, DbQuery query) {
-        DataEntity<?> firstObs = this.getConnector(entity).getFirstObservation(entity).orElse(null);
+        DataEntity<?> firstObs = circuitBreaker.execute(entity,
+                () -> getConnector(entity).getFirstObservation(entity).orElse(null), entity::getFirstObservation);
         return assembleDataValue((TextDataEntity) firstObs, entity, query);
     }
 
     @Override
     public TextValue getLastValue(DatasetEntity entity, DbQuery query) {
-        DataEntity<?> lastObs = this.getConnector(entity).getLastObservation(entity).orElse(null);
+        DataEntity<?> lastObs = circuitBreaker.execute(entity,
+                () -> getConnector(entity).getLastObservation(entity).orElse(null), entity::getLastObservation);
         return assembleDataValue((TextDataEntity) lastObs, entity, query);
     }
 
     @Override
     protected Data<TextValue> assembleDataValues(DatasetEntity seriesEntity, DbQuery query) {
         Data<TextValue> result = new Data<>();
-        this.getConnector(seriesEntity).getObservations(seriesEntity, query).stream()
+        circuitBreaker.execute(seriesEntity, () -> getConnector(seriesEntity).getObservations(seriesEntity, query))
+                .stream()
                 .map(entry -> assembleDataValue((TextDataEntity) entry, seriesEntity, query))
                 .forEach(entry -> result.addNewValue(entry));
         return result;
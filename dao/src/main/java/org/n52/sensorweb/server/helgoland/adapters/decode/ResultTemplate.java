@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.decode;
+
+import static org.n52.sensorweb.server.helgoland.adapters.decode.XmlStreams.nextChild;
+import static org.n52.sensorweb.server.helgoland.adapters.decode.XmlStreams.readText;
+import static org.n52.sensorweb.server.helgoland.adapters.decode.XmlStreams.skipElement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.http.HttpResponse;
+import org.n52.series.db.beans.DataEntity;
+import org.n52.series.db.beans.dataset.ValueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The structure and text encoding of the result values of a dataset as returned by a SOS GetResultTemplate request.
+ * Supports flat records of a phenomenon time ({@code swe:Time} or {@code swe:TimeRange}), an optional result time
+ * and a single simple value, which covers the templates the 52°North SOS creates for measurement, count and text
+ * observations. The template decodes the compact text block of a GetResult response into data entities.
+ */
+public final class ResultTemplate {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultTemplate.class);
+
+    private static final String NS_SOS = "http://www.opengis.net/sos/2.0";
+
+    private static final String NS_SWE = "http://www.opengis.net/swe/2.0";
+
+    private static final QName GET_RESULT_TEMPLATE_RESPONSE = new QName(NS_SOS, "GetResultTemplateResponse");
+
+    private static final QName RESULT_STRUCTURE = new QName(NS_SOS, "resultStructure");
+
+    private static final QName RESULT_ENCODING = new QName(NS_SOS, "resultEncoding");
+
+    private static final QName GET_RESULT_RESPONSE = new QName(NS_SOS, "GetResultResponse");
+
+    private static final QName RESULT_VALUES = new QName(NS_SOS, "resultValues");
+
+    private static final QName DATA_RECORD = new QName(NS_SWE, "DataRecord");
+
+    private static final QName FIELD = new QName(NS_SWE, "field");
+
+    private static final QName TEXT_ENCODING = new QName(NS_SWE, "TextEncoding");
+
+    private static final QName TIME = new QName(NS_SWE, "Time");
+
+    private static final QName TIME_RANGE = new QName(NS_SWE, "TimeRange");
+
+    private static final List<QName> VALUES = Collections.unmodifiableList(Arrays.asList(new QName(NS_SWE, "Quantity"),
+            new QName(NS_SWE, "Count"), new QName(NS_SWE, "Text"), new QName(NS_SWE, "Category"),
+            new QName(NS_SWE, "Boolean")));
+
+    private static final String PHENOMENON_TIME = "phenomenontime";
+
+    private static final String RESULT_TIME = "resulttime";
+
+    private final int tokens;
+
+    private final int phenomenonTimeIndex;
+
+    private final boolean phenomenonTimeRange;
+
+    private final int resultTimeIndex;
+
+    private final int valueIndex;
+
+    private String tokenSeparator;
+
+    private String blockSeparator;
+
+    private char decimalSeparator = '.';
+
+    private ResultTemplate(int tokens, int phenomenonTimeIndex, boolean phenomenonTimeRange, int resultTimeIndex,
+            int valueIndex) {
+        this.tokens = tokens;
+        this.phenomenonTimeIndex = phenomenonTimeIndex;
+        this.phenomenonTimeRange = phenomenonTimeRange;
+        this.resultTimeIndex = resultTimeIndex;
+        this.valueIndex = valueIndex;
+    }
+
+    /**
+     * Decodes a GetResultTemplate response and closes its content.
+     *
+     * @param response the GetResultTemplate response
+     * @return the template or an empty optional if the response is not a supported template
+     * @throws IOException if the response can not be read
+     */
+    public static Optional<ResultTemplate> decode(HttpResponse response) throws IOException {
+        try {
+            XMLStreamReader reader = XmlStreams.createReader(response.getEntity());
+            try {
+                return Optional.of(readTemplate(reader));
+            } finally {
+                reader.close();
+            }
+        } catch (UnsupportedContentException ex) {
+            LOGGER.debug("Result template is not supported: {}", ex.getMessage());
+        } catch (XMLStreamException ex) {
+            LOGGER.debug("Could not read result template", ex);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Decodes a GetResult response and closes its content.
+     *
+     * @param response  the GetResult response
+     * @param valueType the value type of the dataset
+     * @return the data entities or an empty optional if the response does not match this template
+     * @throws IOException if the response can not be read
+     */
+    public Optional<List<DataEntity<?>>> decodeResult(HttpResponse response, ValueType valueType)
+            throws IOException {
+        try {
+            XMLStreamReader reader = XmlStreams.createReader(response.getEntity());
+            try {
+                if (!nextChild(reader) || !GET_RESULT_RESPONSE.equals(reader.getName())) {
+                    throw new UnsupportedContentException("no result response");
+                }
+                String values = nextChild(reader) && RESULT_VALUES.equals(reader.getName()) ? readText(reader) : "";
+                return Optional.of(parse(values, valueType));
+            } finally {
+                reader.close();
+            }
+        } catch (UnsupportedContentException ex) {
+            LOGGER.debug("Result values can not be decoded: {}", ex.getMessage());
+        } catch (XMLStreamException ex) {
+            LOGGER.debug("Could not read result values", ex);
+        }
+        return Optional.empty();
+    }
+
+    List<DataEntity<?>> parse(String values, ValueType valueType) throws UnsupportedContentException {
+        List<DataEntity<?>> data = new ArrayList<>();
+        String[] block = new String[tokens];
+        int position = 0;
+        boolean first = true;
+        while (position < values.length()) {
+            int end = values.indexOf(blockSeparator, position);
+            if (end < 0) {
+                end = values.length();
+            }
+            int count = split(values, position, end, block);
+            position = end + blockSeparator.length();
+            if (count == 0) {
+                continue;
+            }
+            if (count != tokens) {
+                // some servers prefix the values with the number of blocks
+                if (first && count == 1 && isBlockCount(block[0])) {
+                    first = false;
+                    continue;
+                }
+                throw new UnsupportedContentException("block with " + count + " instead of " + tokens + " tokens");
+            }
+            first = false;
+            data.add(createDataEntity(block, valueType));
+        }
+        return data;
+    }
+
+    private int split(String values, int start, int end, String[] block) {
+        int count = 0;
+        int position = start;
+        while (true) {
+            int next = values.indexOf(tokenSeparator, position);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            if (count < block.length) {
+                block[count] = values.substring(position, next).trim();
+            }
+            count++;
+            if (next == end) {
+                // blank blocks, e.g. after a trailing block separator
+                return count == 1 && block[0].isEmpty() ? 0 : count;
+            }
+            position = next + tokenSeparator.length();
+        }
+    }
+
+    private DataEntity<?> createDataEntity(String[] block, ValueType valueType) throws UnsupportedContentException {
+        Date phenomenonTimeStart = StreamingObservationDecoder.parseTime(block[phenomenonTimeIndex]);
+        Date phenomenonTimeEnd = phenomenonTimeRange
+                ? StreamingObservationDecoder.parseTime(block[phenomenonTimeIndex + 1])
+                : phenomenonTimeStart;
+        Date resultTime = resultTimeIndex >= 0 ? StreamingObservationDecoder.parseTime(block[resultTimeIndex]) : null;
+        String value = block[valueIndex];
+        if (decimalSeparator != '.' && !ValueType.text.equals(valueType)) {
+            value = value.replace(decimalSeparator, '.');
+        }
+        return StreamingObservationDecoder.createDataEntity(valueType, value, phenomenonTimeStart,
+                phenomenonTimeEnd, resultTime);
+    }
+
+    private static boolean isBlockCount(String token) {
+        return !token.isEmpty() && token.chars().allMatch(Character::isDigit);
+    }
+
+    private static ResultTemplate readTemplate(XMLStreamReader reader)
+            throws XMLStreamException, UnsupportedContentException {
+        if (!nextChild(reader) || !GET_RESULT_TEMPLATE_RESPONSE.equals(reader.getName())) {
+            throw new UnsupportedContentException("no result template response");
+        }
+        ResultTemplate template = null;
+        String tokenSeparator = null;
+        String blockSeparator = null;
+        String decimalSeparator = null;
+        while (nextChild(reader)) {
+            if (RESULT_STRUCTURE.equals(reader.getName())) {
+                if (!nextChild(reader) || !DATA_RECORD.equals(reader.getName())) {
+                    throw new UnsupportedContentException("result structure is no data record");
+                }
+                template = readRecord(reader);
+                skipElement(reader);
+            } else if (RESULT_ENCODING.equals(reader.getName())) {
+                if (!nextChild(reader) || !TEXT_ENCODING.equals(reader.getName())) {
+                    throw new UnsupportedContentException("result encoding is no text encoding");
+                }
+                tokenSeparator = reader.getAttributeValue(null, "tokenSeparator");
+                blockSeparator = reader.getAttributeValue(null, "blockSeparator");
+                decimalSeparator = reader.getAttributeValue(null, "decimalSeparator");
+                skipElement(reader);
+                skipElement(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        if (template == null || isEmpty(tokenSeparator) || isEmpty(blockSeparator)
+                || tokenSeparator.equals(blockSeparator)) {
+            throw new UnsupportedContentException("incomplete result template");
+        }
+        template.tokenSeparator = tokenSeparator;
+        template.blockSeparator = blockSeparator;
+        if (!isEmpty(decimalSeparator)) {
+            if (decimalSeparator.length() != 1) {
+                throw new UnsupportedContentException("decimal separator " + decimalSeparator);
+            }
+            template.decimalSeparator = decimalSeparator.charAt(0);
+        }
+        return template;
+    }
+
+    private static ResultTemplate readRecord(XMLStreamReader reader)
+            throws XMLStreamException, UnsupportedContentException {
+        int tokens = 0;
+        int phenomenonTimeIndex = -1;
+        boolean phenomenonTimeRange = false;
+        int resultTimeIndex = -1;
+        int valueIndex = -1;
+        while (nextChild(reader)) {
+            if (!FIELD.equals(reader.getName())) {
+                throw new UnsupportedContentException(reader.getName().toString());
+            }
+            String name = reader.getAttributeValue(null, "name");
+            if (!nextChild(reader)) {
+                throw new UnsupportedContentException("empty field " + name);
+            }
+            QName component = reader.getName();
+            String definition = reader.getAttributeValue(null, "definition");
+            if (TIME_RANGE.equals(component) && phenomenonTimeIndex < 0) {
+                phenomenonTimeIndex = tokens;
+                phenomenonTimeRange = true;
+                tokens += 2;
+            } else if (TIME.equals(component) && isTime(RESULT_TIME, name, definition) && resultTimeIndex < 0) {
+                resultTimeIndex = tokens++;
+            } else if (TIME.equals(component) && phenomenonTimeIndex < 0
+                    && !isTime(RESULT_TIME, name, definition)) {
+                phenomenonTimeIndex = tokens++;
+            } else if (VALUES.contains(component) && valueIndex < 0) {
+                valueIndex = tokens++;
+            } else {
+                throw new UnsupportedContentException("field " + name + " of type " + component);
+            }
+            // end of the component and of the field
+            skipElement(reader);
+            skipElement(reader);
+        }
+        if (phenomenonTimeIndex < 0 || valueIndex < 0) {
+            throw new UnsupportedContentException("record without phenomenon time or value");
+        }
+        return new ResultTemplate(tokens, phenomenonTimeIndex, phenomenonTimeRange, resultTimeIndex, valueIndex);
+    }
+
+    private static boolean isTime(String time, String name, String definition) {
+        return (name != null && name.toLowerCase(Locale.ROOT).endsWith(time))
+                || (definition != null && definition.toLowerCase(Locale.ROOT).endsWith(time));
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+}
@@ -31,12 +31,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import net.opengis.gml.x32.FeaturePropertyType;
 import net.opengis.gml.x32.ReferenceType;
 import net.opengis.sampling.x20.SFSamplingFeatureDocument;
 import net.opengis.sampling.x20.SFSamplingFeatureType;
 import net.opengis.samplingSpatial.x20.ShapeDocument;
+import net.opengis.samplingSpatial.x20.ShapeType;
 
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlObject;
@@ -70,6 +72,28 @@ public class SamplingFeatureDecoder extends AbstractGmlDecoderv321<XmlObject, Ab
                                                   SFSamplingFeatureDocument.class,
                                                   SFSamplingFeatureType.class);
 
+    /**
+     * Modes to create the XML description of decoded features.
+     */
+    public enum XmlDescription {
+        /** serialize the description while decoding */
+        EAGER,
+        /** serialize the description on first access, the decoded document is retained until then */
+        LAZY,
+        /** do not create a description */
+        NONE
+    }
+
+    private XmlDescription xmlDescription = XmlDescription.EAGER;
+
+    public XmlDescription getXmlDescription() {
+        return xmlDescription;
+    }
+
+    public void setXmlDescription(XmlDescription xmlDescription) {
+        this.xmlDescription = xmlDescription;
+    }
+
     @Override
     public AbstractFeature decode(XmlObject element) throws DecodingException {
         return parseSamplingFeature(((SFSamplingFeatureDocument) element).getSFSamplingFeature());
@@ -81,11 +105,19 @@ public class SamplingFeatureDecoder extends AbstractGmlDecoderv321<XmlObject, Ab
     }
 
     private AbstractFeature parseSamplingFeature(SFSamplingFeatureType sfSamplingFeature) throws DecodingException {
-        final SamplingFeature sosFeat = new SamplingFeature(null, sfSamplingFeature.getId());
+        final SamplingFeature sosFeat;
+        if (xmlDescription == XmlDescription.LAZY) {
+            sosFeat = new LazyXmlSamplingFeature(sfSamplingFeature.getId(),
+                                                 () -> getXmlDescription(sfSamplingFeature));
+        } else {
+            sosFeat = new SamplingFeature(null, sfSamplingFeature.getId());
+        }
         parseAbstractFeatureType(sfSamplingFeature, sosFeat);
         sosFeat.setFeatureType(getFeatureType(sfSamplingFeature.getType()));
         sosFeat.setSampledFeatures(getSampledFeatures(sfSamplingFeature.getSampledFeatureArray()));
-        sosFeat.setXml(getXmlDescription(sfSamplingFeature));
+        if (xmlDescription == XmlDescription.EAGER) {
+            sosFeat.setXml(getXmlDescription(sfSamplingFeature));
+        }
         sosFeat.setGeometry(getGeometry(sfSamplingFeature));
         checkTypeAndGeometry(sosFeat);
         sosFeat.setGmlId(sfSamplingFeature.getId());
@@ -126,8 +158,12 @@ public class SamplingFeatureDecoder extends AbstractGmlDecoderv321<XmlObject, Ab
                 }
             } else {
                 XmlObject abstractFeature = null;
+                XmlObject[] children = sampledFeature.selectPath("./*");
                 if (sampledFeature.getAbstractFeature() != null) {
                     abstractFeature = sampledFeature.getAbstractFeature();
+                } else if (children.length == 1) {
+                    // typed child of the decoded document
+                    abstractFeature = children[0];
                 } else if (sampledFeature.getDomNode().hasChildNodes()) {
                     try {
                         abstractFeature = XmlObject.Factory.parse(
@@ -182,6 +218,13 @@ public class SamplingFeatureDecoder extends AbstractGmlDecoderv321<XmlObject, Ab
     private Geometry getGeometry(SFSamplingFeatureType sfSamplingFeature) throws DecodingException {
         XmlObject[] shapes = sfSamplingFeature.selectChildren(SfConstants.NS_SAMS, "shape");
         if (shapes.length == 1) {
+            if (shapes[0] instanceof ShapeType) {
+                // decode the typed shape in place
+                Object decodedObject = decodeXmlElement(((ShapeType) shapes[0]).getAbstractGeometry());
+                if (decodedObject instanceof Geometry) {
+                    return (Geometry) decodedObject;
+                }
+            }
             try {
                 ShapeDocument shapeDoc = (ShapeDocument) XmlObject.Factory.parse(shapes[0].getDomNode());
                 Object decodedObject = decodeXmlElement(shapeDoc.getShape().getAbstractGeometry());
@@ -198,4 +241,34 @@ public class SamplingFeatureDecoder extends AbstractGmlDecoderv321<XmlObject, Ab
                                     "The requested geometry type of featureOfInterest is of wrong length!");
     }
 
+    /**
+     * Sampling feature serializing its XML description on first access.
+     */
+    private static final class LazyXmlSamplingFeature extends SamplingFeature {
+
+        private Supplier<String> xml;
+
+        LazyXmlSamplingFeature(String gmlId, Supplier<String> xml) {
+            super(null, gmlId);
+            this.xml = xml;
+        }
+
+        @Override
+        public synchronized String getXml() {
+            if (xml != null) {
+                String description = xml.get();
+                xml = null;
+                if (super.getXml() == null) {
+                    super.setXml(description);
+                }
+            }
+            return super.getXml();
+        }
+
+        @Override
+        public synchronized boolean isSetXml() {
+            return xml != null || super.isSetXml();
+        }
+    }
+
 }
@@ -0,0 +1,512 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.decode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.HttpResponse;
+import org.joda.time.DateTime;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.n52.series.db.beans.DataEntity;
+import org.n52.series.db.beans.dataset.ValueType;
+import org.n52.shetland.ogc.gml.AbstractFeature;
+import org.n52.shetland.ogc.gml.CodeType;
+import org.n52.shetland.ogc.gml.CodeWithAuthority;
+import org.n52.shetland.ogc.gml.ReferenceType;
+import org.n52.shetland.ogc.gml.time.TimePeriod;
+import org.n52.shetland.ogc.om.features.FeatureCollection;
+import org.n52.shetland.ogc.om.features.samplingFeatures.SamplingFeature;
+import org.n52.shetland.ogc.sos.Sos2Constants;
+import org.n52.shetland.ogc.sos.SosConstants;
+import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityResponse;
+import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityResponse.DataAvailability;
+import org.n52.shetland.ogc.sos.response.GetFeatureOfInterestResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Decodes responses of the JSON binding of the 52°North SOS with a streaming parser. Observations are decoded
+ * directly into data entities, features and data availabilities into the same response objects the XML decoders
+ * create. Anything the decoder does not understand (e.g. exception reports, observation parameters or complex
+ * results) is rejected, so the request can be repeated with the XML binding.
+ */
+public final class SosJsonDecoder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SosJsonDecoder.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final Pattern SRID = Pattern.compile("(\\d+)$");
+
+    private static final int DEFAULT_SRID = 4326;
+
+    private static final String VALUE = "value";
+
+    private SosJsonDecoder() {
+    }
+
+    /**
+     * Decodes the observations of a GetObservation response and closes its content.
+     *
+     * @param response  the GetObservation response
+     * @param valueType the value type of the dataset
+     * @return the data entities or an empty optional if the response is not supported
+     */
+    public static Optional<List<DataEntity<?>>> decodeObservations(HttpResponse response, ValueType valueType) {
+        return decode(response, "observations", parser -> {
+            expect(parser, JsonToken.START_ARRAY);
+            List<DataEntity<?>> data = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                data.add(readObservation(parser, valueType));
+            }
+            return data;
+        });
+    }
+
+    /**
+     * Decodes a GetFeatureOfInterest response and closes its content.
+     *
+     * @param response the GetFeatureOfInterest response
+     * @return the response or an empty optional if the response is not supported
+     */
+    public static Optional<GetFeatureOfInterestResponse> decodeFeatureOfInterest(HttpResponse response) {
+        return decode(response, "featureOfInterest", parser -> {
+            List<AbstractFeature> features = new ArrayList<>();
+            if (parser.currentToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    features.add(readFeature(parser));
+                }
+            } else {
+                expect(parser, JsonToken.START_OBJECT);
+                features.add(readFeature(parser));
+            }
+            GetFeatureOfInterestResponse foiResponse =
+                    new GetFeatureOfInterestResponse(SosConstants.SOS, Sos2Constants.SERVICEVERSION);
+            if (features.size() == 1) {
+                foiResponse.setAbstractFeature(features.get(0));
+            } else {
+                FeatureCollection collection = new FeatureCollection();
+                features.forEach(collection::addMember);
+                foiResponse.setAbstractFeature(collection);
+            }
+            return foiResponse;
+        });
+    }
+
+    /**
+     * Decodes a GetDataAvailability response and closes its content.
+     *
+     * @param response the GetDataAvailability response
+     * @return the response or an empty optional if the response is not supported
+     */
+    public static Optional<GetDataAvailabilityResponse> decodeDataAvailability(HttpResponse response) {
+        return decode(response, "dataAvailability", parser -> {
+            expect(parser, JsonToken.START_ARRAY);
+            GetDataAvailabilityResponse gdaResponse =
+                    new GetDataAvailabilityResponse(SosConstants.SOS, Sos2Constants.SERVICEVERSION);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                gdaResponse.addDataAvailability(readDataAvailability(parser));
+            }
+            return gdaResponse;
+        });
+    }
+
+    private static <T> Optional<T> decode(HttpResponse response, String member, Reader<T> reader) {
+        try (InputStream content = response.getEntity().getContent();
+                JsonParser parser = JSON_FACTORY.createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new UnsupportedContentException("no JSON object");
+            }
+            T result = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (member.equals(name)) {
+                    result = reader.read(parser);
+                } else if ("exceptions".equals(name)) {
+                    throw new UnsupportedContentException("exception report");
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (result == null) {
+                throw new UnsupportedContentException("missing " + member);
+            }
+            return Optional.of(result);
+        } catch (UnsupportedContentException ex) {
+            LOGGER.debug("JSON response can not be decoded: {}", ex.getMessage());
+        } catch (IOException ex) {
+            LOGGER.debug("Could not read JSON response", ex);
+        }
+        return Optional.empty();
+    }
+
+    private static DataEntity<?> readObservation(JsonParser parser, ValueType valueType)
+            throws IOException, UnsupportedContentException {
+        Date[] phenomenonTime = null;
+        Date[] resultTime = null;
+        Date[] validTime = null;
+        String value = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name) {
+                case "phenomenonTime":
+                    phenomenonTime = readTime(parser);
+                    break;
+                case "resultTime":
+                    resultTime = readTime(parser);
+                    break;
+                case "validTime":
+                    validTime = readTime(parser);
+                    break;
+                case "result":
+                    value = readResult(parser);
+                    break;
+                case "parameter":
+                    throw new UnsupportedContentException("observation parameter");
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (phenomenonTime == null) {
+            throw new UnsupportedContentException("observation without phenomenon time");
+        }
+        DataEntity<?> entity = StreamingObservationDecoder.createDataEntity(valueType, value, phenomenonTime[0],
+                phenomenonTime[1], resultTime != null ? resultTime[0] : null);
+        if (validTime != null) {
+            entity.setValidTimeStart(validTime[0]);
+            entity.setValidTimeEnd(validTime[1]);
+        }
+        return entity;
+    }
+
+    private static String readResult(JsonParser parser) throws IOException, UnsupportedContentException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            return readScalar(parser);
+        }
+        String value = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (VALUE.equals(name)) {
+                value = readScalar(parser);
+            } else if ("uom".equals(name)) {
+                parser.skipChildren();
+            } else {
+                throw new UnsupportedContentException("complex result " + name);
+            }
+        }
+        return value;
+    }
+
+    private static String readScalar(JsonParser parser) throws IOException, UnsupportedContentException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        } else if (token != null && token.isScalarValue()) {
+            return parser.getText();
+        }
+        throw new UnsupportedContentException("no scalar value");
+    }
+
+    /**
+     * Reads a time instant (string) or period (array of two strings).
+     */
+    private static Date[] readTime(JsonParser parser) throws IOException, UnsupportedContentException {
+        if (parser.currentToken() == JsonToken.VALUE_STRING) {
+            Date instant = StreamingObservationDecoder.parseTime(parser.getText());
+            return new Date[] { instant, instant };
+        }
+        expect(parser, JsonToken.START_ARRAY);
+        Date start = parser.nextToken() == JsonToken.VALUE_STRING
+                ? StreamingObservationDecoder.parseTime(parser.getText())
+                : null;
+        Date end = parser.nextToken() == JsonToken.VALUE_STRING
+                ? StreamingObservationDecoder.parseTime(parser.getText())
+                : null;
+        if (start == null || end == null || parser.nextToken() != JsonToken.END_ARRAY) {
+            throw new UnsupportedContentException("time period");
+        }
+        return new Date[] { start, end };
+    }
+
+    private static AbstractFeature readFeature(JsonParser parser) throws IOException, UnsupportedContentException {
+        String identifier = null;
+        String name = null;
+        String description = null;
+        Geometry geometry = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "identifier":
+                    identifier = readCode(parser);
+                    break;
+                case "name":
+                    name = readCode(parser);
+                    break;
+                case "description":
+                    description = readScalar(parser);
+                    break;
+                case "geometry":
+                    geometry = readGeometry(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (identifier == null) {
+            throw new UnsupportedContentException("feature without identifier");
+        }
+        SamplingFeature feature = new SamplingFeature(new CodeWithAuthority(identifier));
+        if (name != null) {
+            feature.addName(new CodeType(name));
+        }
+        feature.setDescription(description);
+        feature.setGeometry(geometry);
+        return feature;
+    }
+
+    /**
+     * Reads a code as plain string, as object with a value or the first of an array of them.
+     */
+    private static String readCode(JsonParser parser) throws IOException, UnsupportedContentException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_ARRAY) {
+            String first = null;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                String code = readCode(parser);
+                first = first != null ? first : code;
+            }
+            return first;
+        } else if (token == JsonToken.START_OBJECT) {
+            String value = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (VALUE.equals(name)) {
+                    value = readScalar(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return value;
+        }
+        return readScalar(parser);
+    }
+
+    private static Geometry readGeometry(JsonParser parser) throws IOException, UnsupportedContentException {
+        expect(parser, JsonToken.START_OBJECT);
+        String type = null;
+        Object coordinates = null;
+        int srid = DEFAULT_SRID;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("type".equals(name)) {
+                type = readScalar(parser);
+            } else if ("coordinates".equals(name)) {
+                coordinates = readCoordinates(parser);
+            } else if ("crs".equals(name)) {
+                srid = readSrid(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        GeometryFactory factory = new GeometryFactory(new PrecisionModel(), srid);
+        try {
+            if ("Point".equals(type)) {
+                return factory.createPoint(toCoordinate(coordinates));
+            } else if ("LineString".equals(type)) {
+                return factory.createLineString(toCoordinates(coordinates));
+            } else if ("Polygon".equals(type)) {
+                List<?> rings = (List<?>) coordinates;
+                LinearRing[] holes = new LinearRing[rings.size() - 1];
+                for (int i = 1; i < rings.size(); i++) {
+                    holes[i - 1] = factory.createLinearRing(toCoordinates(rings.get(i)));
+                }
+                return factory.createPolygon(factory.createLinearRing(toCoordinates(rings.get(0))), holes);
+            }
+        } catch (ClassCastException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new UnsupportedContentException("invalid " + type + " coordinates");
+        }
+        throw new UnsupportedContentException("geometry type " + type);
+    }
+
+    /**
+     * Reads nested coordinate arrays into nested lists of doubles.
+     */
+    private static Object readCoordinates(JsonParser parser) throws IOException, UnsupportedContentException {
+        if (parser.currentToken() == JsonToken.START_ARRAY) {
+            List<Object> values = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                values.add(readCoordinates(parser));
+            }
+            return values;
+        } else if (parser.currentToken().isNumeric()) {
+            return parser.getDoubleValue();
+        }
+        throw new UnsupportedContentException("coordinate " + parser.getText());
+    }
+
+    private static Coordinate toCoordinate(Object value) {
+        List<?> ordinates = (List<?>) value;
+        Coordinate coordinate = new Coordinate((Double) ordinates.get(0), (Double) ordinates.get(1));
+        if (ordinates.size() > 2) {
+            coordinate.setZ((Double) ordinates.get(2));
+        }
+        return coordinate;
+    }
+
+    private static Coordinate[] toCoordinates(Object value) {
+        List<?> points = (List<?>) value;
+        Coordinate[] coordinates = new Coordinate[points.size()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = toCoordinate(points.get(i));
+        }
+        return coordinates;
+    }
+
+    /**
+     * Reads the SRID of a named CRS like <code>{"type":"name","properties":{"name":"EPSG:4326"}}</code>.
+     */
+    private static int readSrid(JsonParser parser) throws IOException {
+        int srid = DEFAULT_SRID;
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return srid;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("properties".equals(name) && parser.currentToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String property = parser.getCurrentName();
+                    parser.nextToken();
+                    Matcher matcher = SRID.matcher(parser.getText());
+                    if ("name".equals(property) && matcher.find()) {
+                        srid = Integer.parseInt(matcher.group(1));
+                    }
+                    parser.skipChildren();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return srid;
+    }
+
+    private static DataAvailability readDataAvailability(JsonParser parser)
+            throws IOException, UnsupportedContentException {
+        ReferenceType procedure = null;
+        ReferenceType observedProperty = null;
+        ReferenceType featureOfInterest = null;
+        ReferenceType offering = null;
+        Date[] phenomenonTime = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name) {
+                case "procedure":
+                    procedure = readReference(parser);
+                    break;
+                case "observedProperty":
+                    observedProperty = readReference(parser);
+                    break;
+                case "featureOfInterest":
+                    featureOfInterest = readReference(parser);
+                    break;
+                case "offering":
+                    offering = readReference(parser);
+                    break;
+                case "phenomenonTime":
+                    phenomenonTime = readTime(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (procedure == null || observedProperty == null || featureOfInterest == null || phenomenonTime == null) {
+            throw new UnsupportedContentException("incomplete data availability");
+        }
+        return new DataAvailability(procedure, observedProperty, featureOfInterest, offering,
+                new TimePeriod(new DateTime(phenomenonTime[0]), new DateTime(phenomenonTime[1])));
+    }
+
+    /**
+     * Reads a reference as plain href or as object with href and title.
+     */
+    private static ReferenceType readReference(JsonParser parser) throws IOException, UnsupportedContentException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            String href = readScalar(parser);
+            return href != null ? new ReferenceType(href, href) : null;
+        }
+        String href = null;
+        String title = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("href".equals(name)) {
+                href = readScalar(parser);
+            } else if ("title".equals(name)) {
+                title = readScalar(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return href != null ? new ReferenceType(href, title != null ? title : href) : null;
+    }
+
+    private static void expect(JsonParser parser, JsonToken token) throws UnsupportedContentException {
+        if (parser.currentToken() != token) {
+            throw new UnsupportedContentException("expected " + token + " instead of " + parser.currentToken());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Reader<T> {
+        T read(JsonParser parser) throws IOException, UnsupportedContentException;
+    }
+
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.decode;
+
+import static org.n52.sensorweb.server.helgoland.adapters.decode.XmlStreams.nextChild;
+import static org.n52.sensorweb.server.helgoland.adapters.decode.XmlStreams.readText;
+import static org.n52.sensorweb.server.helgoland.adapters.decode.XmlStreams.skipElement;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.n52.sensorweb.server.helgoland.adapters.web.ExiDecodingEntity;
+import org.n52.series.db.beans.CountDataEntity;
+import org.n52.series.db.beans.DataEntity;
+import org.n52.series.db.beans.QuantityDataEntity;
+import org.n52.series.db.beans.TextDataEntity;
+import org.n52.series.db.beans.dataset.ValueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes SOS 2.0 GetObservation responses (POX or SOAP) containing OM 2.0 observations with simple results
+ * (measurements, counts, text) directly into data entities while the response is read, without building the XML
+ * document and the intermediate observation objects. Responses containing anything else (e.g. exception reports,
+ * observation parameters like sampling geometries or complex results) are rejected, so they can be decoded by the
+ * generic decoders, see {@link #decode(HttpResponse, Function)}.
+ */
+public class StreamingObservationDecoder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingObservationDecoder.class);
+
+    private static final String NS_SOS = "http://www.opengis.net/sos/2.0";
+
+    private static final String NS_OM = "http://www.opengis.net/om/2.0";
+
+    private static final String NS_GML = "http://www.opengis.net/gml/3.2";
+
+    private static final String NS_XLINK = "http://www.w3.org/1999/xlink";
+
+    private static final String NS_SOAP_12 = "http://www.w3.org/2003/05/soap-envelope";
+
+    private static final QName SOAP_ENVELOPE = new QName(NS_SOAP_12, "Envelope");
+
+    private static final QName SOAP_HEADER = new QName(NS_SOAP_12, "Header");
+
+    private static final QName SOAP_BODY = new QName(NS_SOAP_12, "Body");
+
+    private static final QName GET_OBSERVATION_RESPONSE = new QName(NS_SOS, "GetObservationResponse");
+
+    private static final QName OBSERVATION_DATA = new QName(NS_SOS, "observationData");
+
+    private static final QName OM_OBSERVATION = new QName(NS_OM, "OM_Observation");
+
+    private static final QName PHENOMENON_TIME = new QName(NS_OM, "phenomenonTime");
+
+    private static final QName RESULT_TIME = new QName(NS_OM, "resultTime");
+
+    private static final QName VALID_TIME = new QName(NS_OM, "validTime");
+
+    private static final QName RESULT = new QName(NS_OM, "result");
+
+    private static final QName TIME_INSTANT = new QName(NS_GML, "TimeInstant");
+
+    private static final QName TIME_PERIOD = new QName(NS_GML, "TimePeriod");
+
+    private static final QName TIME_POSITION = new QName(NS_GML, "timePosition");
+
+    private static final QName BEGIN_POSITION = new QName(NS_GML, "beginPosition");
+
+    private static final QName END_POSITION = new QName(NS_GML, "endPosition");
+
+    private static final QName[] SKIPPED = {
+        new QName(NS_GML, "identifier"),
+        new QName(NS_GML, "description"),
+        new QName(NS_GML, "name"),
+        new QName(NS_OM, "type"),
+        new QName(NS_OM, "procedure"),
+        new QName(NS_OM, "observedProperty"),
+        new QName(NS_OM, "featureOfInterest"),
+        new QName(NS_OM, "resultQuality")
+    };
+
+    private static final DateTimeFormatter TIME_PARSER = ISODateTimeFormat.dateTimeParser().withOffsetParsed();
+
+    private final ValueType valueType;
+
+    public StreamingObservationDecoder(ValueType valueType) {
+        this.valueType = valueType;
+    }
+
+    /**
+     * @param valueType the value type of a dataset
+     * @return if observations of the value type can be decoded
+     */
+    public static boolean supports(ValueType valueType) {
+        return ValueType.quantity.equals(valueType) || ValueType.count.equals(valueType)
+                || ValueType.text.equals(valueType);
+    }
+
+    /**
+     * Decodes the response and closes its content.
+     *
+     * @param response the GetObservation response
+     * @return the data entities or an empty optional if the response is not supported
+     */
+    public Optional<List<DataEntity<?>>> decode(HttpResponse response) {
+        try {
+            XMLStreamReader reader = XmlStreams.createReader(response.getEntity());
+            try {
+                return Optional.of(readDocument(reader));
+            } finally {
+                reader.close();
+            }
+        } catch (UnsupportedContentException ex) {
+            LOGGER.debug("Response can not be decoded while streaming: {}", ex.getMessage());
+        } catch (IOException | XMLStreamException ex) {
+            LOGGER.debug("Could not read response while streaming", ex);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Decodes the response like {@link #decode(HttpResponse)}, but passes a response that can not be decoded while
+     * streaming to the fallback. The content is buffered before, so the fallback reads the same response instead of
+     * requesting it again.
+     *
+     * @param response the GetObservation response
+     * @param fallback the generic decoding of the response
+     * @return the data entities
+     * @throws IOException if the response can not be read
+     */
+    public List<DataEntity<?>> decode(HttpResponse response, Function<HttpResponse, List<DataEntity<?>>> fallback)
+            throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity instanceof ExiDecodingEntity) {
+            response.setEntity(((ExiDecodingEntity) entity).buffer());
+        } else if (entity != null && !entity.isRepeatable()) {
+            response.setEntity(new BufferedHttpEntity(entity));
+        }
+        Optional<List<DataEntity<?>>> data = decode(response);
+        if (data.isPresent()) {
+            return data.get();
+        }
+        return fallback.apply(response);
+    }
+
+    private List<DataEntity<?>> readDocument(XMLStreamReader reader)
+            throws XMLStreamException, UnsupportedContentException {
+        if (!nextChild(reader)) {
+            throw new UnsupportedContentException("empty document");
+        }
+        if (SOAP_ENVELOPE.equals(reader.getName())) {
+            while (nextChild(reader) && SOAP_HEADER.equals(reader.getName())) {
+                skipElement(reader);
+            }
+            if (!SOAP_BODY.equals(reader.getName()) || !nextChild(reader)) {
+                throw new UnsupportedContentException("no SOAP body");
+            }
+        }
+        if (!GET_OBSERVATION_RESPONSE.equals(reader.getName())) {
+            throw new UnsupportedContentException(reader.getName().toString());
+        }
+        List<DataEntity<?>> data = new ArrayList<>();
+        Map<String, TimeValue> times = new HashMap<>();
+        while (nextChild(reader)) {
+            if (!OBSERVATION_DATA.equals(reader.getName())) {
+                throw new UnsupportedContentException(reader.getName().toString());
+            }
+            while (nextChild(reader)) {
+                if (!OM_OBSERVATION.equals(reader.getName())) {
+                    throw new UnsupportedContentException(reader.getName().toString());
+                }
+                data.add(readObservation(reader, times));
+            }
+        }
+        return data;
+    }
+
+    private DataEntity<?> readObservation(XMLStreamReader reader, Map<String, TimeValue> times)
+            throws XMLStreamException, UnsupportedContentException {
+        TimeValue phenomenonTime = null;
+        TimeValue resultTime = null;
+        TimeValue validTime = null;
+        String result = null;
+        while (nextChild(reader)) {
+            QName name = reader.getName();
+            if (PHENOMENON_TIME.equals(name)) {
+                phenomenonTime = readTime(reader, times);
+            } else if (RESULT_TIME.equals(name)) {
+                resultTime = readTime(reader, times);
+            } else if (VALID_TIME.equals(name)) {
+                validTime = readTime(reader, times);
+            } else if (RESULT.equals(name)) {
+                if ("true".equals(reader.getAttributeValue(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "nil"))) {
+                    skipElement(reader);
+                } else {
+                    result = readText(reader);
+                }
+            } else if (isSkipped(name)) {
+                skipElement(reader);
+            } else {
+                throw new UnsupportedContentException(name.toString());
+            }
+        }
+        if (phenomenonTime == null) {
+            throw new UnsupportedContentException("observation without phenomenon time");
+        }
+        DataEntity<?> entity = createDataEntity(valueType, result, phenomenonTime.start, phenomenonTime.end,
+                resultTime != null ? resultTime.start : null);
+        if (validTime != null) {
+            entity.setValidTimeStart(validTime.start);
+            entity.setValidTimeEnd(validTime.end);
+        }
+        return entity;
+    }
+
+    /**
+     * Creates a data entity of the value type like {@link
+     * org.n52.sensorweb.server.helgoland.adapters.connector.utils.DataEntityBuilder}, the result time defaults to
+     * the start of the phenomenon time.
+     */
+    static DataEntity<?> createDataEntity(ValueType valueType, String value, Date phenomenonTimeStart,
+            Date phenomenonTimeEnd, Date resultTime) throws UnsupportedContentException {
+        DataEntity<?> entity = createDataEntity(valueType, value);
+        entity.setDeleted(false);
+        entity.setSamplingTimeStart(phenomenonTimeStart);
+        entity.setSamplingTimeEnd(phenomenonTimeEnd);
+        entity.setResultTime(resultTime != null ? resultTime : phenomenonTimeStart);
+        return entity;
+    }
+
+    private static DataEntity<?> createDataEntity(ValueType valueType, String value)
+            throws UnsupportedContentException {
+        boolean hasValue = value != null && !value.isEmpty();
+        try {
+            if (ValueType.quantity.equals(valueType)) {
+                QuantityDataEntity entity = new QuantityDataEntity();
+                if (hasValue) {
+                    entity.setValue(new BigDecimal(value));
+                }
+                return entity;
+            } else if (ValueType.count.equals(valueType)) {
+                CountDataEntity entity = new CountDataEntity();
+                if (hasValue) {
+                    entity.setValue(new BigDecimal(value).intValue());
+                }
+                return entity;
+            } else if (ValueType.text.equals(valueType)) {
+                TextDataEntity entity = new TextDataEntity();
+                entity.setValue(value);
+                return entity;
+            }
+        } catch (NumberFormatException ex) {
+            throw new UnsupportedContentException("non numeric value " + value);
+        }
+        throw new UnsupportedContentException("value type " + valueType);
+    }
+
+    private TimeValue readTime(XMLStreamReader reader, Map<String, TimeValue> times)
+            throws XMLStreamException, UnsupportedContentException {
+        String href = reader.getAttributeValue(NS_XLINK, "href");
+        if (href != null) {
+            skipElement(reader);
+            TimeValue time = times.get(href.startsWith("#") ? href.substring(1) : href);
+            if (time == null) {
+                throw new UnsupportedContentException("unresolvable time reference " + href);
+            }
+            return time;
+        }
+        if (!nextChild(reader)) {
+            throw new UnsupportedContentException("empty time");
+        }
+        String id = reader.getAttributeValue(NS_GML, "id");
+        TimeValue time;
+        if (TIME_INSTANT.equals(reader.getName())) {
+            Date instant = readTimePosition(reader, TIME_POSITION);
+            time = new TimeValue(instant, instant);
+        } else if (TIME_PERIOD.equals(reader.getName())) {
+            time = new TimeValue(readTimePosition(reader, BEGIN_POSITION), readTimePosition(reader, END_POSITION));
+        } else {
+            throw new UnsupportedContentException(reader.getName().toString());
+        }
+        // end of the time element and of the time property
+        if (nextChild(reader) || nextChild(reader)) {
+            throw new UnsupportedContentException(reader.getName().toString());
+        }
+        if (id != null) {
+            times.put(id, time);
+        }
+        return time;
+    }
+
+    private Date readTimePosition(XMLStreamReader reader, QName name)
+            throws XMLStreamException, UnsupportedContentException {
+        if (!nextChild(reader) || !name.equals(reader.getName())) {
+            throw new UnsupportedContentException("missing " + name);
+        }
+        return parseTime(readText(reader));
+    }
+
+    static Date parseTime(String value) throws UnsupportedContentException {
+        try {
+            return TIME_PARSER.parseDateTime(value).toDate();
+        } catch (IllegalArgumentException ex) {
+            throw new UnsupportedContentException("time " + value);
+        }
+    }
+
+    private static boolean isSkipped(QName name) {
+        for (QName skipped : SKIPPED) {
+            if (skipped.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class TimeValue {
+        private final Date start;
+        private final Date end;
+
+        TimeValue(Date start, Date end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+}
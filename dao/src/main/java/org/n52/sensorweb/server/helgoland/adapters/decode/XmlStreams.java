@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.decode;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+import org.apache.http.HttpEntity;
+import org.n52.sensorweb.server.helgoland.adapters.web.ExiDecodingEntity;
+
+/**
+ * Helpers to walk the elements of a document with a {@link XMLStreamReader}.
+ */
+final class XmlStreams {
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private XmlStreams() {
+    }
+
+    /**
+     * Creates a namespace aware, coalescing reader of the content of an entity, that does not resolve DTDs or
+     * external entities and closes the content when it is closed. EXI content is read as decoded events without
+     * serializing it as XML.
+     */
+    static XMLStreamReader createReader(HttpEntity entity) throws IOException, XMLStreamException {
+        if (entity instanceof ExiDecodingEntity) {
+            return ((ExiDecodingEntity) entity).createXMLStreamReader();
+        }
+        InputStream content = entity.getContent();
+        try {
+            return new StreamReaderDelegate(INPUT_FACTORY.createXMLStreamReader(content)) {
+                @Override
+                public void close() throws XMLStreamException {
+                    try {
+                        super.close();
+                    } finally {
+                        try {
+                            content.close();
+                        } catch (IOException ex) {
+                            throw new XMLStreamException(ex);
+                        }
+                    }
+                }
+            };
+        } catch (XMLStreamException | RuntimeException ex) {
+            content.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Advances to the next child element of the current element.
+     *
+     * @return <code>false</code> if the end of the current element was reached instead
+     */
+    static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the text of a simple element and advances to its end.
+     */
+    static String readText(XMLStreamReader reader) throws XMLStreamException, UnsupportedContentException {
+        StringBuilder text = new StringBuilder();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                text.append(reader.getText());
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                throw new UnsupportedContentException("complex content " + reader.getName());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * Advances to the end of the current element.
+     */
+    static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+}
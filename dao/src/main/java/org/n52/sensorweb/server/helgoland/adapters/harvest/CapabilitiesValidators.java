@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.harvest;
+
+import java.util.Objects;
+
+import javax.xml.namespace.QName;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+import org.quartz.JobDataMap;
+
+/**
+ * The HTTP validators (<code>ETag</code>, <code>Last-Modified</code>) and the OWS <code>updateSequence</code> of
+ * the last harvested capabilities of a data source. They are kept in the {@link JobDataMap} of the harvesting job,
+ * which is persisted between executions, to request the capabilities conditionally.
+ */
+public class CapabilitiesValidators {
+
+    private static final String ETAG = "capabilities.etag";
+    private static final String LAST_MODIFIED = "capabilities.lastModified";
+    private static final String UPDATE_SEQUENCE = "capabilities.updateSequence";
+    private static final QName UPDATE_SEQUENCE_ATTRIBUTE = new QName("updateSequence");
+    private static final QName EXCEPTION_CODE_ATTRIBUTE = new QName("exceptionCode");
+    private static final String EXCEPTION_REPORT = "ExceptionReport";
+    private static final String CURRENT_UPDATE_SEQUENCE = "CurrentUpdateSequence";
+
+    private String etag;
+    private String lastModified;
+    private String updateSequence;
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public String getUpdateSequence() {
+        return updateSequence;
+    }
+
+    public boolean isEmpty() {
+        return etag == null && lastModified == null && updateSequence == null;
+    }
+
+    public static CapabilitiesValidators from(JobDataMap jobDataMap) {
+        CapabilitiesValidators validators = new CapabilitiesValidators();
+        validators.etag = jobDataMap.getString(ETAG);
+        validators.lastModified = jobDataMap.getString(LAST_MODIFIED);
+        validators.updateSequence = jobDataMap.getString(UPDATE_SEQUENCE);
+        return validators;
+    }
+
+    /**
+     * Takes the validators from a capabilities response.
+     *
+     * @param response     the HTTP response
+     * @param capabilities the capabilities document of the response
+     */
+    public void update(HttpResponse response, XmlObject capabilities) {
+        this.etag = response.containsHeader(HttpHeaders.ETAG)
+                ? response.getFirstHeader(HttpHeaders.ETAG).getValue()
+                : null;
+        this.lastModified = response.containsHeader(HttpHeaders.LAST_MODIFIED)
+                ? response.getFirstHeader(HttpHeaders.LAST_MODIFIED).getValue()
+                : null;
+        this.updateSequence = getRootAttribute(capabilities, UPDATE_SEQUENCE_ATTRIBUTE);
+    }
+
+    public void store(JobDataMap jobDataMap) {
+        put(jobDataMap, ETAG, etag);
+        put(jobDataMap, LAST_MODIFIED, lastModified);
+        put(jobDataMap, UPDATE_SEQUENCE, updateSequence);
+    }
+
+    /**
+     * Adds the conditional headers to a capabilities request.
+     *
+     * @param request the request
+     */
+    public void addConditionalHeaders(HttpRequest request) {
+        if (etag != null) {
+            request.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+
+    /**
+     * Checks if a capabilities response states that the capabilities did not change since these validators were
+     * taken. That is the case for an OWS exception with code <code>CurrentUpdateSequence</code> or for a document
+     * with the same <code>updateSequence</code>.
+     *
+     * @param response the capabilities response
+     * @return if the capabilities are unchanged
+     */
+    public boolean isUnchanged(XmlObject response) {
+        XmlCursor cursor = response.newCursor();
+        try {
+            if (!cursor.toFirstChild()) {
+                return false;
+            }
+            if (EXCEPTION_REPORT.equals(cursor.getName().getLocalPart())) {
+                if (cursor.toFirstChild()) {
+                    do {
+                        if (CURRENT_UPDATE_SEQUENCE.equals(cursor.getAttributeText(EXCEPTION_CODE_ATTRIBUTE))) {
+                            return true;
+                        }
+                    } while (cursor.toNextSibling());
+                }
+                return false;
+            }
+            return updateSequence != null
+                    && Objects.equals(updateSequence, cursor.getAttributeText(UPDATE_SEQUENCE_ATTRIBUTE));
+        } finally {
+            cursor.dispose();
+        }
+    }
+
+    private static String getRootAttribute(XmlObject xml, QName attribute) {
+        XmlCursor cursor = xml.newCursor();
+        try {
+            return cursor.toFirstChild() ? cursor.getAttributeText(attribute) : null;
+        } finally {
+            cursor.dispose();
+        }
+    }
+
+    private static void put(JobDataMap jobDataMap, String key, String value) {
+        if (value != null) {
+            jobDataMap.put(key, value);
+        } else {
+            jobDataMap.remove(key);
+        }
+    }
+
+}
@@ -28,6 +28,9 @@
 package org.n52.sensorweb.server.helgoland.adapters.harvest;
 
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlObject;
 import org.n52.io.task.ScheduledJob;
@@ -37,22 +40,18 @@ import org.n52.sensorweb.server.helgoland.adapters.connector.AbstractConnector;
 import org.n52.sensorweb.server.helgoland.adapters.connector.AbstractSosConnector;
 import org.n52.sensorweb.server.helgoland.adapters.connector.ConnectorRequestFailedException;
 import org.n52.sensorweb.server.helgoland.adapters.connector.SensorThingsConnector;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.HarvestCheckpointStore;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceConstellation;
+import org.n52.sensorweb.server.helgoland.adapters.da.DatasetPipeline;
 import org.n52.sensorweb.server.helgoland.adapters.da.InsertRepository;
-import org.n52.sensorweb.server.helgoland.adapters.web.SimpleHttpClient;
-import org.n52.series.db.beans.CategoryEntity;
-import org.n52.series.db.beans.DatasetEntity;
-import org.n52.series.db.beans.DescribableEntity;
-import org.n52.series.db.beans.FeatureEntity;
-import org.n52.series.db.beans.OfferingEntity;
-import org.n52.series.db.beans.PhenomenonEntity;
-import org.n52.series.db.beans.PlatformEntity;
-import org.n52.series.db.beans.ProcedureEntity;
+import org.n52.sensorweb.server.helgoland.adapters.web.HttpClient;
+import org.n52.sensorweb.server.helgoland.adapters.web.HttpRequestBuilder;
 import org.n52.series.db.beans.ServiceEntity;
 import org.n52.shetland.ogc.ows.service.GetCapabilitiesResponse;
 import org.n52.svalbard.decode.DecoderRepository;
 import org.n52.svalbard.decode.exception.DecodingException;
 import org.n52.svalbard.util.CodingHelper;
+import org.quartz.CronTrigger;
 import org.quartz.DisallowConcurrentExecution;
 import org.quartz.Job;
 import org.quartz.JobBuilder;
@@ -62,15 +61,24 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.quartz.JobKey;
 import org.quartz.PersistJobDataAfterExecution;
+import org.quartz.SchedulerException;
+import org.quartz.TriggerBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.collect.Lists;
+
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 @SuppressWarnings("SpringJavaAutowiredMembersInspection")
@@ -82,6 +90,14 @@ public class DataSourceHarvesterJob extends ScheduledJob implements Job {
 
     private static final String JOB_CONFIG = "config";
 
+    private static final String OFFERING_FINGERPRINTS = "offeringFingerprints";
+
+    private static final String SCHEDULED_FIRE_TIME = "scheduledFireTime";
+
+    private static final String RETRY = "retry";
+
+    private static final int DATASET_BATCH_SIZE = 100;
+
     private DataSourceConfiguration config;
 
     @Autowired
@@ -90,12 +106,27 @@ public class DataSourceHarvesterJob extends ScheduledJob implements Job {
     @Autowired
     private DecoderRepository decoderRepository;
 
+    @Autowired
+    private HttpClient httpClient;
+
+    @Value("${http.client.capabilities-timeout:30000}")
+    private int capabilitiesTimeout;
+
     @Autowired(required = false)
     private Set<AbstractConnector> connectors;
 
     @Autowired(required = false)
     private Set<HarvestingListener> listeners;
 
+    @Autowired(required = false)
+    private HarvestCheckpointStore checkpointStore;
+
+    @Autowired(required = false)
+    private DatasetPipeline datasetPipeline;
+
+    @Autowired(required = false)
+    private HarvestCoordinator harvestCoordinator;
+
     public DataSourceHarvesterJob() {
     }
 
@@ -121,17 +152,103 @@ public class DataSourceHarvesterJob extends ScheduledJob implements Job {
 
     @Override
     protected void executeInternal(JobExecutionContext context) throws JobExecutionException {
+        if (harvestCoordinator == null) {
+            harvest(context);
+            return;
+        }
+        JobKey key = context.getJobDetail().getKey();
+        DataSourceConfiguration dataSource = recreateConfig(context.getJobDetail().getJobDataMap());
+        long delay = harvestCoordinator.getStartDelay(dataSource);
+        if (delay > 0 && context.getTrigger() instanceof CronTrigger) {
+            // cron triggers have no offset, run once at the staggered time instead of blocking the worker thread
+            LOGGER.debug("Delaying the harvest of {} by {}ms", key, delay);
+            reschedule(context, context.getScheduledFireTime().getTime() + delay, false);
+            return;
+        }
+        boolean retry = context.getTrigger().getJobDataMap().containsKey(RETRY);
+        if (!retry && harvestCoordinator.isCoalesced(dataSource, getScheduledFireTime(context))) {
+            LOGGER.info("{} was scheduled during the previous harvest, skipping.", key);
+            return;
+        }
+        Optional<HarvestCoordinator.Permit> permit = harvestCoordinator.tryAcquire(dataSource);
+        if (!permit.isPresent()) {
+            LOGGER.debug("{} waits for a free harvest, retrying in {}ms", key, harvestCoordinator.getRetryDelay());
+            try {
+                reschedule(context, System.currentTimeMillis() + harvestCoordinator.getRetryDelay(), true);
+            } catch (JobExecutionException ex) {
+                harvestCoordinator.cancel(dataSource);
+                throw ex;
+            }
+            return;
+        }
+        try (HarvestCoordinator.Permit running = permit.get()) {
+            harvest(context);
+        }
+    }
+
+    /**
+     * Runs the job once more at the given time, keeping the time the harvest was originally scheduled for.
+     */
+    private void reschedule(JobExecutionContext context, long startAt, boolean retry) throws JobExecutionException {
+        JobDataMap data = new JobDataMap();
+        data.put(SCHEDULED_FIRE_TIME, getScheduledFireTime(context).getTime());
+        if (retry) {
+            data.put(RETRY, true);
+        }
+        try {
+            context.getScheduler().scheduleJob(TriggerBuilder.newTrigger()
+                    .forJob(context.getJobDetail().getKey())
+                    .withPriority(context.getTrigger().getPriority())
+                    .usingJobData(data)
+                    .startAt(new Date(startAt))
+                    .build());
+        } catch (SchedulerException ex) {
+            throw new JobExecutionException(ex);
+        }
+    }
+
+    private Date getScheduledFireTime(JobExecutionContext context) {
+        JobDataMap data = context.getTrigger().getJobDataMap();
+        return data.containsKey(SCHEDULED_FIRE_TIME) ? new Date(data.getLong(SCHEDULED_FIRE_TIME))
+                : context.getScheduledFireTime();
+    }
+
+    private void harvest(JobExecutionContext context) throws JobExecutionException {
         JobKey key = context.getJobDetail().getKey();
         LOGGER.info("{} execution starts.", key);
 
-        DataSourceConfiguration dataSource = recreateConfig(context.getJobDetail().getJobDataMap());
+        JobDataMap jobDataMap = context.getJobDetail().getJobDataMap();
+        DataSourceConfiguration dataSource = recreateConfig(jobDataMap);
 
         try {
-            ServiceConstellation result = determineConstellation(dataSource);
+            GetCapabilitiesResponse capabilities = null;
+            CapabilitiesValidators validators = null;
+            if (isSos(dataSource)) {
+                CapabilitiesValidators previous = CapabilitiesValidators.from(jobDataMap);
+                validators = new CapabilitiesValidators();
+                capabilities = getCapabilities(dataSource, previous, validators);
+                if (capabilities == null) {
+                    LOGGER.info("{} capabilities are unchanged, skipping harvest.", key);
+                    return;
+                }
+            }
+            dataSource.setOfferingFingerprints(getOfferingFingerprints(jobDataMap));
+            ServiceConstellation result = determineConstellation(dataSource, capabilities);
             if (result == null) {
                 LOGGER.warn("No connector found for {}", dataSource);
             } else {
-                saveConstellation(result);
+                if (capabilities != null) {
+                    result.setCapabilities(capabilities::getCapabilities);
+                }
+                saveConstellation(dataSource, result);
+                if (validators != null) {
+                    validators.store(jobDataMap);
+                }
+                // kept in the in-memory job store only, a restart harvests all offerings again
+                jobDataMap.put(OFFERING_FINGERPRINTS, result.getOfferingFingerprints().toMap());
+                if (checkpointStore != null) {
+                    checkpointStore.remove(dataSource);
+                }
                 if (listeners != null) {
                     for (HarvestingListener listener : listeners) {
                         try {
@@ -146,17 +263,29 @@ public class DataSourceHarvesterJob extends ScheduledJob implements Job {
             LOGGER.info("{} execution ends.", key);
         } catch (IOException | DecodingException | ConnectorRequestFailedException ex) {
             throw new JobExecutionException(ex);
+        } finally {
+            if (datasetPipeline != null) {
+                datasetPipeline.abort(dataSource);
+            }
         }
 
     }
 
-    private ServiceConstellation determineConstellation(DataSourceConfiguration dataSource)
-            throws IOException, DecodingException {
+    @SuppressWarnings("unchecked")
+    private Map<String, String> getOfferingFingerprints(JobDataMap jobDataMap) {
+        return (Map<String, String>) jobDataMap.get(OFFERING_FINGERPRINTS);
+    }
+
+    private boolean isSos(DataSourceConfiguration dataSource) {
+        return "SOS".equalsIgnoreCase(dataSource.getType());
+    }
+
+    private ServiceConstellation determineConstellation(DataSourceConfiguration dataSource,
+            GetCapabilitiesResponse capabilities) {
         if (dataSource.getType() == null) {
             return null;
         }
-        if (dataSource.getType().equalsIgnoreCase("SOS")) {
-            GetCapabilitiesResponse capabilities = getCapabilities(dataSource);
+        if (isSos(dataSource)) {
             return determineSOSConstellation(dataSource, capabilities);
         }
         if (dataSource.getType().equalsIgnoreCase("SensorThings")) {
@@ -191,61 +320,77 @@ public class DataSourceHarvesterJob extends ScheduledJob implements Job {
     }
 
     @Transactional(rollbackFor = Exception.class)
-    protected void saveConstellation(ServiceConstellation constellation) {
+    protected void saveConstellation(DataSourceConfiguration dataSource, ServiceConstellation constellation) {
+        Optional<DatasetPipeline.Harvest> streamed =
+                datasetPipeline != null ? datasetPipeline.close(dataSource) : Optional.empty();
+        if (streamed.isPresent()) {
+            // the datasets were persisted while harvesting
+            DatasetPipeline.Harvest harvest = streamed.get();
+            cleanUp(constellation, harvest.getService(), harvest.getDatasetIds(), harvest.getDatasetCount());
+            return;
+        }
         // serviceEntity
         ServiceEntity service = insertRepository.insertService(constellation.getService());
         Set<Long> datasetIds = insertRepository.getIdsForService(service);
         int datasetCount = datasetIds.size();
 
         // save all constellations
-        constellation.getDatasets().forEach(dataset -> {
-            ProcedureEntity procedure = constellation.getProcedures().get(dataset.getProcedure());
-            CategoryEntity category = new CategoryEntity();
-            category.setId(1L);
-            category.setIdentifier("DEFAULT_PROXY_CATEGORY");
-            FeatureEntity feature = constellation.getFeatures().get(dataset.getFeature());
-            OfferingEntity offering = constellation.getOfferings().get(dataset.getOffering());
-            PhenomenonEntity phenomenon = constellation.getPhenomena().get(dataset.getPhenomenon());
-            PlatformEntity platform = constellation.getPlatforms().get(dataset.getPlatform());
-
-            List<DescribableEntity> entities =
-                    Arrays.asList(procedure, category, feature, offering, phenomenon, platform);
-            if (entities.stream().allMatch(Objects::nonNull)) {
-                entities.stream().forEach(x -> x.setService(service));
-                DatasetEntity ds = insertRepository.insertDataset(dataset.createDatasetEntity(procedure, category,
-                        feature, offering, phenomenon, platform, service));
-                if (ds != null) {
-                    datasetIds.remove(ds.getId());
-
-                    dataset.getFirst().ifPresent(data -> insertRepository.insertData(ds, data));
-                    dataset.getLatest().ifPresent(data -> insertRepository.insertData(ds, data));
-                    LOGGER.info("Added dataset: {}", dataset);
-                } else {
-                    LOGGER.warn("Can't save dataset: {}", dataset);
-                }
-            } else {
-                LOGGER.warn("Can't add dataset: {}", dataset);
-            }
-        });
+        Lists.partition(new ArrayList<>(constellation.getDatasets()), DATASET_BATCH_SIZE).forEach(
+                batch -> datasetIds.removeAll(insertRepository.insertDatasets(service, constellation, batch)));
+        cleanUp(constellation, service, datasetIds, datasetCount);
+    }
 
+    private void cleanUp(ServiceConstellation constellation, ServiceEntity service, Set<Long> datasetIds,
+            int datasetCount) {
+        Set<String> keptOfferings = new HashSet<>(constellation.getUnchangedOfferings());
+        keptOfferings.addAll(constellation.getFailedOfferings());
+        if (!keptOfferings.isEmpty()) {
+            // keep the datasets of the offerings that were not harvested again or not completely
+            datasetIds.removeAll(insertRepository.getIdsForOfferings(service, keptOfferings));
+        }
         insertRepository.cleanUp(service, datasetIds, datasetCount > 0 && datasetIds.size() == datasetCount);
     }
 
-    private GetCapabilitiesResponse getCapabilities(DataSourceConfiguration dataSource)
-            throws IOException, DecodingException {
-        try {
-            SimpleHttpClient simpleHttpClient = new SimpleHttpClient();
-            String url = dataSource.getUrl();
-            if (url.contains("?")) {
-                url += "&";
-            } else {
-                url += "?";
+    /**
+     * Requests the capabilities conditionally, using the validators of the last harvest.
+     *
+     * @param dataSource the data source
+     * @param previous   the validators of the last successful harvest
+     * @param current    receives the validators of the returned capabilities
+     * @return the capabilities or <code>null</code> if they did not change since the last harvest
+     */
+    private GetCapabilitiesResponse getCapabilities(DataSourceConfiguration dataSource,
+            CapabilitiesValidators previous, CapabilitiesValidators current) throws IOException, DecodingException {
+        String url = dataSource.getUrl();
+        if (url.contains("?")) {
+            url += "&";
+        } else {
+            url += "?";
+        }
+        url += "service=SOS&request=GetCapabilities"
+                + (dataSource.isDisableHumanReadableName() ? "&returnHumanReadableIdentifier=false" : "");
+        HttpGet request = HttpRequestBuilder.createGet(previous.getUpdateSequence() != null
+                ? url + "&updateSequence=" + URLEncoder.encode(previous.getUpdateSequence(), "UTF-8")
+                : url, dataSource, capabilitiesTimeout);
+        previous.addConditionalHeaders(request);
+        HttpResponse response = httpClient.executeMethod(request);
+        if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            return null;
+        }
+        try (InputStream content = response.getEntity().getContent()) {
+            XmlObject xmlResponse = XmlObject.Factory.parse(content);
+            if (!previous.isEmpty() && previous.isUnchanged(xmlResponse)) {
+                return null;
             }
-            HttpResponse response = simpleHttpClient.executeGet(url + "service=SOS&request=GetCapabilities"
-                    + (dataSource.isDisableHumanReadableName() ? "&returnHumanReadableIdentifier=false" : ""));
-            XmlObject xmlResponse = XmlObject.Factory.parse(response.getEntity().getContent());
-            return (GetCapabilitiesResponse) decoderRepository.getDecoder(CodingHelper.getDecoderKey(xmlResponse))
+            Object decoded = decoderRepository.getDecoder(CodingHelper.getDecoderKey(xmlResponse))
                     .decode(xmlResponse);
+            if (!(decoded instanceof GetCapabilitiesResponse) && previous.getUpdateSequence() != null) {
+                // e.g. InvalidUpdateSequence, request the capabilities unconditionally
+                return getCapabilities(dataSource, new CapabilitiesValidators(), current);
+            }
+            current.update(response, xmlResponse);
+            return (GetCapabilitiesResponse) decoded;
         } catch (XmlException ex) {
             throw new DecodingException(ex);
         }
@@ -32,18 +32,24 @@ import org.n52.sensorweb.server.helgoland.adapters.config.ConfigurationReader;
 import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
 import org.n52.sensorweb.server.helgoland.adapters.da.InsertRepository;
 import org.quartz.JobDetail;
+import org.quartz.JobKey;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 import org.quartz.Trigger;
 import org.quartz.TriggerBuilder;
+import org.quartz.listeners.SchedulerListenerSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
+import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toSet;
 
 public class DataSourceHarvesterScheduler {
@@ -58,6 +64,9 @@ public class DataSourceHarvesterScheduler {
     @Autowired
     private InsertRepository insertRepository;
 
+    @Autowired(required = false)
+    private HarvestCoordinator harvestCoordinator;
+
     public void init() {
         if (!enabled) {
             LOGGER.info("Job schedular disabled. No jobs will be triggered." +
@@ -78,6 +87,7 @@ public class DataSourceHarvesterScheduler {
                     job.init(config);
                     return job;
                 }).forEach(this::scheduleJob);
+        forgetDeletedJobs();
 
         try {
             scheduler.startDelayed(startupDelayInSeconds);
@@ -91,12 +101,16 @@ public class DataSourceHarvesterScheduler {
         try {
             if (taskToSchedule.isEnabled()) {
                 JobDetail details = taskToSchedule.createJobDetails();
-                Trigger trigger = taskToSchedule.createTrigger(details.getKey());
+                int priority = getPriority(taskToSchedule);
+                Trigger trigger = taskToSchedule.createTrigger(details.getKey()).getTriggerBuilder()
+                        .withPriority(priority).build();
                 scheduler.scheduleJob(details, trigger);
                 if (taskToSchedule.isTriggerAtStartup()) {
                     LOGGER.debug("Schedule job '{}' to run once at startup.", details.getKey());
                     Trigger onceAtStartup = TriggerBuilder.newTrigger()
                             .withIdentity(details.getKey() + "_onceAtStartup")
+                            .withPriority(priority)
+                            .startAt(new Date(System.currentTimeMillis() + getStartDelay(taskToSchedule)))
                             .forJob(details.getKey()).build();
                     scheduler.scheduleJob(onceAtStartup);
                 }
@@ -106,6 +120,53 @@ public class DataSourceHarvesterScheduler {
         }
     }
 
+    /**
+     * Removes the data sources of deleted jobs from the {@link HarvestCoordinator}, so their waiting harvests do not
+     * hold up the others.
+     */
+    private void forgetDeletedJobs() {
+        if (harvestCoordinator == null) {
+            return;
+        }
+        Map<String, DataSourceConfiguration> sources = configurationProvider.getDataSource().stream()
+                .filter(config -> config.getItemName() != null)
+                .collect(toMap(DataSourceConfiguration::getItemName, Function.identity(), (first, second) -> first));
+        try {
+            scheduler.getListenerManager().addSchedulerListener(new SchedulerListenerSupport() {
+                @Override
+                public void jobDeleted(JobKey jobKey) {
+                    DataSourceConfiguration config = sources.get(jobKey.getName());
+                    if (config != null) {
+                        harvestCoordinator.remove(config);
+                    }
+                }
+            });
+        } catch (SchedulerException e) {
+            LOGGER.warn("Could not listen for deleted jobs.", e);
+        }
+    }
+
+    private int getPriority(ScheduledJob job) {
+        DataSourceConfiguration config = getConfig(job);
+        if (config != null && config.getJob() != null) {
+            return config.getJob().getPriority();
+        }
+        return Trigger.DEFAULT_PRIORITY;
+    }
+
+    /**
+     * Staggers the start of a job. Runs of its cron trigger are staggered by the job itself, as cron triggers cannot
+     * be offset.
+     */
+    private long getStartDelay(ScheduledJob job) {
+        DataSourceConfiguration config = getConfig(job);
+        return harvestCoordinator != null && config != null ? harvestCoordinator.getStartDelay(config) : 0;
+    }
+
+    private DataSourceConfiguration getConfig(ScheduledJob job) {
+        return job instanceof DataSourceHarvesterJob ? ((DataSourceHarvesterJob) job).getConfig() : null;
+    }
+
     /**
      * Shuts down the task scheduler without waiting tasks to be finished.
      */
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.harvest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceJobConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Coordinates the harvests of all data sources on top of their schedules:
+ * <ul>
+ * <li>each data source starts with a fixed delay of up to the maximum jitter, derived from its URL, so sources
+ * sharing a cron expression do not start at the same second,</li>
+ * <li>at most <code>maxConcurrentHarvests</code> harvests run at the same time, where a data source counts with the
+ * weight of its job configuration and waiting harvests start by priority of their job configuration,</li>
+ * <li>a run scheduled while the previous harvest of the same data source was still running is coalesced into that
+ * harvest instead of starting another one right after it.</li>
+ * </ul>
+ * The coordinator never blocks: the scheduler applies the start delay to the triggers and a harvest without a free
+ * permit is rescheduled after the retry delay, keeping its place among the waiting harvests. A waiting harvest that
+ * did not try again within twice the retry delay, e.g. because its job was deleted or the scheduler is in standby,
+ * loses its place, so it can not hold up the other harvests.
+ */
+public class HarvestCoordinator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HarvestCoordinator.class);
+
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(15);
+
+    // finished runs are kept to coalesce delayed and retried runs scheduled while they were running
+    private static final long RUN_RETENTION = TimeUnit.HOURS.toMillis(1);
+
+    private final int capacity;
+
+    private final long maxJitter;
+
+    private final long retryDelay;
+
+    private final PriorityQueue<Permit> waiting = new PriorityQueue<>(
+            Comparator.comparingInt(Permit::getPriority).reversed().thenComparingLong(Permit::getSequence));
+
+    private final Map<String, Run> runs = new ConcurrentHashMap<>();
+
+    private int available;
+
+    private long sequence;
+
+    /**
+     * @param maxConcurrentHarvests the summed weight of the harvests running at the same time
+     * @param maxJitter             the maximum start delay of a harvest in seconds
+     */
+    public HarvestCoordinator(int maxConcurrentHarvests, int maxJitter) {
+        this(maxConcurrentHarvests, maxJitter, RETRY_DELAY);
+    }
+
+    HarvestCoordinator(int maxConcurrentHarvests, int maxJitter, long retryDelay) {
+        this.capacity = Math.max(1, maxConcurrentHarvests);
+        this.available = capacity;
+        this.maxJitter = TimeUnit.SECONDS.toMillis(Math.max(0, maxJitter));
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * @param config            the data source
+     * @param scheduledFireTime the time the harvest was scheduled for
+     * @return if the run was scheduled while the previous harvest of the data source was waiting or running
+     */
+    public boolean isCoalesced(DataSourceConfiguration config, Date scheduledFireTime) {
+        Run previous = runs.get(config.getUrl());
+        return previous != null && scheduledFireTime != null && previous.overlaps(scheduledFireTime.getTime());
+    }
+
+    /**
+     * Tries to start the harvest of a data source. If no permit is free, the harvest waits for its turn and has to
+     * try again after the {@link #getRetryDelay() retry delay}.
+     *
+     * @param config the data source
+     * @return the permit to release after the harvest or nothing if the harvest has to wait
+     */
+    public synchronized Optional<Permit> tryAcquire(DataSourceConfiguration config) {
+        long now = System.currentTimeMillis();
+        expire(now);
+        Permit permit = getWaiting(config.getUrl()).orElseGet(() -> {
+            Run run = new Run(now);
+            runs.put(config.getUrl(), run);
+            Permit added = new Permit(config, run, sequence++);
+            waiting.add(added);
+            return added;
+        });
+        permit.renewed = now;
+        if (waiting.peek() != permit || available < permit.weight) {
+            LOGGER.debug("The harvest of {} waits for a permit", config.getItemName());
+            return Optional.empty();
+        }
+        waiting.poll();
+        available -= permit.weight;
+        return Optional.of(permit);
+    }
+
+    /**
+     * Gives up the place of a waiting harvest, e.g. if it could not be rescheduled.
+     *
+     * @param config the data source
+     */
+    public synchronized void cancel(DataSourceConfiguration config) {
+        getWaiting(config.getUrl()).ifPresent(permit -> {
+            waiting.remove(permit);
+            permit.run.finish();
+        });
+    }
+
+    /**
+     * Forgets a data source, e.g. once its job is deleted. A running harvest of the data source still releases its
+     * permit when it is closed.
+     *
+     * @param config the data source
+     */
+    public synchronized void remove(DataSourceConfiguration config) {
+        cancel(config);
+        runs.remove(config.getUrl());
+    }
+
+    private void expire(long now) {
+        waiting.removeIf(permit -> {
+            if (now - permit.renewed <= 2 * retryDelay) {
+                return false;
+            }
+            LOGGER.info("The waiting harvest of {} did not try again and lost its place", permit.source);
+            permit.run.finish();
+            return true;
+        });
+        runs.values().removeIf(run -> run.end < now - RUN_RETENTION);
+    }
+
+    private Optional<Permit> getWaiting(String source) {
+        return waiting.stream().filter(permit -> permit.source.equals(source)).findFirst();
+    }
+
+    private synchronized void release(Permit permit) {
+        available += permit.weight;
+    }
+
+    /**
+     * @return the delay in milliseconds after which a waiting harvest tries again
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * @param config the data source
+     * @return the fixed delay in milliseconds of the harvests of the data source after their schedule
+     */
+    public long getStartDelay(DataSourceConfiguration config) {
+        if (maxJitter == 0) {
+            return 0;
+        }
+        return Math.floorMod(Hashing.murmur3_32().hashString(config.getUrl(), StandardCharsets.UTF_8).asInt(),
+                maxJitter);
+    }
+
+    /**
+     * Allows a harvest to run until it is closed.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final String source;
+        private final int priority;
+        private final int weight;
+        private final Run run;
+        private final long sequence;
+        private long renewed;
+        private boolean closed;
+
+        Permit(DataSourceConfiguration config, Run run, long sequence) {
+            DataSourceJobConfiguration job = config.getJob();
+            this.source = config.getUrl();
+            this.priority = job != null ? job.getPriority() : DataSourceJobConfiguration.DEFAULT_PRIORITY;
+            this.weight = Math.min(capacity, Math.max(1, job != null ? job.getWeight() : 1));
+            this.run = run;
+            this.sequence = sequence;
+        }
+
+        int getPriority() {
+            return priority;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                run.finish();
+                release(this);
+            }
+        }
+
+    }
+
+    private static final class Run {
+
+        private final long start;
+        private volatile long end = Long.MAX_VALUE;
+
+        Run(long start) {
+            this.start = start;
+        }
+
+        boolean overlaps(long time) {
+            return start <= time && time < end;
+        }
+
+        void finish() {
+            end = System.currentTimeMillis();
+        }
+
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.web;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Non-blocking counterpart of {@link HttpClient}. Requests are executed without occupying a thread while they are
+ * outstanding. The returned futures may complete on the I/O threads of the client, so dependent stages doing
+ * expensive work (e.g. parsing the response) should use the <code>*Async</code> variants of
+ * {@link CompletableFuture}.
+ */
+public interface AsyncHttpClient {
+
+    /**
+     * @param uri the target to send the GET request to.
+     *
+     * @return the future HTTP response returned by the target.
+     */
+    CompletableFuture<HttpResponse> executeGet(String uri);
+
+    /**
+     * @param uri           the target to send the POST request to.
+     * @param payloadToSend the POST payload.
+     *
+     * @return the future HTTP response returned by the target.
+     */
+    CompletableFuture<HttpResponse> executePost(String uri, HttpEntity payloadToSend);
+
+    /**
+     * @param method the HTTP method to execute.
+     *
+     * @return the future HTTP response returned by the target, completed exceptionally if sending the request
+     *         fails.
+     */
+    CompletableFuture<HttpResponse> executeMethod(HttpRequestBase method);
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.web;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Entity decompressing <code>gzip</code> or <code>deflate</code> encoded content while it is read. The number of
+ * transferred and decoded bytes is recorded when the content stream is closed.
+ */
+public class ContentDecodingEntity extends HttpEntityWrapper {
+
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+    static final String NO_ENCODING = "identity";
+    private static final String GZIP = "gzip";
+    private static final String X_GZIP = "x-gzip";
+    private static final String DEFLATE = "deflate";
+    private static final String IDENTITY = NO_ENCODING;
+    private static final String METER_TRANSFERRED = "proxy.http.client.bytes.transferred";
+    private static final String METER_DECODED = "proxy.http.client.bytes.decoded";
+    private static final String TAG_HOST = "host";
+    private static final String TAG_ENCODING = "encoding";
+
+    private final String encoding;
+    private final String host;
+    private final MeterRegistry meterRegistry;
+
+    ContentDecodingEntity(HttpEntity wrappedEntity, String encoding, String host, MeterRegistry meterRegistry) {
+        super(wrappedEntity);
+        this.encoding = encoding;
+        this.host = host;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Adds the <code>Accept-Encoding</code> header to the request if it does not specify one already.
+     *
+     * @param request the request
+     */
+    public static void acceptCompressed(HttpRequest request) {
+        if (!request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+        }
+    }
+
+    /**
+     * Replaces the entity of the response by a decoding one.
+     *
+     * @param response      the response
+     * @param host          the host the response was received from
+     * @param meterRegistry the registry to record the byte counts to
+     * @return the response
+     */
+    public static HttpResponse decode(HttpResponse response, String host, MeterRegistry meterRegistry) {
+        HttpEntity entity = response.getEntity();
+        if (entity != null && entity.getContentLength() != 0) {
+            Header contentEncoding = entity.getContentEncoding();
+            String encoding = contentEncoding != null && contentEncoding.getValue() != null
+                    ? contentEncoding.getValue().trim().toLowerCase(Locale.ROOT)
+                    : IDENTITY;
+            response.setEntity(new ContentDecodingEntity(entity, encoding, host, meterRegistry));
+            response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+            response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+        }
+        return response;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        CountingInputStream transferred = new CountingInputStream(super.getContent());
+        CountingInputStream decoded = new CountingInputStream(decompress(transferred));
+        return new FilterInputStream(decoded) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!closed) {
+                        closed = true;
+                        record(transferred.getCount(), decoded.getCount());
+                    }
+                }
+            }
+        };
+    }
+
+    private InputStream decompress(InputStream in) throws IOException {
+        switch (encoding) {
+            case GZIP:
+            case X_GZIP:
+                return new GZIPInputStream(in);
+            case DEFLATE:
+                return new DeflateInputStream(in);
+            default:
+                return in;
+        }
+    }
+
+    private void record(long transferredBytes, long decodedBytes) {
+        String hostTag = host != null ? host : "unknown";
+        meterRegistry.counter(METER_TRANSFERRED, TAG_HOST, hostTag, TAG_ENCODING, encoding)
+                .increment(transferredBytes);
+        meterRegistry.counter(METER_DECODED, TAG_HOST, hostTag, TAG_ENCODING, encoding).increment(decodedBytes);
+    }
+
+    @Override
+    public Header getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public long getContentLength() {
+        return IDENTITY.equals(encoding) ? super.getContentLength() : -1;
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        try (InputStream in = getContent()) {
+            ByteStreams.copy(in, outstream);
+        }
+    }
+
+}
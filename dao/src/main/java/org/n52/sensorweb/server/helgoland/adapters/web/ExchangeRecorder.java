@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Records upstream HTTP exchanges to a directory and replays them, e.g. to benchmark harvesting and reading without
+ * network access. Exchanges are keyed by the canonical request: method, URI with sorted query parameters and a hash
+ * of the request body. Replayed responses can be slowed down by a fixed latency and a bandwidth limit.
+ */
+public class ExchangeRecorder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExchangeRecorder.class);
+
+    private static final String META_SUFFIX = ".properties";
+
+    private static final String BODY_SUFFIX = ".body";
+
+    private static final String REQUEST = "request";
+
+    private static final String STATUS = "status";
+
+    private static final String REASON = "reason";
+
+    private static final String HEADER = "header.";
+
+    private static final Set<String> TRANSPORT_HEADERS =
+            new HashSet<>(Arrays.asList("connection", "content-length", "keep-alive", "transfer-encoding"));
+
+    private final Mode mode;
+
+    private final Path directory;
+
+    private long latency;
+
+    private long bandwidth;
+
+    /**
+     * @param mode      <code>live</code>, <code>record</code> or <code>replay</code>
+     * @param directory the directory of the recorded exchanges
+     */
+    public ExchangeRecorder(String mode, String directory) {
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.directory = Paths.get(directory);
+        if (this.mode != Mode.LIVE) {
+            LOGGER.info("Upstream HTTP exchanges are {} in {}", this.mode == Mode.RECORD ? "recorded" : "replayed",
+                    this.directory.toAbsolutePath());
+        }
+    }
+
+    /**
+     * @param latency the time in milliseconds a replayed response is delayed
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @param bandwidth the bytes per second replayed response bodies are limited to, <code>0</code> for unlimited
+     */
+    public void setBandwidth(long bandwidth) {
+        this.bandwidth = bandwidth;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Stores the exchange. The response body is consumed, so the returned response has to be used instead.
+     *
+     * @param request  the request
+     * @param response the response
+     * @return the response with a repeatable copy of the body
+     * @throws IOException if the exchange could not be stored
+     */
+    public HttpResponse record(HttpRequestBase request, HttpResponse response) throws IOException {
+        String canonical = canonicalize(request);
+        String key = hash(canonical.getBytes(StandardCharsets.UTF_8));
+        Properties meta = new Properties();
+        meta.setProperty(REQUEST, canonical);
+        meta.setProperty(STATUS, Integer.toString(response.getStatusLine().getStatusCode()));
+        meta.setProperty(REASON, String.valueOf(response.getStatusLine().getReasonPhrase()));
+        int index = 0;
+        for (Header header : response.getAllHeaders()) {
+            if (!TRANSPORT_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                meta.setProperty(HEADER + index++, header.getName() + ": " + header.getValue());
+            }
+        }
+        Files.createDirectories(directory);
+        try (OutputStream out = Files.newOutputStream(directory.resolve(key + META_SUFFIX))) {
+            meta.store(out, null);
+        }
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            byte[] body = EntityUtils.toByteArray(entity);
+            Files.write(directory.resolve(key + BODY_SUFFIX), body);
+            ByteArrayEntity copy = new ByteArrayEntity(body);
+            copy.setContentType(entity.getContentType());
+            response.setEntity(copy);
+        }
+        LOGGER.debug("Recorded {} as {}", canonical, key);
+        return response;
+    }
+
+    /**
+     * Loads the recorded response for the request.
+     *
+     * @param request the request
+     * @return the recorded response
+     * @throws IOException if no exchange was recorded for the request
+     */
+    public HttpResponse replay(HttpRequestBase request) throws IOException {
+        String canonical = canonicalize(request);
+        String key = hash(canonical.getBytes(StandardCharsets.UTF_8));
+        Path metaFile = directory.resolve(key + META_SUFFIX);
+        if (!Files.exists(metaFile)) {
+            throw new FileNotFoundException("No recorded exchange for " + canonical);
+        }
+        Properties meta = new Properties();
+        try (InputStream in = Files.newInputStream(metaFile)) {
+            meta.load(in);
+        }
+        sleep(latency);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+                Integer.parseInt(meta.getProperty(STATUS)), meta.getProperty(REASON));
+        for (int i = 0; meta.containsKey(HEADER + i); i++) {
+            String header = meta.getProperty(HEADER + i);
+            int separator = header.indexOf(':');
+            response.addHeader(header.substring(0, separator), header.substring(separator + 1).trim());
+        }
+        Path bodyFile = directory.resolve(key + BODY_SUFFIX);
+        if (Files.exists(bodyFile)) {
+            InputStreamEntity entity = new InputStreamEntity(
+                    new ThrottledInputStream(Files.newInputStream(bodyFile), bandwidth), Files.size(bodyFile));
+            entity.setContentType(response.getFirstHeader("Content-Type"));
+            response.setEntity(entity);
+        }
+        LOGGER.debug("Replaying {} from {}", canonical, key);
+        return response;
+    }
+
+    private String canonicalize(HttpRequestBase request) throws IOException {
+        StringBuilder canonical = new StringBuilder(request.getMethod()).append(' ');
+        try {
+            URIBuilder builder = new URIBuilder(request.getURI());
+            List<NameValuePair> parameters = new ArrayList<>(builder.getQueryParams());
+            parameters.sort(Comparator.comparing(NameValuePair::getName)
+                    .thenComparing(NameValuePair::getValue, Comparator.nullsFirst(Comparator.naturalOrder())));
+            builder.setScheme(lowerCase(builder.getScheme()));
+            builder.setHost(lowerCase(builder.getHost()));
+            if (parameters.isEmpty()) {
+                builder.removeQuery();
+            } else {
+                builder.setParameters(parameters);
+            }
+            canonical.append(builder.build());
+        } catch (URISyntaxException ex) {
+            throw new IOException(ex);
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null && entity.isRepeatable()) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                entity.writeTo(body);
+                canonical.append(' ').append(hash(body.toByteArray()));
+            }
+        }
+        return canonical.toString();
+    }
+
+    private static String lowerCase(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static String hash(byte[] value) {
+        return Hashing.sha256().hashBytes(value).toString();
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    public enum Mode {
+        LIVE,
+        RECORD,
+        REPLAY
+    }
+
+    /**
+     * Limits the bytes read per second.
+     */
+    private static class ThrottledInputStream extends FilterInputStream {
+
+        private final long bandwidth;
+
+        private final long start = System.nanoTime();
+
+        private long bytes;
+
+        ThrottledInputStream(InputStream in, long bandwidth) {
+            super(in);
+            this.bandwidth = bandwidth;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                throttle(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                throttle(read);
+            }
+            return read;
+        }
+
+        private void throttle(int read) throws InterruptedIOException {
+            if (bandwidth > 0) {
+                bytes += read;
+                long expected = TimeUnit.SECONDS.toNanos(bytes) / bandwidth;
+                sleep(TimeUnit.NANOSECONDS.toMillis(expected - (System.nanoTime() - start)));
+            }
+        }
+    }
+
+}
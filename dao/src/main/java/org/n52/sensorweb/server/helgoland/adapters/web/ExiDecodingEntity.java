@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.web;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.main.api.sax.EXISource;
+import com.siemens.ct.exi.main.api.stream.StAXDecoder;
+
+/**
+ * Entity decoding Efficient XML Interchange content. Consumers can receive the SAX events directly, see
+ * {@link #parse(ContentHandler, LexicalHandler)}, read the StAX events, see {@link #createXMLStreamReader()}, or
+ * read the content as XML.
+ */
+public class ExiDecodingEntity extends HttpEntityWrapper {
+
+    private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+    private static final int PIPE_SIZE = 8192;
+
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("exi-decoding-%d").setDaemon(true).build());
+
+    private static final Header CONTENT_TYPE_XML = new BasicHeader(HttpHeaders.CONTENT_TYPE,
+            ContentType.create("text/xml", StandardCharsets.UTF_8).toString());
+
+    ExiDecodingEntity(HttpEntity wrappedEntity) {
+        super(wrappedEntity);
+    }
+
+    /**
+     * Replaces the entity of an EXI response by a decoding one.
+     *
+     * @param response the response
+     * @return the response or an empty optional if the response is no EXI document. Its content is consumed then.
+     */
+    public static Optional<HttpResponse> decode(HttpResponse response) {
+        HttpEntity entity = response.getEntity();
+        if (!isExi(entity)) {
+            EntityUtils.consumeQuietly(entity);
+            return Optional.empty();
+        }
+        response.setEntity(new ExiDecodingEntity(entity));
+        return Optional.of(response);
+    }
+
+    /**
+     * @param entity the entity, may be <code>null</code>
+     * @return if the entity is an EXI document
+     */
+    public static boolean isExi(HttpEntity entity) {
+        return entity != null && entity.getContentType() != null
+                && entity.getContentType().getValue().startsWith(ExiEntity.CONTENT_TYPE);
+    }
+
+    /**
+     * @return an entity decoding the same content, that can be read more than once
+     * @throws IOException if the content can not be read
+     */
+    public ExiDecodingEntity buffer() throws IOException {
+        return wrappedEntity.isRepeatable() ? this : new ExiDecodingEntity(new BufferedHttpEntity(wrappedEntity));
+    }
+
+    /**
+     * Decodes the content and sends the events to the handlers.
+     *
+     * @param contentHandler the content handler
+     * @param lexicalHandler the optional lexical handler
+     * @throws IOException if the content can not be read or decoded
+     */
+    public void parse(ContentHandler contentHandler, LexicalHandler lexicalHandler) throws IOException {
+        try (InputStream in = super.getContent()) {
+            XMLReader reader = new EXISource(ExiEntity.createFactory()).getXMLReader();
+            reader.setContentHandler(contentHandler);
+            if (lexicalHandler != null) {
+                reader.setProperty(LEXICAL_HANDLER, lexicalHandler);
+            }
+            reader.parse(new InputSource(in));
+        } catch (EXIException | SAXException ex) {
+            throw new IOException("Could not decode EXI response", ex);
+        }
+    }
+
+    /**
+     * Creates a reader of the decoded events. Closing the reader closes the content.
+     *
+     * @return the reader
+     * @throws IOException if the content can not be read or decoded
+     */
+    public XMLStreamReader createXMLStreamReader() throws IOException {
+        InputStream in = super.getContent();
+        try {
+            StAXDecoder decoder = new StAXDecoder(ExiEntity.createFactory());
+            decoder.setInputStream(in);
+            return new StreamReaderDelegate(decoder) {
+                @Override
+                public void close() throws XMLStreamException {
+                    try {
+                        super.close();
+                    } finally {
+                        closeQuietly(in);
+                    }
+                }
+            };
+        } catch (Exception ex) {
+            // the decoder reads the EXI header on construction and may fail with any of its exceptions
+            closeQuietly(in);
+            throw new IOException("Could not decode EXI response", ex);
+        }
+    }
+
+    /**
+     * @return the content decoded as XML while it is read. The XML is written by another thread through a pipe, so
+     *         the decoded document is not held in memory.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream out = new PipedOutputStream(in);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        WRITERS.execute(() -> {
+            try {
+                writeTo(out);
+            } catch (IOException ex) {
+                failure.set(ex);
+            } finally {
+                closeQuietly(out);
+            }
+        });
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                return checkFailure(super.read());
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return checkFailure(super.read(b, off, len));
+            }
+
+            private int checkFailure(int read) throws IOException {
+                if (read < 0 && failure.get() != null) {
+                    throw new IOException("Could not decode EXI response", failure.get());
+                }
+                return read;
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (InputStream in = super.getContent()) {
+            XMLReader reader = new EXISource(ExiEntity.createFactory()).getXMLReader();
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.transform(new SAXSource(reader, new InputSource(in)), new StreamResult(out));
+        } catch (EXIException | TransformerException ex) {
+            throw new IOException("Could not decode EXI response", ex);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ex) {
+            // nothing to do, the content was read or the reader gave up
+        }
+    }
+
+    @Override
+    public Header getContentType() {
+        return CONTENT_TYPE_XML;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.web;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+
+/**
+ * Creates HTTP requests carrying the per data source settings (timeouts, compressed transfer), so that a single
+ * shared {@link HttpClient} can serve all data sources.
+ */
+public final class HttpRequestBuilder {
+
+    private HttpRequestBuilder() {
+    }
+
+    public static HttpGet createGet(String uri, DataSourceConfiguration config) {
+        return configure(new HttpGet(uri), config);
+    }
+
+    /**
+     * @param uri           the request URI
+     * @param config        the data source
+     * @param socketTimeout the socket timeout in milliseconds, unless the data source configures its own
+     * @return the request
+     */
+    public static HttpGet createGet(String uri, DataSourceConfiguration config, int socketTimeout) {
+        HttpGet get = configure(new HttpGet(uri), config);
+        if (config == null || config.getSocketTimeout() == null) {
+            get.setConfig((get.getConfig() != null ? RequestConfig.copy(get.getConfig()) : RequestConfig.custom())
+                    .setSocketTimeout(socketTimeout).build());
+        }
+        return get;
+    }
+
+    public static HttpPost createPost(String uri, HttpEntity entity, DataSourceConfiguration config) {
+        HttpPost post = configure(new HttpPost(uri), config);
+        post.setEntity(entity);
+        String contentType = entity.getContentType() != null ? entity.getContentType().getValue() : "";
+        if (contentType.startsWith(ContentType.APPLICATION_JSON.getMimeType())) {
+            post.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+        } else if (contentType.startsWith(ExiEntity.CONTENT_TYPE)) {
+            post.setHeader(HttpHeaders.ACCEPT, ExiEntity.CONTENT_TYPE);
+        }
+        return post;
+    }
+
+    private static <T extends HttpRequestBase> T configure(T request, DataSourceConfiguration config) {
+        request.setHeader(HttpHeaders.ACCEPT_ENCODING, config != null && config.isDisableCompression()
+                ? ContentDecodingEntity.NO_ENCODING
+                : ContentDecodingEntity.ACCEPT_ENCODING);
+        if (config != null && (config.getConnectionTimeout() != null || config.getSocketTimeout() != null)) {
+            RequestConfig.Builder builder = RequestConfig.custom();
+            if (config.getConnectionTimeout() != null) {
+                builder.setConnectTimeout(config.getConnectionTimeout());
+            }
+            if (config.getSocketTimeout() != null) {
+                builder.setSocketTimeout(config.getSocketTimeout());
+            }
+            request.setConfig(builder.build());
+        }
+        return request;
+    }
+
+}
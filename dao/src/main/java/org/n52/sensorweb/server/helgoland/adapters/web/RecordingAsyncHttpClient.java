@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.web;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * {@link AsyncHttpClient} counterpart of {@link RecordingHttpClient}. Recording and replaying (including the
+ * simulated latency) run on a separate pool, so the I/O threads of the delegate are never blocked.
+ */
+public class RecordingAsyncHttpClient implements AsyncHttpClient, Closeable {
+
+    private final AsyncHttpClient delegate;
+
+    private final ExchangeRecorder recorder;
+
+    private final ExecutorService executor;
+
+    public RecordingAsyncHttpClient(AsyncHttpClient delegate, ExchangeRecorder recorder) {
+        this.delegate = delegate;
+        this.recorder = recorder;
+        this.executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("recorded-http-%d").setDaemon(true).build());
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeGet(String uri) {
+        return executeMethod(new HttpGet(uri));
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executePost(String uri, HttpEntity payloadToSend) {
+        HttpPost post = new HttpPost(uri);
+        post.setEntity(payloadToSend);
+        return executeMethod(post);
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeMethod(HttpRequestBase method) {
+        switch (recorder.getMode()) {
+            case RECORD:
+                return delegate.executeMethod(method).thenApplyAsync(response -> {
+                    try {
+                        return recorder.record(method, response);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }, executor);
+            case REPLAY:
+                return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return recorder.replay(method);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }, executor);
+            default:
+                return delegate.executeMethod(method);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+
+}
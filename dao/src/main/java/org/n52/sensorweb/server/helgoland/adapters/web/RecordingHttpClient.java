@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.web;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+
+/**
+ * {@link HttpClient} recording the exchanges of another client or replaying them without network access, depending
+ * on the mode of the {@link ExchangeRecorder}.
+ */
+public class RecordingHttpClient implements HttpClient, Closeable {
+
+    private static final ContentType CONTENT_TYPE_TEXT_XML = ContentType.create("text/xml", StandardCharsets.UTF_8);
+
+    private final HttpClient delegate;
+
+    private final ExchangeRecorder recorder;
+
+    public RecordingHttpClient(HttpClient delegate, ExchangeRecorder recorder) {
+        this.delegate = delegate;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public HttpResponse executeGet(String uri) throws IOException {
+        return executeMethod(new HttpGet(uri));
+    }
+
+    @Override
+    public HttpResponse executePost(String uri, String payloadToSend) throws IOException {
+        return executePost(uri, payloadToSend, CONTENT_TYPE_TEXT_XML);
+    }
+
+    @Override
+    public HttpResponse executePost(String uri, String payloadToSend, ContentType contentType) throws IOException {
+        return executePost(uri, new StringEntity(payloadToSend, contentType));
+    }
+
+    @Override
+    public HttpResponse executePost(String uri, HttpEntity payloadToSend) throws IOException {
+        HttpPost post = new HttpPost(uri);
+        post.setEntity(payloadToSend);
+        return executeMethod(post);
+    }
+
+    @Override
+    public HttpResponse executeMethod(HttpRequestBase method) throws IOException {
+        switch (recorder.getMode()) {
+            case RECORD:
+                return recorder.record(method, delegate.executeMethod(method));
+            case REPLAY:
+                return recorder.replay(method);
+            default:
+                return delegate.executeMethod(method);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.web;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.conn.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import net.jodah.failsafe.Failsafe;
+import net.jodah.failsafe.RetryPolicy;
+
+/**
+ * {@link AsyncHttpClient} backed by the non-blocking Apache HTTP client. Connection failures are retried like in
+ * {@link SimpleHttpClient}, but the retry delays are scheduled instead of blocking the caller.
+ */
+public class SimpleAsyncHttpClient implements AsyncHttpClient, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SimpleAsyncHttpClient.class);
+    private static final int DEFAULT_CONNECTION_TIMEOUT = 30000;
+    private static final int DEFAULT_SOCKET_TIMEOUT = 30000;
+    private static final int DEFAULT_MAX_CONNECTIONS = 200;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    private static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 60000;
+    private static final String METER_RETRIES = "proxy.http.client.retries";
+    private static final RetryPolicy<HttpResponse> RETRY_POLICY = new RetryPolicy<HttpResponse>()
+            .withDelay(10, 900, ChronoUnit.SECONDS)
+            .handle(ConnectException.class);
+    private final CloseableHttpAsyncClient httpclient;
+    private final ScheduledExecutorService retryScheduler;
+    private final int connectionTimeout;
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    /**
+     * Creates an instance with the default timeouts and connection pool limits.
+     */
+    public SimpleAsyncHttpClient() {
+        this(DEFAULT_CONNECTION_TIMEOUT, DEFAULT_SOCKET_TIMEOUT, DEFAULT_MAX_CONNECTIONS,
+                DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_IDLE_CONNECTION_TIMEOUT);
+    }
+
+    /**
+     * Creates an instance with the given timeouts and connection pool limits.
+     *
+     * @param connectionTimeout      the connection timeout in milliseconds.
+     * @param socketTimeout          the socket timeout in milliseconds.
+     * @param maxConnections         the maximum number of pooled connections.
+     * @param maxConnectionsPerRoute the maximum number of pooled connections per host.
+     * @param idleConnectionTimeout  the keep-alive duration of pooled connections in milliseconds for responses
+     *                               that do not announce one.
+     */
+    public SimpleAsyncHttpClient(int connectionTimeout, int socketTimeout, int maxConnections,
+            int maxConnectionsPerRoute, int idleConnectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("async-http-retry-%d").setDaemon(true).build());
+        this.httpclient = HttpAsyncClients.custom()
+                .useSystemProperties()
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectionTimeout)
+                        .setSocketTimeout(socketTimeout)
+                        .build())
+                .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                        .setConnectTimeout(connectionTimeout)
+                        .setSoTimeout(socketTimeout)
+                        .build())
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setKeepAliveStrategy((response, context) -> {
+                    long keepAlive =
+                            DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? keepAlive : idleConnectionTimeout;
+                })
+                .build();
+        this.httpclient.start();
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeGet(String uri) {
+        LOGGER.debug("executing asynchronous GET method '{}'", uri);
+        return executeMethod(new HttpGet(uri));
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executePost(String uri, HttpEntity payloadToSend) {
+        LOGGER.debug("executing asynchronous POST method to '{}'.", uri);
+        HttpPost post = new HttpPost(uri);
+        post.setEntity(payloadToSend);
+        return executeMethod(post);
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeMethod(HttpRequestBase method) {
+        RequestConfig requestConfig = method.getConfig();
+        if (requestConfig != null && requestConfig.getConnectTimeout() < 0) {
+            method.setConfig(RequestConfig.copy(requestConfig).setConnectTimeout(this.connectionTimeout).build());
+        }
+        ContentDecodingEntity.acceptCompressed(method);
+        String host = method.getURI().getHost();
+        return Failsafe.with(RETRY_POLICY)
+                .with(retryScheduler)
+                .onFailure(ex -> LOGGER.warn("Could not connect to host; retrying", ex.getFailure()))
+                .onComplete(event -> countRetries(host, event.getAttemptCount()))
+                .getStageAsync(() -> execute(method))
+                .thenApply(response -> ContentDecodingEntity.decode(response, host, meterRegistry));
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    private void countRetries(String host, int attempts) {
+        if (attempts > 1) {
+            meterRegistry.counter(METER_RETRIES, "host", host != null ? host : "unknown").increment(attempts - 1);
+        }
+    }
+
+    private CompletableFuture<HttpResponse> execute(HttpRequestBase method) {
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        httpclient.execute(method, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                future.completeExceptionally(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public void close() throws IOException {
+        retryScheduler.shutdownNow();
+        httpclient.close();
+    }
+
+}
@@ -27,10 +27,12 @@
  */
 package org.n52.sensorweb.server.helgoland.adapters.web;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.nio.charset.StandardCharsets;
 import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
@@ -39,29 +41,45 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.DefaultConnectionKeepAliveStrategy;
 import org.apache.xmlbeans.XmlObject;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.RequestLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import net.jodah.failsafe.Failsafe;
 import net.jodah.failsafe.RetryPolicy;
 
-public class SimpleHttpClient implements HttpClient {
+public class SimpleHttpClient implements HttpClient, Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SimpleHttpClient.class);
     private static final int DEFAULT_CONNECTION_TIMEOUT = 30000;
     private static final int DEFAULT_SOCKET_TIMEOUT = 30000;
+    private static final int DEFAULT_MAX_CONNECTIONS = 200;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    private static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 60000;
     private static final ContentType CONTENT_TYPE_TEXT_XML = ContentType.create("text/xml", StandardCharsets.UTF_8);
+    private static final String METER_RETRIES = "proxy.http.client.retries";
     private static final RetryPolicy<HttpResponse> RETRY_POLICY = new RetryPolicy<HttpResponse>()
             .withDelay(10, 900, ChronoUnit.SECONDS)
-            .handle(ConnectException.class);
+            .handle(ConnectException.class)
+            // give the request permit of the data source back during the backoff
+            .onFailedAttempt(event -> RequestLimiter.suspend())
+            .onRetry(event -> RequestLimiter.resume());
     private CloseableHttpClient httpclient;
     private int connectionTimeout;
     private int socketTimeout;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private int idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
 
     /**
      * Creates an instance with <code>timeout = {@value #DEFAULT_CONNECTION_TIMEOUT}</code> ms.
@@ -86,8 +104,28 @@ public class SimpleHttpClient implements HttpClient {
      * @param socketTimeout     the socket timeout in milliseconds.
      */
     public SimpleHttpClient(int connectionTimeout, int socketTimeout) {
+        this(connectionTimeout, socketTimeout, DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_ROUTE,
+                DEFAULT_IDLE_CONNECTION_TIMEOUT);
+    }
+
+    /**
+     * Creates an instance with the given timeouts and connection pool limits. Connections idle for longer than
+     * the idle timeout are evicted from the pool; the same value is used as keep-alive duration for responses
+     * that do not announce one.
+     *
+     * @param connectionTimeout      the connection timeout in milliseconds.
+     * @param socketTimeout          the socket timeout in milliseconds.
+     * @param maxConnections         the maximum number of pooled connections.
+     * @param maxConnectionsPerRoute the maximum number of pooled connections per host.
+     * @param idleConnectionTimeout  the idle timeout of pooled connections in milliseconds.
+     */
+    public SimpleHttpClient(int connectionTimeout, int socketTimeout, int maxConnections,
+            int maxConnectionsPerRoute, int idleConnectionTimeout) {
         this.socketTimeout = socketTimeout;
         this.connectionTimeout = connectionTimeout;
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.idleConnectionTimeout = idleConnectionTimeout;
         recreateClient();
     }
 
@@ -127,9 +165,28 @@ public class SimpleHttpClient implements HttpClient {
 
     @Override
     public HttpResponse executeMethod(HttpRequestBase method) throws IOException {
-        return Failsafe.with(RETRY_POLICY)
+        RequestConfig requestConfig = method.getConfig();
+        if (requestConfig != null && requestConfig.getConnectTimeout() < 0) {
+            // requests with own settings (e.g. a per source socket timeout) keep the default connection timeout
+            method.setConfig(RequestConfig.copy(requestConfig).setConnectTimeout(this.connectionTimeout).build());
+        }
+        ContentDecodingEntity.acceptCompressed(method);
+        String host = method.getURI().getHost();
+        HttpResponse response = Failsafe.with(RETRY_POLICY)
                 .onFailure(ex -> LOGGER.warn("Could not connect to host; retrying", ex))
+                .onComplete(event -> countRetries(host, event.getAttemptCount()))
                 .get(() -> httpclient.execute(method));
+        return ContentDecodingEntity.decode(response, host, meterRegistry);
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    private void countRetries(String host, int attempts) {
+        if (attempts > 1) {
+            meterRegistry.counter(METER_RETRIES, "host", host != null ? host : "unknown").increment(attempts - 1);
+        }
     }
 
     public void setConnectionTimout(int timeout) {
@@ -142,22 +199,41 @@ public class SimpleHttpClient implements HttpClient {
         recreateClient();
     }
 
-    private void recreateClient() {
+    @Override
+    public void close() throws IOException {
         if (this.httpclient != null) {
-            try {
-                this.httpclient.close();
-            } catch (IOException ex) {
-                LOGGER.warn("Error closing client", ex);
-            }
+            this.httpclient.close();
             this.httpclient = null;
         }
+    }
+
+    private void recreateClient() {
+        try {
+            close();
+        } catch (IOException ex) {
+            LOGGER.warn("Error closing client", ex);
+        }
         RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(this.connectionTimeout).build();
         SocketConfig socketConfig = SocketConfig.custom().setSoTimeout(this.socketTimeout).build();
         this.httpclient = HttpClientBuilder.create()
                 .useSystemProperties()
                 .setDefaultSocketConfig(socketConfig)
                 .setDefaultRequestConfig(requestConfig)
+                .setMaxConnTotal(this.maxConnections)
+                .setMaxConnPerRoute(this.maxConnectionsPerRoute)
+                .setKeepAliveStrategy(createKeepAliveStrategy())
+                // responses are decoded by ContentDecodingEntity to count the transferred bytes
+                .disableContentCompression()
+                .evictExpiredConnections()
+                .evictIdleConnections(this.idleConnectionTimeout, TimeUnit.MILLISECONDS)
                 .build();
     }
 
+    private ConnectionKeepAliveStrategy createKeepAliveStrategy() {
+        return (response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? keepAlive : this.idleConnectionTimeout;
+        };
+    }
+
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+import org.n52.sensorweb.server.helgoland.adapters.connector.constellations.QuantityDatasetConstellation;
+import org.n52.series.db.beans.ServiceEntity;
+
+public class HarvestCheckpointStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldRestoreCheckpointedOfferingsWithTheCurrentService() throws IOException {
+        DataSourceConfiguration config = new DataSourceConfiguration();
+        config.setUrl("http://example.org/sos");
+        HarvestCheckpointStore store = new HarvestCheckpointStore(directory.toString());
+        store.append(config, OfferingCheckpoint.of("offering", "fingerprint", createConstellation()));
+        // a record torn by a crash
+        Files.write(Files.list(directory).findFirst().get(), new byte[] {0, 0, 1},
+                StandardOpenOption.APPEND);
+
+        ServiceConstellation resumed = new ServiceConstellation();
+        resumed.setService(new ServiceEntity());
+        Map<String, OfferingCheckpoint> checkpoints = store.load(config, resumed.getService());
+        assertEquals("fingerprint", checkpoints.get("offering").getFingerprint());
+        checkpoints.get("offering").restore(resumed);
+        assertEquals(1, resumed.getDatasets().size());
+        assertSame(resumed.getService(), resumed.getProcedures().get("procedure").getService());
+        assertNotNull(resumed.getFeatures().get("feature").getGeometryEntity());
+        assertNotNull(resumed.getCategories().get("temperature"));
+        assertNotNull(resumed.getPlatforms().get("feature"));
+        QuantityDatasetConstellation dataset = (QuantityDatasetConstellation) resumed.getDatasets().iterator().next();
+        assertEquals("degC", dataset.getUnit().getName());
+        assertSame(resumed.getService(), dataset.getUnit().getService());
+
+        store.remove(config);
+        assertTrue(store.load(config, resumed.getService()).isEmpty());
+    }
+
+    @Test
+    public void shouldDiscardCheckpointsWithOtherClasses() throws IOException {
+        DataSourceConfiguration config = new DataSourceConfiguration();
+        config.setUrl("http://example.org/sos");
+        HarvestCheckpointStore store = new HarvestCheckpointStore(directory.toString());
+        store.append(config, OfferingCheckpoint.of("offering", "fingerprint", createConstellation()));
+        Path file = Files.list(directory).findFirst().get();
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(record)) {
+            out.writeObject(new File("checkpoint"));
+        }
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND))) {
+            out.writeInt(record.size());
+            out.write(record.toByteArray());
+        }
+
+        assertTrue(store.load(config, new ServiceEntity()).isEmpty());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void shouldKeepCheckpointsPrivate() throws IOException {
+        assumeTrue(directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        DataSourceConfiguration config = new DataSourceConfiguration();
+        config.setUrl("http://example.org/sos");
+        Path checkpoints = directory.resolve("proxy").resolve("checkpoints");
+        HarvestCheckpointStore store = new HarvestCheckpointStore(checkpoints.toString());
+        store.append(config, OfferingCheckpoint.of("offering", "fingerprint", createConstellation()));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(checkpoints)));
+        assertEquals(1, store.load(config, new ServiceEntity()).size());
+
+        Files.setPosixFilePermissions(checkpoints, PosixFilePermissions.fromString("rwxrwxrwx"));
+        assertTrue(store.load(config, new ServiceEntity()).isEmpty());
+    }
+
+    private static ServiceConstellation createConstellation() {
+        ServiceConstellation constellation = new ServiceConstellation();
+        constellation.setService(new ServiceEntity());
+        constellation.putProcedure("procedure", "procedure", true, false);
+        constellation.putOffering("offering", "offering");
+        constellation.putCategory("temperature", "temperature");
+        constellation.putPhenomenon("temperature", "temperature");
+        constellation.putFeature("feature", "feature", null, 51.9, 7.6, 4326);
+        constellation.putPlatform("feature", "feature");
+        constellation.add(new QuantityDatasetConstellation("procedure", "offering", "temperature", "temperature",
+                "feature", "feature").setUnit(EntityBuilder.createUnit("degC", null, constellation.getService())));
+        return constellation;
+    }
+
+}
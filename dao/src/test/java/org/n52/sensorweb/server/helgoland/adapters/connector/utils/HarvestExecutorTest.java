@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+
+public class HarvestExecutorTest {
+
+    private final HarvestExecutor executor = new HarvestExecutor(4);
+
+    private final List<Integer> items = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldRunAllItemsWithinTheLimitOfTheSource() {
+        DataSourceConfiguration config = new DataSourceConfiguration();
+        config.setHarvestParallelism(2);
+        Set<Integer> done = ConcurrentHashMap.newKeySet();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        executor.forEach(config, items, item -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep();
+            running.decrementAndGet();
+            done.add(item);
+        });
+        assertEquals(items.size(), done.size());
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void shouldRunSequentiallyWithParallelismOfOne() {
+        DataSourceConfiguration config = new DataSourceConfiguration();
+        config.setHarvestParallelism(1);
+        Thread caller = Thread.currentThread();
+        executor.forEach(config, items, item -> assertEquals(caller, Thread.currentThread()));
+    }
+
+    @Test
+    public void shouldRethrowFailures() {
+        assertThrows(IllegalStateException.class, () -> executor.forEach(new DataSourceConfiguration(), items, item -> {
+            throw new IllegalStateException();
+        }));
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
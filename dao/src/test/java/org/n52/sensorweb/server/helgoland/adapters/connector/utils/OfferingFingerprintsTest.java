@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+import org.n52.shetland.ogc.gml.time.TimePeriod;
+import org.n52.shetland.ogc.sos.SosObservationOffering;
+import org.n52.shetland.ogc.sos.SosOffering;
+
+public class OfferingFingerprintsTest {
+
+    private static final DateTime START = new DateTime(2021, 1, 1, 0, 0);
+
+    @Test
+    public void shouldNotDependOnTheOrderOfProcedures() {
+        assertEquals(OfferingFingerprints.of(createOffering(START.plusDays(1), "a", "b")),
+                OfferingFingerprints.of(createOffering(START.plusDays(1), "b", "a")));
+    }
+
+    @Test
+    public void shouldDetectChangedOfferings() {
+        SosObservationOffering offering = createOffering(START.plusDays(1), "a");
+        OfferingFingerprints fingerprints = new OfferingFingerprints(
+                Collections.singletonMap("offering", OfferingFingerprints.of(offering)));
+
+        assertTrue(fingerprints.isUnchanged(offering, OfferingFingerprints.of(offering)));
+        SosObservationOffering extended = createOffering(START.plusDays(2), "a");
+        assertNotEquals(OfferingFingerprints.of(offering), OfferingFingerprints.of(extended));
+        assertFalse(fingerprints.isUnchanged(extended, OfferingFingerprints.of(extended)));
+    }
+
+    private static SosObservationOffering createOffering(DateTime end, String... procedures) {
+        SosObservationOffering offering = new SosObservationOffering();
+        offering.setOffering(new SosOffering("offering", "offering"));
+        offering.setProcedures(Arrays.asList(procedures));
+        offering.setObservableProperties(Collections.singletonList("temperature"));
+        offering.setPhenomenonTime(new TimePeriod(START, end));
+        return offering;
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.n52.sensorweb.server.helgoland.adapters.connector.ConnectorRequestFailedException;
+
+public class RequestLimiterTest {
+
+    private final AsyncExecutor executor = new AsyncExecutor(2);
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldNotLimitNestedRequests() throws IOException {
+        RequestLimiter limiter = new RequestLimiter(null, 1, 50);
+        assertEquals("nested", limiter.execute(() -> limiter.execute(() -> "nested")));
+        assertEquals(Optional.of("nested"), limiter.execute(() -> limiter.tryExecute(() -> "nested")));
+    }
+
+    @Test
+    public void shouldFailWithoutPermitWithinTimeout() {
+        RequestLimiter limiter = new RequestLimiter(null, 1, 50);
+        limiter.acquire();
+        assertThrows(ConnectorRequestFailedException.class, () -> limiter.execute(() -> "blocked"));
+        limiter.release();
+    }
+
+    @Test
+    public void shouldReleaseThePermitOnceIfTheLastRetryFails() throws IOException {
+        RequestLimiter limiter = new RequestLimiter(null, 1, 50);
+        // the retry policy suspends the permit after every failed attempt, also the last one
+        assertThrows(IOException.class, () -> limiter.execute(() -> {
+            RequestLimiter.suspend();
+            RequestLimiter.resume();
+            RequestLimiter.suspend();
+            throw new IOException("unreachable");
+        }));
+        assertEquals(Optional.of("next"), limiter.tryExecute(() -> "next"));
+
+        limiter.acquire();
+        assertFalse(limiter.tryExecute(() -> "exceeding").isPresent());
+    }
+
+    @Test
+    public void shouldHoldTheAsyncPermitUntilTheRequestCompleted() throws Exception {
+        RequestLimiter limiter = new RequestLimiter(null, 1, 1000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<String> first = limiter.executeAsync(() -> {
+            started.countDown();
+            await(finish);
+            return "first";
+        }, executor);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        CompletableFuture<String> second = limiter.executeAsync(() -> "second", executor);
+
+        Thread.sleep(50);
+        assertFalse(second.isDone());
+        assertFalse(limiter.tryExecute(() -> "exceeding").isPresent());
+        finish.countDown();
+        assertEquals("first", first.get(1, TimeUnit.SECONDS));
+        assertEquals("second", second.get(1, TimeUnit.SECONDS));
+        assertEquals(Optional.of("next"), limiter.tryExecute(() -> "next"));
+    }
+
+    @Test
+    public void shouldFailQueuedRequestsWithoutPermitWithinTimeout() throws Exception {
+        RequestLimiter limiter = new RequestLimiter(null, 1, 50);
+        limiter.acquire();
+        CompletableFuture<Void> permit = limiter.acquireAsync(executor);
+        ExecutionException failure =
+                assertThrows(ExecutionException.class, () -> permit.get(1, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof ConnectorRequestFailedException);
+
+        // the permit is not passed on to the expired request
+        limiter.release();
+        assertEquals(Optional.of("next"), limiter.tryExecute(() -> "next"));
+    }
+
+    @Test
+    public void shouldGrantQueuedRequestsWithinTheRate() throws Exception {
+        RequestLimiter limiter = new RequestLimiter(20.0, null, 1000);
+        CompletableFuture<?>[] requests = new CompletableFuture<?>[4];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = limiter.executeAsync(() -> "request", executor);
+        }
+        CompletableFuture.allOf(requests).get(1, TimeUnit.SECONDS);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.n52.series.db.beans.ServiceMetadataEntity;
+
+public class ServiceMetadataTest {
+
+    private static final String CAPABILITIES = "<sos:Capabilities xmlns:sos=\"http://www.opengis.net/sos/2.0\"/>";
+
+    @Test
+    public void shouldRestoreStoredMetadata() {
+        ServiceMetadataEntity entity = ServiceMetadata.createXmlServiceMetadata(CAPABILITIES).toEntity(true);
+        assertNotEquals(CAPABILITIES, entity.getMetadata());
+        assertEquals("application/xml", entity.getFormat());
+
+        ServiceMetadata stored = ServiceMetadata.of(entity);
+        assertEquals("application/xml", stored.getFormat());
+        assertEquals(CAPABILITIES, stored.getMetadata());
+    }
+
+    @Test
+    public void shouldDetectUnchangedContent() {
+        ServiceMetadataEntity entity = ServiceMetadata.createXmlServiceMetadata(CAPABILITIES).toEntity(true);
+        assertTrue(ServiceMetadata.createXmlServiceMetadata(CAPABILITIES).isContentOf(entity));
+        assertFalse(ServiceMetadata.createXmlServiceMetadata(CAPABILITIES + " ").isContentOf(entity));
+    }
+
+    @Test
+    public void shouldStoreUncompressedMetadataByDefault() {
+        ServiceMetadataEntity entity = ServiceMetadata.createXmlServiceMetadata(CAPABILITIES).toEntity();
+        assertEquals(CAPABILITIES, entity.getMetadata());
+        assertEquals(CAPABILITIES, ServiceMetadata.of(entity).getMetadata());
+    }
+
+    @Test
+    public void shouldReadUncompressedMetadata() {
+        ServiceMetadataEntity entity =
+                new ServiceMetadataEntity().setMetadata(CAPABILITIES).setFormat("application/xml");
+        assertEquals(CAPABILITIES, ServiceMetadata.of(entity).getMetadata());
+        assertTrue(ServiceMetadata.createXmlServiceMetadata(CAPABILITIES).isContentOf(entity));
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import org.apache.http.HttpEntity;
+import org.apache.xmlbeans.XmlObject;
+import org.junit.jupiter.api.Test;
+import org.n52.shetland.ogc.filter.FilterConstants.TimeOperator;
+import org.n52.shetland.ogc.filter.TemporalFilter;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.om.OmConstants;
+import org.n52.shetland.ogc.sos.ExtendedIndeterminateTime;
+import org.n52.shetland.ogc.sos.Sos2Constants;
+import org.n52.shetland.ogc.sos.SosConstants;
+import org.n52.shetland.ogc.sos.request.GetFeatureOfInterestRequest;
+import org.n52.shetland.ogc.sos.request.GetObservationRequest;
+import org.n52.shetland.ogc.swe.simpleType.SweBoolean;
+import org.n52.shetland.ogc.swes.SwesExtension;
+
+public class SosRequestEntityTest {
+
+    private static final String NAMESPACES = "declare namespace sos='http://www.opengis.net/sos/2.0'; "
+            + "declare namespace gml='http://www.opengis.net/gml/3.2'; ";
+
+    @Test
+    public void shouldWriteGetObservation() throws Exception {
+        GetObservationRequest request = new GetObservationRequest(SosConstants.SOS, Sos2Constants.SERVICEVERSION);
+        request.addProcedure("procedure&1");
+        request.addOffering("offering");
+        request.addObservedProperty("phenomenon");
+        request.addFeatureIdentifier("feature");
+        request.addTemporalFilter(new TemporalFilter(TimeOperator.TM_Equals,
+                new TimeInstant(ExtendedIndeterminateTime.LATEST), OmConstants.PHENOMENON_TIME_NAME));
+        request.setResponseFormat(OmConstants.NS_OM_2);
+
+        Optional<HttpEntity> entity = SosRequestEntity.create(request, true);
+
+        assertTrue(entity.isPresent());
+        XmlObject xml = XmlObject.Factory.parse(entity.get().getContent());
+        assertEquals(1, xml.selectPath(NAMESPACES + "$this//sos:GetObservation").length);
+        assertEquals("procedure&1", text(xml, "sos:procedure"));
+        assertEquals("latest", text(xml, "gml:timePosition"));
+        assertEquals(OmConstants.NS_OM_2, text(xml, "sos:responseFormat"));
+    }
+
+    @Test
+    public void shouldWriteGetFeatureOfInterest() throws Exception {
+        GetFeatureOfInterestRequest request =
+                new GetFeatureOfInterestRequest(SosConstants.SOS, Sos2Constants.SERVICEVERSION);
+        request.setProcedures(Collections.singletonList("procedure"));
+
+        Optional<HttpEntity> entity = SosRequestEntity.create(request, false);
+
+        assertTrue(entity.isPresent());
+        XmlObject xml = XmlObject.Factory.parse(entity.get().getContent());
+        assertEquals("procedure", text(xml, "sos:procedure"));
+    }
+
+    @Test
+    public void shouldNotSupportExtensions() {
+        GetObservationRequest request = new GetObservationRequest(SosConstants.SOS, Sos2Constants.SERVICEVERSION);
+        SwesExtension<SweBoolean> extension = new SwesExtension<>();
+        extension.setValue(new SweBoolean());
+        request.addExtension(extension);
+
+        assertFalse(SosRequestEntity.create(request, false).isPresent());
+    }
+
+    private String text(XmlObject xml, String path) {
+        XmlObject[] result = xml.selectPath(NAMESPACES + "$this//" + path);
+        assertEquals(1, result.length);
+        return result[0].newCursor().getTextValue();
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.connector.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class UnitCacheTest {
+
+    private static final String SERVICE = "http://example.org/sos";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldKeepUnitsForUnchangedOfferings() {
+        UnitCache cache = new UnitCache();
+        cache.validate(SERVICE, "offering", "1");
+        cache.putUnit(SERVICE, "offering", "procedure", "temperature", "degC");
+        cache.putUnit(SERVICE, "offering", "procedure", "status", null);
+
+        cache.validate(SERVICE, "offering", "1");
+        assertEquals(Optional.of("degC"), cache.getUnit(SERVICE, "offering", "procedure", "temperature"));
+        assertTrue(cache.contains(SERVICE, "offering", "procedure", "status"));
+        assertFalse(cache.getUnit(SERVICE, "offering", "procedure", "status").isPresent());
+    }
+
+    @Test
+    public void shouldDiscardUnitsOfChangedOfferings() {
+        UnitCache cache = new UnitCache();
+        cache.validate(SERVICE, "offering", "1");
+        cache.putUnit(SERVICE, "offering", "procedure", "temperature", "degC");
+        cache.validate(SERVICE, "other", "1");
+        cache.putUnit(SERVICE, "other", "procedure", "temperature", "K");
+
+        cache.validate(SERVICE, "offering", "2");
+        cache.validate(SERVICE, "other", "1");
+        assertFalse(cache.contains(SERVICE, "offering", "procedure", "temperature"));
+        assertEquals(Optional.of("K"), cache.getUnit(SERVICE, "other", "procedure", "temperature"));
+    }
+
+    @Test
+    public void shouldKeepSavedUnitsAcrossRestarts() {
+        UnitCache cache = new UnitCache(directory.toString());
+        cache.validate(SERVICE, "offering", "1");
+        cache.putUnit(SERVICE, "offering", "procedure", "temperature", "degC");
+        cache.putUnit(SERVICE, "offering", "procedure", "status", null);
+        cache.save(SERVICE);
+
+        UnitCache restarted = new UnitCache(directory.toString());
+        restarted.validate(SERVICE, "offering", "1");
+        assertEquals(Optional.of("degC"), restarted.getUnit(SERVICE, "offering", "procedure", "temperature"));
+        assertFalse(restarted.contains(SERVICE, "offering", "procedure", "status"));
+    }
+
+    @Test
+    public void shouldExpireUnknownUnits() throws InterruptedException {
+        UnitCache cache = new UnitCache(null, 1);
+        cache.validate(SERVICE, "offering", "1");
+        cache.putUnit(SERVICE, "offering", "procedure", "status", null);
+        assertTrue(cache.contains(SERVICE, "offering", "procedure", "status"));
+
+        Thread.sleep(1100);
+        assertFalse(cache.contains(SERVICE, "offering", "procedure", "status"));
+        cache.putUnit(SERVICE, "offering", "procedure", "status", "%");
+        assertEquals(Optional.of("%"), cache.getUnit(SERVICE, "offering", "procedure", "status"));
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.da;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.n52.sensorweb.server.helgoland.adapters.connector.ConnectorRequestFailedException;
+import org.n52.sensorweb.server.helgoland.adapters.test.DatasetEntityBuilder;
+import org.n52.sensorweb.server.helgoland.adapters.test.ServiceBuilder;
+import org.n52.series.db.beans.DatasetEntity;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ConnectorCircuitBreakerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ConnectorCircuitBreaker circuitBreaker = new ConnectorCircuitBreaker(2, 2, 1, 60000, 50);
+
+    @BeforeEach
+    public void setUp() {
+        circuitBreaker.setMeterRegistry(meterRegistry);
+    }
+
+    @Test
+    public void shouldFailFastWhileTheCircuitIsOpen() {
+        DatasetEntity dataset = createDataset("unavailable");
+        open(dataset);
+
+        AtomicBoolean called = new AtomicBoolean();
+        assertThrows(ConnectorRequestFailedException.class, () -> circuitBreaker.execute(dataset, () -> {
+            called.set(true);
+            return "value";
+        }));
+        assertFalse(called.get());
+        assertEquals(1.0, meterRegistry.get(ConnectorCircuitBreaker.METRIC_STATE).tag("service", "unavailable")
+                .gauge().value());
+        assertEquals(1.0, meterRegistry.get(ConnectorCircuitBreaker.METRIC_REJECTED).tag("service", "unavailable")
+                .counter().count());
+    }
+
+    @Test
+    public void shouldUseTheFallbackWhileTheCircuitIsOpen() {
+        DatasetEntity dataset = createDataset("unavailable");
+        open(dataset);
+
+        assertEquals("stored", circuitBreaker.execute(dataset, () -> "value", () -> "stored"));
+    }
+
+    @Test
+    public void shouldCloseTheCircuitAfterASuccessfulProbe() throws InterruptedException {
+        DatasetEntity dataset = createDataset("recovering");
+        open(dataset);
+
+        Thread.sleep(100);
+        assertEquals("value", circuitBreaker.execute(dataset, () -> "value"));
+        assertEquals(0.0, meterRegistry.get(ConnectorCircuitBreaker.METRIC_STATE).tag("service", "recovering")
+                .gauge().value());
+    }
+
+    @Test
+    public void shouldKeepTheCircuitsOfOtherServicesClosed() {
+        open(createDataset("unavailable"));
+
+        assertEquals("value", circuitBreaker.execute(createDataset("available"), () -> "value"));
+    }
+
+    private void open(DatasetEntity dataset) {
+        for (int i = 0; i < 2; i++) {
+            assertThrows(ConnectorRequestFailedException.class, () -> circuitBreaker.execute(dataset, () -> {
+                throw new ConnectorRequestFailedException("unavailable");
+            }));
+        }
+    }
+
+    private static DatasetEntity createDataset(String service) {
+        DatasetEntity dataset = DatasetEntityBuilder.newDataset("dataset").build();
+        dataset.setService(ServiceBuilder.newService(service, "http://example.org/" + service, "SOS").build());
+        return dataset;
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.da;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+import org.n52.sensorweb.server.helgoland.adapters.connector.ConnectorRequestFailedException;
+import org.n52.sensorweb.server.helgoland.adapters.connector.constellations.DatasetConstellation;
+import org.n52.sensorweb.server.helgoland.adapters.connector.constellations.QuantityDatasetConstellation;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceConstellation;
+import org.n52.series.db.beans.ServiceEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class DatasetPipelineTest {
+
+    private final DatasetPipeline pipeline = new DatasetPipeline(2, 3);
+
+    private final DataSourceConfiguration config = new DataSourceConfiguration();
+
+    @AfterEach
+    public void shutdown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void shouldPersistAllDatasetsInBatches() {
+        FakeInsertRepository repository = new FakeInsertRepository(1L, 2L, 3L);
+        Consumer<DatasetConstellation> consumer = open(repository);
+        for (int i = 0; i < 7; i++) {
+            consumer.accept(createDataset("procedure" + i));
+        }
+
+        DatasetPipeline.Harvest harvest = pipeline.close(config).get();
+        assertEquals(7, repository.batches.stream().mapToInt(List::size).sum());
+        assertTrue(repository.batches.stream().allMatch(batch -> batch.size() <= 3));
+        assertEquals(3, harvest.getDatasetCount());
+        // the datasets of the first batch replaced a stored one
+        assertEquals(new HashSet<>(Arrays.asList(2L, 3L)), harvest.getDatasetIds());
+        assertFalse(pipeline.close(config).isPresent());
+    }
+
+    @Test
+    public void shouldFailTheHarvestIfPersistingFails() {
+        FakeInsertRepository repository = new FakeInsertRepository();
+        repository.failure = new IllegalStateException("database unavailable");
+        Consumer<DatasetConstellation> consumer = open(repository);
+
+        assertThrows(IllegalStateException.class, () -> {
+            for (int i = 0; i < 1000; i++) {
+                consumer.accept(createDataset("procedure" + i));
+            }
+        });
+        assertThrows(IllegalStateException.class, () -> pipeline.close(config));
+    }
+
+    @Test
+    public void shouldRejectDatasetsOfAnAbortedHarvest() {
+        Consumer<DatasetConstellation> consumer = open(new FakeInsertRepository());
+        pipeline.abort(config);
+
+        assertThrows(ConnectorRequestFailedException.class, () -> consumer.accept(createDataset("procedure")));
+        assertFalse(pipeline.close(config).isPresent());
+    }
+
+    private Consumer<DatasetConstellation> open(InsertRepository repository) {
+        ReflectionTestUtils.setField(pipeline, "insertRepository", repository);
+        config.setUrl("http://example.org/sos");
+        config.setItemName("example");
+        ServiceConstellation constellation = new ServiceConstellation();
+        constellation.setService(new ServiceEntity());
+        return pipeline.open(config, constellation);
+    }
+
+    private static DatasetConstellation createDataset(String procedure) {
+        return new QuantityDatasetConstellation(procedure, "offering", "temperature", "temperature", "feature",
+                "feature");
+    }
+
+    private static final class FakeInsertRepository extends InsertRepository {
+
+        private final List<List<DatasetConstellation>> batches = new CopyOnWriteArrayList<>();
+
+        private final Set<Long> storedIds;
+
+        private volatile RuntimeException failure;
+
+        FakeInsertRepository(Long... storedIds) {
+            this.storedIds = new HashSet<>(Arrays.asList(storedIds));
+        }
+
+        @Override
+        public ServiceEntity insertService(ServiceEntity service) {
+            return service;
+        }
+
+        @Override
+        public synchronized Set<Long> getIdsForService(ServiceEntity service) {
+            return new HashSet<>(storedIds);
+        }
+
+        @Override
+        public Set<Long> insertDatasets(ServiceEntity service, ServiceConstellation constellation,
+                Collection<DatasetConstellation> datasets) {
+            if (failure != null) {
+                throw failure;
+            }
+            batches.add(new CopyOnWriteArrayList<>(datasets));
+            return batches.size() == 1 ? new HashSet<>(Arrays.asList(1L)) : new HashSet<>();
+        }
+
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.decode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+import org.n52.series.db.beans.DataEntity;
+import org.n52.series.db.beans.QuantityDataEntity;
+import org.n52.series.db.beans.dataset.ValueType;
+
+public class ResultTemplateTest {
+
+    private static final String TEMPLATE = "<sos:GetResultTemplateResponse"
+            + " xmlns:sos=\"http://www.opengis.net/sos/2.0\" xmlns:swe=\"http://www.opengis.net/swe/2.0\">"
+            + "<sos:resultStructure><swe:DataRecord>"
+            + "<swe:field name=\"phenomenonTime\">"
+            + "<swe:Time definition=\"http://www.opengis.net/def/property/OGC/0/PhenomenonTime\">"
+            + "<swe:uom xlink:href=\"http://www.opengis.net/def/uom/ISO-8601/0/Gregorian\""
+            + " xmlns:xlink=\"http://www.w3.org/1999/xlink\"/></swe:Time></swe:field>"
+            + "<swe:field name=\"temperature\"><swe:Quantity definition=\"temperature\">"
+            + "<swe:uom code=\"degC\"/></swe:Quantity></swe:field>"
+            + "</swe:DataRecord></sos:resultStructure>"
+            + "<sos:resultEncoding><swe:TextEncoding tokenSeparator=\";\" blockSeparator=\"@\""
+            + " decimalSeparator=\",\"/></sos:resultEncoding>"
+            + "</sos:GetResultTemplateResponse>";
+
+    private static final String RESULT = "<sos:GetResultResponse xmlns:sos=\"http://www.opengis.net/sos/2.0\">"
+            + "<sos:resultValues>2@2020-01-01T00:00:00.000Z;1,5@2020-01-01T01:00:00.000Z;</sos:resultValues>"
+            + "</sos:GetResultResponse>";
+
+    @Test
+    public void shouldDecodeResultValues() throws Exception {
+        Optional<ResultTemplate> template = ResultTemplate.decode(response(TEMPLATE));
+        assertTrue(template.isPresent());
+
+        Optional<List<DataEntity<?>>> data = template.get().decodeResult(response(RESULT), ValueType.quantity);
+
+        assertTrue(data.isPresent());
+        assertEquals(2, data.get().size());
+        QuantityDataEntity first = (QuantityDataEntity) data.get().get(0);
+        assertEquals(0, new BigDecimal("1.5").compareTo(first.getValue()));
+        assertEquals(DateTime.parse("2020-01-01T00:00:00.000Z").toDate(), first.getSamplingTimeStart());
+        assertEquals(first.getSamplingTimeStart(), first.getResultTime());
+        assertEquals(null, ((QuantityDataEntity) data.get().get(1)).getValue());
+    }
+
+    @Test
+    public void shouldRejectUnsupportedTemplates() throws Exception {
+        String vector = TEMPLATE.replace("<swe:field name=\"temperature\">",
+                "<swe:field name=\"location\"><swe:Vector/></swe:field><swe:field name=\"temperature\">");
+        String exception = "<ows:ExceptionReport xmlns:ows=\"http://www.opengis.net/ows/1.1\"/>";
+
+        assertFalse(ResultTemplate.decode(response(vector)).isPresent());
+        assertFalse(ResultTemplate.decode(response(exception)).isPresent());
+    }
+
+    private static HttpResponse response(String content) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        response.setEntity(new StringEntity(content, ContentType.TEXT_XML));
+        return response;
+    }
+
+}
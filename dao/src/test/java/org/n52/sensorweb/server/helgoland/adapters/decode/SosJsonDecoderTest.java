@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.decode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Point;
+import org.n52.series.db.beans.DataEntity;
+import org.n52.series.db.beans.QuantityDataEntity;
+import org.n52.series.db.beans.dataset.ValueType;
+import org.n52.shetland.ogc.om.features.samplingFeatures.SamplingFeature;
+import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityResponse;
+import org.n52.shetland.ogc.sos.response.GetFeatureOfInterestResponse;
+
+public class SosJsonDecoderTest {
+
+    @Test
+    public void shouldDecodeObservations() {
+        String json = "{\"request\":\"GetObservation\",\"version\":\"2.0.0\",\"service\":\"SOS\",\"observations\":["
+                + "{\"type\":\"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\","
+                + "\"procedure\":\"procedure\",\"featureOfInterest\":{\"identifier\":{\"value\":\"feature\"}},"
+                + "\"phenomenonTime\":\"2020-01-01T00:00:00.000Z\",\"resultTime\":\"2020-01-01T00:00:00.000Z\","
+                + "\"result\":{\"uom\":\"m\",\"value\":1.5}},"
+                + "{\"phenomenonTime\":[\"2020-01-01T01:00:00.000Z\",\"2020-01-01T02:00:00.000Z\"],"
+                + "\"result\":{\"uom\":\"m\",\"value\":null}}]}";
+
+        Optional<List<DataEntity<?>>> data = SosJsonDecoder.decodeObservations(response(json), ValueType.quantity);
+
+        assertTrue(data.isPresent());
+        assertEquals(2, data.get().size());
+        QuantityDataEntity first = (QuantityDataEntity) data.get().get(0);
+        assertEquals(0, new BigDecimal("1.5").compareTo(first.getValue()));
+        assertEquals(DateTime.parse("2020-01-01T00:00:00.000Z").toDate(), first.getSamplingTimeEnd());
+        QuantityDataEntity second = (QuantityDataEntity) data.get().get(1);
+        assertEquals(null, second.getValue());
+        assertEquals(DateTime.parse("2020-01-01T02:00:00.000Z").toDate(), second.getSamplingTimeEnd());
+        assertEquals(second.getSamplingTimeStart(), second.getResultTime());
+    }
+
+    @Test
+    public void shouldRejectUnsupportedObservations() {
+        String parameter = "{\"observations\":[{\"phenomenonTime\":\"2020-01-01T00:00:00.000Z\","
+                + "\"parameter\":[{\"NamedValue\":{}}],\"result\":1}]}";
+        String exception = "{\"version\":\"2.0.0\",\"exceptions\":[{\"code\":\"NoApplicableCode\"}]}";
+
+        assertFalse(SosJsonDecoder.decodeObservations(response(parameter), ValueType.quantity).isPresent());
+        assertFalse(SosJsonDecoder.decodeObservations(response(exception), ValueType.quantity).isPresent());
+    }
+
+    @Test
+    public void shouldDecodeFeatureOfInterest() {
+        String json = "{\"featureOfInterest\":[{\"identifier\":{\"codespace\":\"unknown\",\"value\":\"feature\"},"
+                + "\"name\":[{\"codespace\":\"unknown\",\"value\":\"Feature\"}],"
+                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[7.5,51.9],"
+                + "\"crs\":{\"type\":\"name\",\"properties\":{\"name\":\"EPSG:4326\"}}}}]}";
+
+        Optional<GetFeatureOfInterestResponse> response = SosJsonDecoder.decodeFeatureOfInterest(response(json));
+
+        assertTrue(response.isPresent());
+        SamplingFeature feature = (SamplingFeature) response.get().getAbstractFeature();
+        assertEquals("feature", feature.getIdentifier());
+        assertEquals("Feature", feature.getFirstName().getValue());
+        assertEquals(4326, feature.getGeometry().getSRID());
+        assertEquals(7.5, ((Point) feature.getGeometry()).getX());
+    }
+
+    @Test
+    public void shouldDecodeDataAvailability() {
+        String json = "{\"dataAvailability\":[{\"procedure\":{\"href\":\"procedure\",\"title\":\"Procedure\"},"
+                + "\"observedProperty\":\"phenomenon\",\"featureOfInterest\":\"feature\",\"offering\":\"offering\","
+                + "\"phenomenonTime\":[\"2020-01-01T00:00:00.000Z\",\"2020-01-02T00:00:00.000Z\"]}]}";
+
+        Optional<GetDataAvailabilityResponse> response = SosJsonDecoder.decodeDataAvailability(response(json));
+
+        assertTrue(response.isPresent());
+        assertEquals(1, response.get().getDataAvailabilities().size());
+        GetDataAvailabilityResponse.DataAvailability dataAvailability = response.get().getDataAvailabilities().get(0);
+        assertEquals("Procedure", dataAvailability.getProcedure().getTitle());
+        assertEquals("feature", dataAvailability.getFeatureOfInterest().getHref());
+        assertEquals(DateTime.parse("2020-01-02T00:00:00.000Z").getMillis(),
+                dataAvailability.getPhenomenonTime().getEnd().getMillis());
+    }
+
+    private static HttpResponse response(String content) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        response.setEntity(new StringEntity(content, ContentType.APPLICATION_JSON));
+        return response;
+    }
+
+}
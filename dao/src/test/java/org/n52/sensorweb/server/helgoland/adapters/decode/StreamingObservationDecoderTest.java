@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.decode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+import org.n52.series.db.beans.DataEntity;
+import org.n52.series.db.beans.QuantityDataEntity;
+import org.n52.series.db.beans.dataset.ValueType;
+
+public class StreamingObservationDecoderTest {
+
+    private static final String OBSERVATIONS = "<sos:GetObservationResponse"
+            + " xmlns:sos=\"http://www.opengis.net/sos/2.0\" xmlns:om=\"http://www.opengis.net/om/2.0\""
+            + " xmlns:gml=\"http://www.opengis.net/gml/3.2\" xmlns:xlink=\"http://www.w3.org/1999/xlink\""
+            + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+            + "<sos:observationData><om:OM_Observation gml:id=\"o1\">"
+            + "<om:type xlink:href=\"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\"/>"
+            + "<om:phenomenonTime><gml:TimeInstant gml:id=\"t1\">"
+            + "<gml:timePosition>2020-01-01T00:00:00.000Z</gml:timePosition></gml:TimeInstant></om:phenomenonTime>"
+            + "<om:resultTime xlink:href=\"#t1\"/>"
+            + "<om:procedure xlink:href=\"procedure\"/><om:observedProperty xlink:href=\"phenomenon\"/>"
+            + "<om:featureOfInterest xlink:href=\"feature\"/>"
+            + "<om:result xsi:type=\"gml:MeasureType\" uom=\"m\">1.5</om:result>"
+            + "</om:OM_Observation></sos:observationData>"
+            + "<sos:observationData><om:OM_Observation gml:id=\"o2\">"
+            + "<om:phenomenonTime><gml:TimePeriod gml:id=\"t2\">"
+            + "<gml:beginPosition>2020-01-01T01:00:00.000Z</gml:beginPosition>"
+            + "<gml:endPosition>2020-01-01T02:00:00.000Z</gml:endPosition></gml:TimePeriod></om:phenomenonTime>"
+            + "<om:resultTime><gml:TimeInstant gml:id=\"t3\">"
+            + "<gml:timePosition>2020-01-01T03:00:00.000Z</gml:timePosition></gml:TimeInstant></om:resultTime>"
+            + "<om:result xsi:nil=\"true\"/>"
+            + "</om:OM_Observation></sos:observationData>"
+            + "</sos:GetObservationResponse>";
+
+    @Test
+    public void shouldDecodeMeasurements() {
+        Optional<List<DataEntity<?>>> data =
+                new StreamingObservationDecoder(ValueType.quantity).decode(response(OBSERVATIONS));
+
+        assertTrue(data.isPresent());
+        assertEquals(2, data.get().size());
+        QuantityDataEntity first = (QuantityDataEntity) data.get().get(0);
+        assertEquals(0, new BigDecimal("1.5").compareTo(first.getValue()));
+        assertEquals(DateTime.parse("2020-01-01T00:00:00.000Z").toDate(), first.getSamplingTimeStart());
+        assertEquals(first.getSamplingTimeStart(), first.getResultTime());
+        QuantityDataEntity second = (QuantityDataEntity) data.get().get(1);
+        assertEquals(null, second.getValue());
+        assertEquals(DateTime.parse("2020-01-01T02:00:00.000Z").toDate(), second.getSamplingTimeEnd());
+        assertEquals(DateTime.parse("2020-01-01T03:00:00.000Z").toDate(), second.getResultTime());
+    }
+
+    @Test
+    public void shouldRejectUnsupportedContent() {
+        String withParameter = OBSERVATIONS.replace("<om:result xsi:nil", "<om:parameter/><om:result xsi:nil");
+        String exception = "<ows:ExceptionReport xmlns:ows=\"http://www.opengis.net/ows/1.1\"/>";
+
+        assertFalse(new StreamingObservationDecoder(ValueType.quantity).decode(response(withParameter)).isPresent());
+        assertFalse(new StreamingObservationDecoder(ValueType.quantity).decode(response(exception)).isPresent());
+        assertFalse(StreamingObservationDecoder.supports(ValueType.profile));
+    }
+
+    @Test
+    public void shouldFallBackToTheSameResponse() throws IOException {
+        String withParameter = OBSERVATIONS.replace("<om:result xsi:nil", "<om:parameter/><om:result xsi:nil");
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        response.setEntity(new InputStreamEntity(
+                new ByteArrayInputStream(withParameter.getBytes(StandardCharsets.UTF_8)), ContentType.TEXT_XML));
+        List<String> fallbacks = new ArrayList<>();
+
+        List<DataEntity<?>> data = new StreamingObservationDecoder(ValueType.quantity).decode(response, buffered -> {
+            try {
+                fallbacks.add(EntityUtils.toString(buffered.getEntity()));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return Collections.emptyList();
+        });
+
+        assertTrue(data.isEmpty());
+        assertEquals(Collections.singletonList(withParameter), fallbacks);
+    }
+
+    @Test
+    public void shouldNotFallBackForSupportedContent() throws IOException {
+        List<DataEntity<?>> data = new StreamingObservationDecoder(ValueType.quantity).decode(response(OBSERVATIONS),
+                buffered -> {
+                    throw new AssertionError("unexpected fallback");
+                });
+
+        assertEquals(2, data.size());
+    }
+
+    private static HttpResponse response(String content) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        response.setEntity(new StringEntity(content, ContentType.TEXT_XML));
+        return response;
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.harvest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.junit.jupiter.api.Test;
+import org.quartz.JobDataMap;
+
+public class CapabilitiesValidatorsTest {
+
+    private static final String ETAG = "\"abc\"";
+
+    private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+    @Test
+    public void shouldKeepTheValidatorsOfTheLastResponse() throws XmlException {
+        JobDataMap jobDataMap = new JobDataMap();
+        createValidators("42").store(jobDataMap);
+
+        CapabilitiesValidators stored = CapabilitiesValidators.from(jobDataMap);
+        assertEquals(ETAG, stored.getEtag());
+        assertEquals(LAST_MODIFIED, stored.getLastModified());
+        assertEquals("42", stored.getUpdateSequence());
+
+        HttpGet request = new HttpGet("http://example.org/sos?service=SOS&request=GetCapabilities");
+        stored.addConditionalHeaders(request);
+        assertEquals(ETAG, request.getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+        assertEquals(LAST_MODIFIED, request.getFirstHeader(HttpHeaders.IF_MODIFIED_SINCE).getValue());
+    }
+
+    @Test
+    public void shouldForgetValidatorsMissingInTheLastResponse() throws XmlException {
+        JobDataMap jobDataMap = new JobDataMap();
+        createValidators("42").store(jobDataMap);
+
+        CapabilitiesValidators validators = new CapabilitiesValidators();
+        validators.update(new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK"), capabilities(null));
+        validators.store(jobDataMap);
+        assertTrue(CapabilitiesValidators.from(jobDataMap).isEmpty());
+
+        HttpGet request = new HttpGet("http://example.org/sos?service=SOS&request=GetCapabilities");
+        validators.addConditionalHeaders(request);
+        assertFalse(request.containsHeader(HttpHeaders.IF_NONE_MATCH));
+        assertFalse(request.containsHeader(HttpHeaders.IF_MODIFIED_SINCE));
+    }
+
+    @Test
+    public void shouldDetectAnUnchangedUpdateSequence() throws XmlException {
+        CapabilitiesValidators validators = createValidators("42");
+        assertTrue(validators.isUnchanged(capabilities("42")));
+        assertFalse(validators.isUnchanged(capabilities("43")));
+        assertFalse(validators.isUnchanged(capabilities(null)));
+        assertFalse(new CapabilitiesValidators().isUnchanged(capabilities("42")));
+    }
+
+    @Test
+    public void shouldDetectACurrentUpdateSequenceException() throws XmlException {
+        CapabilitiesValidators validators = createValidators("42");
+        assertTrue(validators.isUnchanged(exceptionReport("CurrentUpdateSequence")));
+        assertFalse(validators.isUnchanged(exceptionReport("InvalidUpdateSequence")));
+    }
+
+    private static CapabilitiesValidators createValidators(String updateSequence) throws XmlException {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setHeader(HttpHeaders.ETAG, ETAG);
+        response.setHeader(HttpHeaders.LAST_MODIFIED, LAST_MODIFIED);
+        CapabilitiesValidators validators = new CapabilitiesValidators();
+        validators.update(response, capabilities(updateSequence));
+        return validators;
+    }
+
+    private static XmlObject capabilities(String updateSequence) throws XmlException {
+        return XmlObject.Factory.parse("<sos:Capabilities xmlns:sos=\"http://www.opengis.net/sos/2.0\""
+                + " version=\"2.0.0\""
+                + (updateSequence != null ? " updateSequence=\"" + updateSequence + "\"" : "") + "/>");
+    }
+
+    private static XmlObject exceptionReport(String exceptionCode) throws XmlException {
+        return XmlObject.Factory.parse("<ows:ExceptionReport xmlns:ows=\"http://www.opengis.net/ows/1.1\""
+                + " version=\"2.0.0\"><ows:Exception exceptionCode=\"" + exceptionCode + "\"/></ows:ExceptionReport>");
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.harvest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceConfiguration;
+import org.n52.sensorweb.server.helgoland.adapters.config.DataSourceJobConfiguration;
+
+public class HarvestCoordinatorTest {
+
+    @Test
+    public void shouldCoalesceRunsScheduledDuringTheHarvest() throws Exception {
+        HarvestCoordinator coordinator = new HarvestCoordinator(1, 0);
+        DataSourceConfiguration config = createConfig("http://example.org/sos", 1, 5);
+
+        assertFalse(coordinator.isCoalesced(config, new Date()));
+        Optional<HarvestCoordinator.Permit> permit = coordinator.tryAcquire(config);
+        assertTrue(permit.isPresent());
+        Date scheduledDuringHarvest = new Date();
+        Thread.sleep(5);
+        permit.get().close();
+
+        assertTrue(coordinator.isCoalesced(config, scheduledDuringHarvest));
+        assertFalse(coordinator.isCoalesced(config, new Date()));
+    }
+
+    @Test
+    public void shouldLimitConcurrentHarvestsByWeight() {
+        HarvestCoordinator coordinator = new HarvestCoordinator(2, 0);
+        HarvestCoordinator.Permit heavy = coordinator.tryAcquire(createConfig("http://example.org/heavy", 2, 5)).get();
+        DataSourceConfiguration light = createConfig("http://example.org/light", 1, 5);
+
+        assertFalse(coordinator.tryAcquire(light).isPresent());
+        heavy.close();
+        coordinator.tryAcquire(light).get().close();
+    }
+
+    @Test
+    public void shouldStartWaitingHarvestsByPriority() {
+        HarvestCoordinator coordinator = new HarvestCoordinator(1, 0);
+        HarvestCoordinator.Permit running = coordinator.tryAcquire(createConfig("http://example.org/a", 1, 5)).get();
+        DataSourceConfiguration low = createConfig("http://example.org/low", 1, 1);
+        DataSourceConfiguration high = createConfig("http://example.org/high", 1, 9);
+
+        assertFalse(coordinator.tryAcquire(low).isPresent());
+        assertFalse(coordinator.tryAcquire(high).isPresent());
+        running.close();
+
+        assertFalse(coordinator.tryAcquire(low).isPresent());
+        HarvestCoordinator.Permit next = coordinator.tryAcquire(high).get();
+        assertTrue(coordinator.isCoalesced(high, new Date()));
+        next.close();
+        coordinator.tryAcquire(low).get().close();
+    }
+
+    @Test
+    public void shouldLetOthersStartAfterCancellation() {
+        HarvestCoordinator coordinator = new HarvestCoordinator(1, 0);
+        HarvestCoordinator.Permit running = coordinator.tryAcquire(createConfig("http://example.org/a", 1, 5)).get();
+        DataSourceConfiguration high = createConfig("http://example.org/high", 1, 9);
+        DataSourceConfiguration low = createConfig("http://example.org/low", 1, 1);
+
+        assertFalse(coordinator.tryAcquire(high).isPresent());
+        running.close();
+        coordinator.cancel(high);
+
+        coordinator.tryAcquire(low).get().close();
+    }
+
+    @Test
+    public void shouldExpireWaitingHarvestsThatDoNotRetry() throws Exception {
+        HarvestCoordinator coordinator = new HarvestCoordinator(1, 0, 50);
+        HarvestCoordinator.Permit running = coordinator.tryAcquire(createConfig("http://example.org/a", 1, 5)).get();
+        DataSourceConfiguration lost = createConfig("http://example.org/lost", 1, 9);
+        DataSourceConfiguration low = createConfig("http://example.org/low", 1, 1);
+
+        // the retry trigger of this harvest never fires
+        assertFalse(coordinator.tryAcquire(lost).isPresent());
+        running.close();
+        assertFalse(coordinator.tryAcquire(low).isPresent());
+
+        Thread.sleep(60);
+        assertFalse(coordinator.tryAcquire(low).isPresent());
+        Thread.sleep(60);
+        coordinator.tryAcquire(low).get().close();
+    }
+
+    @Test
+    public void shouldForgetRemovedSources() {
+        HarvestCoordinator coordinator = new HarvestCoordinator(1, 0);
+        HarvestCoordinator.Permit running = coordinator.tryAcquire(createConfig("http://example.org/a", 1, 5)).get();
+        DataSourceConfiguration removed = createConfig("http://example.org/removed", 1, 9);
+        DataSourceConfiguration low = createConfig("http://example.org/low", 1, 1);
+
+        assertFalse(coordinator.tryAcquire(removed).isPresent());
+        assertTrue(coordinator.isCoalesced(removed, new Date()));
+        coordinator.remove(removed);
+        running.close();
+
+        assertFalse(coordinator.isCoalesced(removed, new Date()));
+        coordinator.tryAcquire(low).get().close();
+    }
+
+    @Test
+    public void shouldDelayEachSourceByAFixedOffset() {
+        HarvestCoordinator coordinator = new HarvestCoordinator(1, 300);
+        DataSourceConfiguration config = createConfig("http://example.org/sos", 1, 5);
+
+        long delay = coordinator.getStartDelay(config);
+        assertTrue(delay >= 0 && delay < TimeUnit.SECONDS.toMillis(300));
+        assertEquals(delay, coordinator.getStartDelay(createConfig("http://example.org/sos", 2, 1)));
+        assertEquals(0, new HarvestCoordinator(1, 0).getStartDelay(config));
+    }
+
+    private static DataSourceConfiguration createConfig(String url, int weight, int priority) {
+        DataSourceJobConfiguration job = new DataSourceJobConfiguration();
+        job.setWeight(weight);
+        job.setPriority(priority);
+        DataSourceConfiguration config = new DataSourceConfiguration();
+        config.setUrl(url);
+        config.setJob(job);
+        return config;
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ContentDecodingEntityTest {
+
+    private static final String BODY = "<sos:Capabilities xmlns:sos=\"http://www.opengis.net/sos/2.0\"/>";
+
+    private static final String HOST = "example.org";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void shouldDecodeGzipContent() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(BODY.getBytes(StandardCharsets.UTF_8));
+        }
+        HttpResponse response = decode(compressed.toByteArray(), "gzip");
+
+        assertFalse(response.containsHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(-1, response.getEntity().getContentLength());
+        assertEquals(BODY, EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8));
+        assertEquals(compressed.size(), count("proxy.http.client.bytes.transferred", "gzip"));
+        assertEquals(BODY.length(), count("proxy.http.client.bytes.decoded", "gzip"));
+    }
+
+    @Test
+    public void shouldDecodeDeflateContent() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(compressed)) {
+            out.write(BODY.getBytes(StandardCharsets.UTF_8));
+        }
+        HttpResponse response = decode(compressed.toByteArray(), "Deflate");
+
+        assertEquals(BODY, EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8));
+        assertEquals(compressed.size(), count("proxy.http.client.bytes.transferred", "deflate"));
+    }
+
+    @Test
+    public void shouldPassUncompressedContent() throws IOException {
+        HttpResponse response = decode(BODY.getBytes(StandardCharsets.UTF_8), null);
+
+        assertEquals(BODY.length(), response.getEntity().getContentLength());
+        assertEquals(BODY, EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8));
+        assertEquals(BODY.length(), count("proxy.http.client.bytes.transferred", "identity"));
+        assertEquals(BODY.length(), count("proxy.http.client.bytes.decoded", "identity"));
+    }
+
+    @Test
+    public void shouldKeepTheAcceptedEncodingOfTheRequest() {
+        HttpGet request = new HttpGet("http://example.org/sos");
+        ContentDecodingEntity.acceptCompressed(request);
+        assertEquals(ContentDecodingEntity.ACCEPT_ENCODING,
+                request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING).getValue());
+
+        HttpGet uncompressed = new HttpGet("http://example.org/sos");
+        uncompressed.setHeader(HttpHeaders.ACCEPT_ENCODING, ContentDecodingEntity.NO_ENCODING);
+        ContentDecodingEntity.acceptCompressed(uncompressed);
+        assertEquals(1, uncompressed.getHeaders(HttpHeaders.ACCEPT_ENCODING).length);
+        assertEquals(ContentDecodingEntity.NO_ENCODING,
+                uncompressed.getFirstHeader(HttpHeaders.ACCEPT_ENCODING).getValue());
+    }
+
+    private HttpResponse decode(byte[] content, String encoding) {
+        ByteArrayEntity entity = new ByteArrayEntity(content);
+        if (encoding != null) {
+            entity.setContentEncoding(encoding);
+        }
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(entity);
+        if (encoding != null) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        }
+        return ContentDecodingEntity.decode(response, HOST, meterRegistry);
+    }
+
+    private long count(String meter, String encoding) {
+        return (long) meterRegistry.get(meter).tag("host", HOST).tag("encoding", encoding).counter().count();
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Path;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ExchangeRecorderTest {
+
+    private static final String BODY = "<sos:Capabilities/>";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldReplayRecordedExchangeIndependentOfParameterOrder() throws Exception {
+        ExchangeRecorder recorder = new ExchangeRecorder("record", directory.toString());
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new StringEntity(BODY, ContentType.TEXT_XML));
+        response.addHeader("ETag", "\"1\"");
+
+        HttpResponse recorded =
+                recorder.record(new HttpGet("http://example.org/sos?service=SOS&request=GetCapabilities"), response);
+        assertEquals(BODY, EntityUtils.toString(recorded.getEntity()));
+
+        ExchangeRecorder replayer = new ExchangeRecorder("replay", directory.toString());
+        HttpResponse replayed =
+                replayer.replay(new HttpGet("http://EXAMPLE.org/sos?request=GetCapabilities&service=SOS"));
+        assertEquals(200, replayed.getStatusLine().getStatusCode());
+        assertEquals("\"1\"", replayed.getFirstHeader("ETag").getValue());
+        assertEquals(BODY, EntityUtils.toString(replayed.getEntity()));
+    }
+
+    @Test
+    public void shouldFailForUnknownExchange() {
+        ExchangeRecorder replayer = new ExchangeRecorder("replay", directory.toString());
+        assertThrows(FileNotFoundException.class, () -> replayer.replay(new HttpGet("http://example.org/sos")));
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015-2021 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.helgoland.adapters.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Optional;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlSaxHandler;
+import org.junit.jupiter.api.Test;
+
+public class ExiEntityTest {
+
+    private static final String BODY =
+            "<sos:GetCapabilities xmlns:sos=\"http://www.opengis.net/sos/2.0\" service=\"SOS\"/>";
+
+    @Test
+    public void shouldDecodeEncodedDocument() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ExiEntity(new StringEntity(BODY, ContentType.TEXT_XML)).writeTo(out);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(out.toByteArray(), ContentType.create(ExiEntity.CONTENT_TYPE)));
+
+        assertTrue(ExiDecodingEntity.isExi(response.getEntity()));
+        Optional<HttpResponse> decoded = ExiDecodingEntity.decode(response);
+        assertTrue(decoded.isPresent());
+        XmlSaxHandler handler = XmlObject.Factory.newXmlSaxHandler();
+        ((ExiDecodingEntity) decoded.get().getEntity()).parse(handler.getContentHandler(),
+                handler.getLexicalHandler());
+        assertEquals("GetCapabilities", handler.getObject().getDomNode().getFirstChild().getLocalName());
+        assertEquals("SOS", handler.getObject().getDomNode().getFirstChild().getAttributes()
+                .getNamedItem("service").getNodeValue());
+    }
+
+    @Test
+    public void shouldReadDecodedEvents() throws Exception {
+        ExiDecodingEntity entity = (ExiDecodingEntity) ExiDecodingEntity.decode(encode(BODY)).get().getEntity();
+
+        XMLStreamReader reader = entity.createXMLStreamReader();
+        try {
+            while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                assertTrue(reader.hasNext());
+            }
+            assertEquals("GetCapabilities", reader.getLocalName());
+            assertEquals("SOS", reader.getAttributeValue(null, "service"));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void shouldStreamDecodedXml() throws Exception {
+        ExiDecodingEntity entity = (ExiDecodingEntity) ExiDecodingEntity.decode(encode(BODY)).get().getEntity();
+
+        XmlObject document = XmlObject.Factory.parse(entity.getContent());
+        assertEquals("GetCapabilities", document.getDomNode().getFirstChild().getLocalName());
+    }
+
+    @Test
+    public void shouldNotDecodePlainXml() {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new StringEntity(BODY, ContentType.TEXT_XML));
+        assertFalse(ExiDecodingEntity.isExi(response.getEntity()));
+        assertFalse(ExiDecodingEntity.decode(response).isPresent());
+    }
+
+    private static HttpResponse encode(String xml) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ExiEntity(new StringEntity(xml, ContentType.TEXT_XML)).writeTo(out);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(out.toByteArray(), ContentType.create(ExiEntity.CONTENT_TYPE)));
+        return response;
+    }
+
+}
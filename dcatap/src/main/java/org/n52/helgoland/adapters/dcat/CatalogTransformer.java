@@ -69,6 +69,7 @@ import org.n52.janmayen.Optionals;
 import org.n52.janmayen.i18n.MultilingualString;
 import org.n52.sensorweb.server.db.repositories.core.ServiceRepository;
 import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceConstellation;
+import org.n52.sensorweb.server.helgoland.adapters.connector.utils.ServiceMetadata;
 import org.n52.sensorweb.server.helgoland.adapters.harvest.HarvestingListener;
 import org.n52.series.db.beans.ServiceEntity;
 import org.n52.shetland.ogc.gml.time.Time;
@@ -600,9 +601,14 @@ public class CatalogTransformer implements HarvestingListener, CatalogProvider {
     }
 
     private SosCapabilities getCapabilities(ServiceConstellation result) throws DecodingException {
+        Optional<OwsCapabilities> capabilities = result.getCapabilities();
+        if (capabilities.isPresent()) {
+            return toSosCapabilities(capabilities.get());
+        }
         XmlObject xmlResponse;
         try {
-            xmlResponse = XmlObject.Factory.parse(result.getService().getServiceMetadata().getMetadata());
+            xmlResponse = XmlObject.Factory
+                    .parse(ServiceMetadata.of(result.getService().getServiceMetadata()).getMetadata());
         } catch (XmlException e) {
             throw new DecodingException(e);
         }
@@ -618,12 +624,15 @@ public class CatalogTransformer implements HarvestingListener, CatalogProvider {
         }
 
         GetCapabilitiesResponse response = (GetCapabilitiesResponse) decode;
-        OwsCapabilities capabilities = response.getCapabilities();
+        return toSosCapabilities(response.getCapabilities());
+
+    }
+
+    private SosCapabilities toSosCapabilities(OwsCapabilities capabilities) throws DecodingException {
         if (!(capabilities instanceof SosCapabilities)) {
             throw new DecodingException("not a SOS capabilities document");
         }
         return (SosCapabilities) capabilities;
-
     }
 
     private Optional<Resource> findCatalog() {